@@ -0,0 +1,244 @@
+package com.rimusdesign.webcrawler;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Provides pages and URLs used as input by benchmarks.
+ * <p>
+ * The corpus consists of the static test pages found in 'test-www'
+ * (available on the benchmark classpath), and synthetic documents
+ * of various sizes that mimic the structure of real websites.
+ *
+ * @author Rimas Krivickas.
+ */
+public class BenchmarkCorpus {
+
+
+    public static final String BASE_URL = "http://localhost:8080";
+
+    /**
+     * Names of the static test pages, relative to 'test-www'
+     */
+    public static final String[] FIXTURES = new String[]{
+            "index.html",
+            "audio_example.html",
+            "video_example.html",
+            "iframe_example.html",
+            "plugin_examples.html",
+            "plugin_embed_example.html",
+            "plugin_object_example.html"
+    };
+
+    /**
+     * Names of the synthetic pages, mapped to approximate size by {@link #syntheticSize(String)}
+     */
+    public static final String SYNTHETIC_SMALL = "synthetic-10k";
+    public static final String SYNTHETIC_MEDIUM = "synthetic-100k";
+    public static final String SYNTHETIC_LARGE = "synthetic-1m";
+
+    // Fixed seed, so every run gets identical input
+    private static final long SEED = 20170206L;
+
+    private static final String[] EXTERNAL_HOSTS = new String[]{
+            "http://www.extern.com",
+            "https://cdn.example.org",
+            "http://www.w3schools.com",
+            "https://media.example.net:8443"
+    };
+
+
+    /**
+     * Loads a page by its name. Names can either be one of {@link #FIXTURES},
+     * or one of the synthetic page names.
+     *
+     * @param name name of the page
+     *
+     * @return HTML of the page
+     */
+    public static String page (String name) {
+
+        return name.startsWith("synthetic-") ? syntheticPage(syntheticSize(name)) : fixture(name);
+    }
+
+
+    /**
+     * @param name name of the page
+     *
+     * @return URL the page would have been fetched from
+     */
+    public static String pageUrl (String name) {
+
+        return BASE_URL + "/" + name;
+    }
+
+
+    /**
+     * Loads one of the static test pages from the classpath.
+     *
+     * @param name file name relative to 'test-www'
+     *
+     * @return HTML of the page
+     */
+    public static String fixture (String name) {
+
+        try (InputStream in = BenchmarkCorpus.class.getResourceAsStream("/" + name)) {
+
+            if (in == null) throw new IllegalArgumentException("Fixture not found on classpath: " + name);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Generates an HTML document of roughly requested size. Each section of the
+     * document contains text, internal and external links, images, audio and video
+     * sources, plug-ins and iframes, in proportions similar to a content heavy site.
+     *
+     * @param approxBytes approximate size of the document
+     *
+     * @return HTML of the page
+     */
+    public static String syntheticPage (int approxBytes) {
+
+        Random random = new Random(SEED);
+        StringBuilder html = new StringBuilder(approxBytes + 1024);
+
+        html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n")
+                .append("    <meta charset=\"UTF-8\">\n")
+                .append("    <title>Synthetic page ").append(approxBytes).append("</title>\n")
+                .append("</head>\n<body>\n<nav>\n    <ul>\n");
+
+        for (int i = 0; i < 20; i++) {
+            html.append("        <li><a href=\"/section/").append(i).append("/index.html\">Section ").append(i).append("</a></li>\n");
+        }
+        html.append("    </ul>\n</nav>\n");
+
+        int section = 0;
+        while (html.length() < approxBytes) {
+
+            html.append("<article id=\"item-").append(section).append("\">\n")
+                    .append("    <h2>Item ").append(section).append("</h2>\n")
+                    .append("    <p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ")
+                    .append("incididunt ut labore et dolore magna aliqua. <a href=\"")
+                    .append(url(random, section)).append("\">Read more</a></p>\n")
+                    .append("    <img src=\"/static/images/").append(section).append(".png\" alt=\"\">\n")
+                    .append("    <a href=\"").append(url(random, section + 1)).append("\">Next</a>\n")
+                    .append("    <a href=\"").append(url(random, section + 2)).append("#comments\">Comments</a>\n");
+
+            if (section % 4 == 0) {
+                html.append("    <video width=\"400\" controls>\n")
+                        .append("        <source src=\"/static/video/").append(section).append(".mp4\" type=\"video/mp4\">\n")
+                        .append("        <source src=\"/static/video/").append(section).append(".ogg\" type=\"video/ogg\">\n")
+                        .append("    </video>\n");
+            }
+            if (section % 5 == 0) {
+                html.append("    <audio controls>\n")
+                        .append("        <source src=\"/static/audio/").append(section).append(".mp3\">\n")
+                        .append("    </audio>\n");
+            }
+            if (section % 10 == 0) {
+                html.append("    <iframe src=\"").append(EXTERNAL_HOSTS[section % EXTERNAL_HOSTS.length])
+                        .append("/embed/").append(section).append("\"></iframe>\n")
+                        .append("    <embed src=\"/static/embed/").append(section).append(".mdi\">\n")
+                        .append("    <object data=\"/static/object/").append(section).append(".swf\"></object>\n");
+            }
+
+            html.append("</article>\n");
+            section++;
+        }
+
+        return html.append("</body>\n</html>\n").toString();
+    }
+
+
+    /**
+     * Generates a list of absolute URLs, similar to those found on crawled pages.
+     * Includes internal and external URLs, query strings, ports, bookmarks, trailing
+     * slashes and a small share of URLs with unsafe characters.
+     *
+     * @param count number of URLs to generate
+     *
+     * @return generated URLs
+     */
+    public static List<String> urls (int count) {
+
+        Random random = new Random(SEED);
+        List<String> urls = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            String url = url(random, i);
+
+            // Mix in relative to absolute variations that links resolve to
+            switch (i % 8) {
+                case 0:
+                    url = url + "/";
+                    break;
+                case 1:
+                    url = url + "#section-" + i;
+                    break;
+                case 2:
+                    url = url + "?page=" + i + "&sort=desc";
+                    break;
+                case 3:
+                    url = url + "?q={" + i + "}";
+                    break;
+                default:
+                    break;
+            }
+
+            urls.add(url.startsWith("/") ? BASE_URL + url : url);
+        }
+
+        return urls;
+    }
+
+
+    /**
+     * Maps names of synthetic pages to approximate size in bytes.
+     */
+    private static int syntheticSize (String name) {
+
+        switch (name) {
+            case SYNTHETIC_SMALL:
+                return 10 * 1024;
+            case SYNTHETIC_MEDIUM:
+                return 100 * 1024;
+            case SYNTHETIC_LARGE:
+                return 1024 * 1024;
+            default:
+                throw new IllegalArgumentException("Unknown synthetic page: " + name);
+        }
+    }
+
+
+    /**
+     * Generates either an internal (relative) or an external (absolute) URL.
+     */
+    private static String url (Random random, int index) {
+
+        if (random.nextInt(5) == 0) {
+
+            return EXTERNAL_HOSTS[random.nextInt(EXTERNAL_HOSTS.length)] + "/articles/" + index;
+        }
+
+        return "/category/" + random.nextInt(50) + "/items/" + index + ".html";
+    }
+}
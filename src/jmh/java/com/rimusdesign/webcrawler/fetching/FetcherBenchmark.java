@@ -0,0 +1,118 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.LinkedStageQueue;
+import com.rimusdesign.webcrawler.queue.StageQueue;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares {@link FetchEngine}s by fetching a batch of pages from a local server,
+ * which delays every response to simulate network latency.
+ * <p>
+ * With blocking requests the batch takes roughly 'pages / fetchers * latency',
+ * as each request holds a thread. Non-blocking requests are only limited by the
+ * number allowed in flight, so raising 'numFetchers' doesn't cost a thread each.
+ * Pooled requests hold a thread each too, but reuse connections instead of opening
+ * a new one per page.
+ *
+ * @author Rimas Krivickas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FetcherBenchmark {
+
+
+    private static final int NUM_PAGES = 1000;
+
+    private static final byte[] HTML = "<html><head><title>Benchmark</title></head><body></body></html>".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"BLOCKING", "POOLED", "ASYNC"})
+    public FetchEngine fetchEngine;
+
+    @Param({"50", "500"})
+    public int numFetchers;
+
+    @Param({"50"})
+    public long latencyMillis;
+
+    private HttpServer server;
+    private String baseUrl;
+
+
+    @Setup
+    public void setUp () throws IOException {
+
+        // Headers and body are written separately, don't let Nagle's algorithm hold the body back
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), NUM_PAGES);
+
+        // A thread per request, so the server itself never limits concurrency
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, HTML.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(HTML);
+            }
+        });
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/page-";
+    }
+
+
+    @TearDown
+    public void tearDown () {
+
+        server.stop(0);
+    }
+
+
+    @Benchmark
+    public int fetchBatch () throws InterruptedException {
+
+        StageQueue<String> urlQueue = new LinkedStageQueue<>();
+        StageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+
+        // All pages are on the same host, so don't limit connections per host
+        Thread fetcherThread = new Thread(new Fetcher(numFetchers, FetchMode.PLATFORM_THREADS, fetchEngine, HttpVersion.HTTP_2, 0, Integer.MAX_VALUE,
+                null, null, Integer.MAX_VALUE, urlQueue, fetchedDataQueue));
+        fetcherThread.start();
+
+        for (int i = 0; i < NUM_PAGES; i++) urlQueue.put(baseUrl + i);
+
+        int bytes = 0;
+        for (int i = 0; i < NUM_PAGES; i++) bytes += fetchedDataQueue.take().getBody().length;
+
+        fetcherThread.interrupt();
+        fetcherThread.join();
+
+        return bytes;
+    }
+}
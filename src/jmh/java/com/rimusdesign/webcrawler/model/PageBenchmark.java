@@ -0,0 +1,56 @@
+package com.rimusdesign.webcrawler.model;
+
+
+import com.rimusdesign.webcrawler.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the cost of generating {@link Page} IDs with each {@link PageIdStrategy}.
+ * This runs for every fetched page, and every new link discovered.
+ *
+ * @author Rimas Krivickas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PageBenchmark {
+
+
+    private static final int NUM_URLS = 1024;
+
+    @Param({"SHA_256", "FINGERPRINT_64"})
+    public PageIdStrategy idStrategy;
+
+    private String[] urls;
+    private int index;
+
+
+    @Setup
+    public void setUp () {
+
+        urls = BenchmarkCorpus.urls(NUM_URLS).toArray(new String[NUM_URLS]);
+    }
+
+
+    @Benchmark
+    public String generateId () {
+
+        return idStrategy.generateId(nextUrl());
+    }
+
+
+    private String nextUrl () {
+
+        return urls[index++ & (NUM_URLS - 1)];
+    }
+}
@@ -0,0 +1,76 @@
+package com.rimusdesign.webcrawler.parsing;
+
+
+import com.rimusdesign.webcrawler.BenchmarkCorpus;
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.TransientPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures CPU time spent parsing a single page with {@link ParsingContextGeneric}.
+ *
+ * @author Rimas Krivickas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParsingContextGenericBenchmark {
+
+
+    @Param({
+            "index.html",
+            "audio_example.html",
+            "video_example.html",
+            "iframe_example.html",
+            "plugin_examples.html",
+            "plugin_embed_example.html",
+            "plugin_object_example.html",
+            BenchmarkCorpus.SYNTHETIC_SMALL,
+            BenchmarkCorpus.SYNTHETIC_MEDIUM,
+            BenchmarkCorpus.SYNTHETIC_LARGE
+    })
+    public String pageName;
+
+    private ParsingContext context;
+    private String url;
+    private String html;
+    private byte[] body;
+
+
+    @Setup
+    public void setUp () {
+
+        context = new ParsingContextGeneric();
+        url = BenchmarkCorpus.pageUrl(pageName);
+        html = BenchmarkCorpus.page(pageName);
+        body = html.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    @Benchmark
+    public Page parse () {
+
+        return context.parse(url, html);
+    }
+
+
+    /**
+     * Work done by the parser stage for every fetched page, decoding included.
+     */
+    @Benchmark
+    public Page decodeAndParse () {
+
+        return context.parse(url, new TransientPage(url, "text/html", 200, body, null).getHtml());
+    }
+}
@@ -0,0 +1,120 @@
+package com.rimusdesign.webcrawler.parsing;
+
+
+import com.rimusdesign.webcrawler.BenchmarkCorpus;
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.StaticContentType;
+import com.rimusdesign.webcrawler.utils.CanonicalUrl;
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import com.rimusdesign.webcrawler.utils.UrlCanonicalizer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures CPU time spent extracting data from an already parsed document by
+ * {@link ParsingContextGeneric}, in a single traversal, against the previous
+ * approach of a separate traversal per tag name.
+ * <p>
+ * Parsing itself is left out, as it costs the same either way.
+ *
+ * @author Rimas Krivickas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParsingContextGenericExtractionBenchmark {
+
+
+    @Param({
+            "index.html",
+            BenchmarkCorpus.SYNTHETIC_SMALL,
+            BenchmarkCorpus.SYNTHETIC_MEDIUM,
+            BenchmarkCorpus.SYNTHETIC_LARGE
+    })
+    public String pageName;
+
+    private ParsingContextGeneric context;
+    private String url;
+    private Document document;
+
+
+    @Setup
+    public void setUp () {
+
+        context = new ParsingContextGeneric();
+        url = BenchmarkCorpus.pageUrl(pageName);
+        document = Jsoup.parse(BenchmarkCorpus.page(pageName), url);
+    }
+
+
+    @Benchmark
+    public Page singlePass () {
+
+        Page page = new Page(url);
+        context.extract(document, page);
+        return page;
+    }
+
+
+    @Benchmark
+    public Page passPerTag () {
+
+        Page page = new Page(url);
+        page.setStaticContentUrls(new HashMap<>());
+        page.setInternalUrls(new HashSet<>());
+        page.setExternalUrls(new HashSet<>());
+
+        addStaticItems(page, StaticContentType.IMAGE, "img", "src", null);
+        addStaticItems(page, StaticContentType.AUDIO, "source", "src", "audio");
+        addStaticItems(page, StaticContentType.VIDEO, "source", "src", "video");
+        addStaticItems(page, StaticContentType.PLUGIN, "object", "data", null);
+        addStaticItems(page, StaticContentType.PLUGIN, "embed", "src", null);
+        addStaticItems(page, StaticContentType.IFRAME, "iframe", "src", null);
+
+        for (Element element : document.body().getElementsByTag("a")) {
+
+            String url = element.absUrl("href");
+            if (url.isEmpty()) continue;
+
+            CanonicalUrl link = UrlCanonicalizer.canonicalize(url);
+            if (link == null) continue;
+
+            if (!CommonUtils.isWithinDomain(CommonUtils.stripDomain(link.getHost()), CommonUtils.stripDomain(document.baseUri()))) {
+                page.getExternalUrls().add(link.getUrl());
+            } else {
+                page.getInternalUrls().add(link.getUrl());
+            }
+        }
+
+        return page;
+    }
+
+
+    private void addStaticItems (Page page, StaticContentType type, String tag, String srcAttr, String parentTag) {
+
+        for (Element topElement : document.body().getElementsByTag(parentTag == null ? tag : parentTag)) {
+
+            if (parentTag == null) {
+                ParsingContextGeneric.addStaticItem(page, type, topElement.attr(srcAttr));
+            } else {
+                for (Element element : topElement.getElementsByTag(tag)) {
+                    ParsingContextGeneric.addStaticItem(page, type, element.attr(srcAttr));
+                }
+            }
+        }
+    }
+}
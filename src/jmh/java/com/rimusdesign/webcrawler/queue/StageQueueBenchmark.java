@@ -0,0 +1,88 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares {@link StageQueue} implementations used to hand data over
+ * between crawler stages.
+ * <p>
+ * 'handoff' measures a single thread putting an item and taking it back,
+ * i.e. the uncontended cost of one hop. 'produce' and 'consume' run as
+ * a group with several producers and one consumer, like fetcher threads
+ * feeding a parser, and measure throughput under contention.
+ *
+ * @author Rimas Krivickas.
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StageQueueBenchmark {
+
+
+    private static final int CAPACITY = 1024;
+
+    private static final Object ITEM = new Object();
+
+    @Param({"LINKED", "RING_BUFFER"})
+    public StageQueueType queueType;
+
+    private StageQueue<Object> queue;
+
+
+    @Setup
+    public void setUp () {
+
+        queue = queueType.create(CAPACITY);
+    }
+
+
+    @TearDown
+    public void tearDown () {
+
+        // Drain leftovers, so producers blocked on a full queue can finish
+        while (queue.poll() != null) ;
+    }
+
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public Object handoff () throws InterruptedException {
+
+        queue.put(ITEM);
+        return queue.take();
+    }
+
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public boolean produce () {
+
+        // Non blocking, so producers can't get stuck when iteration ends
+        return queue.offer(ITEM);
+    }
+
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Object consume () {
+
+        return queue.poll();
+    }
+}
@@ -0,0 +1,80 @@
+package com.rimusdesign.webcrawler.utils;
+
+
+import com.rimusdesign.webcrawler.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures URL handling helpers from {@link CommonUtils} and {@link UrlCanonicalizer}.
+ * These run for every link found on every page.
+ *
+ * @author Rimas Krivickas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommonUtilsBenchmark {
+
+
+    private static final int NUM_URLS = 1024;
+
+    private String[] urls;
+    private int index;
+
+
+    @Setup
+    public void setUp () {
+
+        urls = BenchmarkCorpus.urls(NUM_URLS).toArray(new String[NUM_URLS]);
+    }
+
+
+    @Benchmark
+    public String getHash () {
+
+        return CommonUtils.getHash(nextUrl());
+    }
+
+
+    @Benchmark
+    public String stripDomain () {
+
+        return CommonUtils.stripDomain(nextUrl());
+    }
+
+
+    @Benchmark
+    public String cleanUpURL () {
+
+        return CommonUtils.cleanUpURL(nextUrl());
+    }
+
+
+    @Benchmark
+    public boolean containsUnsafeChars () {
+
+        return CommonUtils.containsUnsafeChars(nextUrl());
+    }
+
+
+    @Benchmark
+    public CanonicalUrl canonicalize () {
+
+        return UrlCanonicalizer.canonicalize(nextUrl());
+    }
+
+
+    private String nextUrl () {
+
+        return urls[index++ & (NUM_URLS - 1)];
+    }
+}
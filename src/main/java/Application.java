@@ -1,5 +1,6 @@
 import com.rimusdesign.webcrawler.Crawler;
 import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.queue.StageQueueType;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import org.apache.logging.log4j.CloseableThreadContext;
 import org.slf4j.Logger;
@@ -22,8 +23,11 @@ public class Application {
                 .put("uuid", CommonUtils.shortUUID())
         ) {
 
-            // Instantiate crawler
-            Crawler crawler = new Crawler(5);
+            // Instantiate crawler, parse on all available cores, hand data over via ring buffers
+            Crawler crawler = new Crawler(5, Runtime.getRuntime().availableProcessors(), StageQueueType.RING_BUFFER, Crawler.DEFAULT_QUEUE_CAPACITY);
+
+            // Be polite, pause between requests and use at most two connections per host
+            crawler.setPoliteness(500, 2);
 
 
             // Execute crawler A
@@ -35,6 +39,8 @@ public class Application {
 
 
             log.info("Pages visited: " + crawler.getPages().size());
+            log.info("Pages per second: " + crawler.getMetrics().getPagesPerSecond()
+                    + ", errors by status: " + crawler.getMetrics().getErrorCounts());
 
             for (Page page : crawler.getPages()){
                 log.info("\n\nID: " + page.getId()
@@ -1,47 +1,300 @@
 package com.rimusdesign.webcrawler;
 
 
+import com.rimusdesign.webcrawler.checkpoint.Checkpoint;
+import com.rimusdesign.webcrawler.cluster.ClusterNode;
+import com.rimusdesign.webcrawler.cluster.LocalCrawl;
+import com.rimusdesign.webcrawler.metrics.CrawlMetrics;
 import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
 import com.rimusdesign.webcrawler.model.PageState;
+import com.rimusdesign.webcrawler.queue.PriorityFrontier;
+import com.rimusdesign.webcrawler.queue.StageQueue;
+import com.rimusdesign.webcrawler.storage.UrlDictionary;
+import com.rimusdesign.webcrawler.utils.CanonicalUrl;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import lombok.Getter;
+import lombok.NonNull;
 import org.apache.logging.log4j.CloseableThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.UnsupportedEncodingException;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
+ * Takes parsed pages, queues URLs found on them for fetching, and stores them once ready.
+ * <p>
+ * Keeps count of the URLs in flight, i.e. queued through {@link #enqueue(String)} but
+ * not yet handled as ready pages. The crawl is complete once the count drops to zero,
+ * which releases threads waiting in {@link #awaitCompletion()}.
+ * <p>
+ * Many sites can be crawled at once, each added as a {@link Seed}. URLs found on a page
+ * are counted towards the seed of the page, so each seed completes on its own, once
+ * none of its URLs are left in flight.
+ * <p>
+ * URLs waiting to be fetched are only known by their fingerprints, see {@link SeenUrlSet},
+ * and kept wherever the URL queue keeps them, e.g. on disk. A URL only gets a pending page
+ * once a fetcher takes it, see {@link #getFetchQueue()}, so memory use doesn't grow with
+ * the number of URLs waiting.
+ * <p>
+ * URLs found on a page are scored from the page, if queued to a {@link PriorityFrontier}.
+ * A crawl can be limited to a number of pages, it's stopped once that many are ready.
+ * <p>
+ * As a node of a cluster, URLs of hosts owned by other nodes are forwarded to them,
+ * and the crawl is complete once the {@link ClusterNode} says so, as other nodes may
+ * still send URLs while there are none in flight locally.
+ *
  * @author Rimas Krivickas.
  */
-public class CrawlDataManager implements Runnable {
+public class CrawlDataManager implements Runnable, LocalCrawl {
 
 
     private static final Logger log = LoggerFactory.getLogger(CrawlDataManager.class);
 
     private Repository repository;
-    private LinkedBlockingQueue<String> urlQueue;
-    private LinkedBlockingQueue<Page> parsedDataQueue;
+    private SeenUrlSet seenUrls;
+    private StageQueue<String> urlQueue;
+    private StageQueue<Page> parsedDataQueue;
+    private List<PageListener> listeners;
+    private List<SeedListener> seedListeners;
+    private boolean retainPages;
+    private long maxPages;
+    private Checkpoint checkpoint;
+    private CrawlMetrics metrics;
+    private UrlDictionary urlDictionary;
+    private ClusterNode clusterNode;
+    private PageIdStrategy idStrategy;
+
+    // URL queue, if URLs are queued by priority
+    private PriorityFrontier frontier;
+
+    // Accessed by the manager thread only
+    private long numReadyPages;
+
+    private final List<Seed> seeds = new CopyOnWriteArrayList<>();
+    private final Map<String, Seed> seedsByDomain = new ConcurrentHashMap<>();
+
+    // Seed of each URL in flight which is counted towards another seed than that of its domain, see 'seedOf(String)'
+    private final Map<String, Seed> seedsInFlight = new ConcurrentHashMap<>();
+
+    private final StageQueue<String> fetchQueue = new FetchQueue();
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final CountDownLatch completion = new CountDownLatch(1);
 
     @Getter
-    private boolean isDone;
+    private volatile boolean isDone;
 
 
-    public CrawlDataManager (Repository repository, LinkedBlockingQueue<String> urlQueue, LinkedBlockingQueue<Page> parsedDataQueue) {
+    /**
+     * @param repository      storage for crawled pages
+     * @param seenUrls        URLs already queued for fetching, see {@link SeenUrlSet}
+     * @param urlQueue        output queue for URLs to be fetched, unbounded, as URLs are queued before fetchers start
+     * @param parsedDataQueue input queue for parsed pages
+     * @param listeners       listeners to pass ready pages to
+     * @param seedListeners   listeners to pass completed seeds to
+     * @param retainPages     'false' to drop ready pages from the repository once passed to listeners
+     * @param maxPages        number of ready pages to stop the crawl at, or '0' not to limit it
+     * @param checkpoint      checkpoint to record progress to, or 'null'
+     * @param metrics         metrics to record handling time to, or 'null'
+     * @param urlDictionary   dictionary to compact URLs of ready pages into, or 'null' to keep them as they are
+     * @param clusterNode     node of the cluster this crawl is part of, or 'null' if crawling alone
+     * @param idStrategy      how to generate IDs of pending pages, the same as for parsed pages
+     */
+    public CrawlDataManager (Repository repository, SeenUrlSet seenUrls, StageQueue<String> urlQueue, StageQueue<Page> parsedDataQueue,
+                             List<PageListener> listeners, List<SeedListener> seedListeners, boolean retainPages, long maxPages, Checkpoint checkpoint, CrawlMetrics metrics,
+                             UrlDictionary urlDictionary, ClusterNode clusterNode, PageIdStrategy idStrategy) {
 
         this.repository = repository;
+        this.seenUrls = seenUrls;
         this.urlQueue = urlQueue;
         this.parsedDataQueue = parsedDataQueue;
+        this.listeners = listeners;
+        this.seedListeners = seedListeners;
+        this.retainPages = retainPages;
+        this.maxPages = maxPages;
+        this.checkpoint = checkpoint;
+        this.metrics = metrics;
+        this.urlDictionary = urlDictionary;
+        this.clusterNode = clusterNode;
+        this.idStrategy = idStrategy;
+
+        if (urlQueue instanceof PriorityFrontier) frontier = (PriorityFrontier) urlQueue;
+    }
+
+
+    /**
+     * @param repository      storage for crawled pages
+     * @param seenUrls        URLs already queued for fetching, see {@link SeenUrlSet}
+     * @param urlQueue        output queue for URLs to be fetched, unbounded, as URLs are queued before fetchers start
+     * @param parsedDataQueue input queue for parsed pages
+     */
+    public CrawlDataManager (Repository repository, SeenUrlSet seenUrls, StageQueue<String> urlQueue, StageQueue<Page> parsedDataQueue) {
+
+        // No listeners, keep all pages, no page limit, no checkpoint, no metrics, URLs kept as they are, no cluster, default page IDs
+        this(repository, seenUrls, urlQueue, parsedDataQueue, Collections.emptyList(), Collections.emptyList(), true, 0, null, null, null, null,
+                PageIdStrategy.SHA_256);
+    }
+
+
+    /**
+     * Queues provided URL for fetching, and counts it as in flight until its page is ready.
+     * Used for initial URLs before the manager is started, and by the manager itself.
+     *
+     * @param url URL to be fetched
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    public void enqueue (String url) throws InterruptedException {
+
+        // Count goes up before the URL can possibly come back as a ready page
+        inFlight.incrementAndGet();
+        urlQueue.put(url);
+    }
+
+
+    /**
+     * Adds a site to be crawled, and queues its initial URL. Meant to be called for
+     * every seed before the manager is started.
+     *
+     * @param url initial URL of the site
+     * @return seed to track the progress of the site by
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    public Seed addSeed (@NonNull String url) throws InterruptedException {
+
+        Seed seed = new Seed(url);
+
+        seeds.add(seed);
+        seedsByDomain.putIfAbsent(seed.getDomain(), seed);
+
+        offer(url, seed, null);
+
+        return seed;
+    }
+
+
+    /**
+     * @return view of the URL queue for fetchers to take URLs from, which stores
+     * each URL taken as a pending page, until its page is ready
+     */
+    public StageQueue<String> getFetchQueue () {
+
+        return fetchQueue;
+    }
+
+
+    /**
+     * Queues provided URL for fetching, unless it has been seen before.
+     * As a node of a cluster, URLs of hosts owned by other nodes are forwarded to them instead.
+     * Safe to be called from any thread, used for URLs received from other nodes, which
+     * are counted towards the seed of their site.
+     *
+     * @param url URL to be crawled
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    @Override
+    public void offer (String url) throws InterruptedException {
+
+        offer(url, seedOf(url), null);
+    }
+
+
+    /**
+     * @param seed   seed to count the URL towards, or 'null'
+     * @param parent page the URL was found on, or 'null'
+     */
+    private void offer (String url, Seed seed, Page parent) throws InterruptedException {
+
+        offer(url, CommonUtils.fingerprint(url), seed, parent);
+    }
+
+
+    /**
+     * @param fingerprint fingerprint of the URL, see {@link CommonUtils#fingerprint(String)}
+     */
+    private void offer (String url, long fingerprint, Seed seed, Page parent) throws InterruptedException {
+
+        // Most links have been seen before, skip those right away
+        if (!seenUrls.add(fingerprint)) {
+
+            // One more link to a URL still waiting may move it up the frontier
+            if (frontier != null && parent != null) frontier.link(url, parent);
+            return;
+        }
+
+        if (clusterNode != null && !clusterNode.isLocal(url)) {
+
+            // Forwarded once per node, the owning node dedupes it against what other nodes sent
+            clusterNode.forward(url);
+            return;
+        }
+
+        // Counted towards the seed before it can possibly come back as a ready page. Only
+        // remembered if it's not the seed of the URL's domain, which can be looked up again
+        Seed domainSeed = seedOf(url);
+        if (seed == null) seed = domainSeed;
+        if (seed != null) {
+            seed.enqueued();
+            if (seed != domainSeed) seedsInFlight.put(url, seed);
+        }
+
+        // No page until the URL is taken to be fetched, a checkpoint keeps it on disk meanwhile
+        if (checkpoint != null) checkpoint.recordPending(url);
+
+        // Add URL to the fetch queue, scored from the page it was found on if queued by priority
+        if (frontier != null && parent != null) {
+            inFlight.incrementAndGet();
+            frontier.put(url, parent);
+        } else {
+            enqueue(url);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIdle () {
+
+        return inFlight.get() == 0;
+    }
+
+
+    /**
+     * Blocks until all queued URLs have been handled, or the manager has stopped.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCompletion () throws InterruptedException {
+
+        completion.await();
+    }
+
+
+    /**
+     * @return 'true' if the crawl has completed within provided time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion (long timeout, TimeUnit unit) throws InterruptedException {
+
+        return completion.await(timeout, unit);
     }
 
 
     @Override
     public void run () {
 
-        isDone = false;
         Page page;
 
         try (@SuppressWarnings("unused") final CloseableThreadContext.Instance ctc = CloseableThreadContext
@@ -52,45 +305,230 @@ public class CrawlDataManager implements Runnable {
             while (!isDone) {
                 try {
                     page = parsedDataQueue.take();
+
+                    long startedAt = System.nanoTime();
                     handlePageData(page);
-                } catch (InterruptedException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
+                    if (metrics != null) metrics.recordManage(System.nanoTime() - startedAt);
+                } catch (InterruptedException e) {
+
+                    log.debug("Interrupted before crawl completed");
+                    break;
+                } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
                     e.printStackTrace();
                 }
             }
 
             log.debug("Terminating thread");
+        } finally {
+
+            // Never leave anyone waiting, even if the manager died
+            release();
         }
     }
 
 
-    private void handlePageData (Page page) throws UnsupportedEncodingException, NoSuchAlgorithmException {
+    private void handlePageData (Page page) throws UnsupportedEncodingException, NoSuchAlgorithmException, InterruptedException {
+
+        Seed seed = seedInFlight(page.getUrl());
+        seedsInFlight.remove(page.getUrl());
+        if (seed != null) page.setSeed(seed.getUrl());
 
         if (page.isHtml()) {
 
-            Page pendingPage;
-            for (String url : page.getInternalUrls()) {
+            // Found URLs belong to the same site, as other sites' are external, fingerprinted already if the parser kept them
+            if (page.getInternalLinks() != null) {
+                for (CanonicalUrl link : page.getInternalLinks()) offer(link.getUrl(), link.getFingerprint(), seed, page);
+            } else {
+                for (String url : page.getInternalUrls()) offer(url, seed, page);
+            }
 
-                // Instantiate pending page
-                pendingPage = new Page(url);
+            // Followed, only the URLs themselves are kept from now on
+            page.setInternalLinks(null);
+        }
 
-                if (!repository.contains(pendingPage.getId())) {
+        // Links have been scored, the page's own score is no longer needed
+        if (frontier != null) frontier.done(page.getUrl());
 
-                    repository.save(pendingPage);
-
-                    // Add URL to the fetch queue
-                    urlQueue.add(pendingPage.getUrl());
-                }
-            }
-        }
+        // Links have been followed, keep only a compact form of them from now on
+        if (urlDictionary != null && page.isHtml()) page.setLinks(urlDictionary.compact(page));
 
         // Update status, and override pending page with parsed one
         page.setState(PageState.READY);
         repository.save(page);
+        if (checkpoint != null) checkpoint.recordReady(page);
+
+        // Deliver page, then let go of it if nothing else needs it
+        notifyListeners(page);
+        if (!retainPages) repository.evict(page.getId());
+
+        // Same for the seed alone, which other nodes of a cluster may still send URLs for though
+        if (seed != null && seed.handled() && clusterNode == null) completeSeed(seed);
 
-        if (!repository.hasPendingItems()) {
+        // Pages being fetched stay pending, URLs not yet taken to be fetched get no page
+        if (maxPages > 0 && ++numReadyPages >= maxPages) {
+
+            log.info("Page limit reached: " + maxPages);
+            release();
+            return;
+        }
+
+        // URLs found on the page are already counted, so zero means nothing is left anywhere in the pipeline.
+        // Other nodes of a cluster may still send URLs though, so the cluster node decides when it's complete
+        if (inFlight.decrementAndGet() == 0 && clusterNode == null) {
 
             log.info("Crawl complete");
-            isDone = true;
+            complete();
+        }
+    }
+
+
+    /**
+     * Ends the crawl, completing seeds that haven't completed yet, and releasing
+     * threads waiting in {@link #awaitCompletion()}.
+     */
+    @Override
+    public void complete () {
+
+        for (Seed seed : seeds) completeSeed(seed);
+
+        release();
+    }
+
+
+    /**
+     * Releases all waiting threads, without notifying seed listeners, as the crawl may have been stopped.
+     */
+    private void release () {
+
+        isDone = true;
+        for (Seed seed : seeds) seed.complete();
+        completion.countDown();
+    }
+
+
+    private void completeSeed (Seed seed) {
+
+        if (!seed.complete()) return;
+
+        log.info("Seed complete: " + seed.getUrl() + ", pages: " + seed.getPageCount());
+
+        for (SeedListener listener : seedListeners) {
+            try {
+                listener.onSeedComplete(seed);
+            } catch (RuntimeException e) {
+
+                // A failing listener must not stop the crawl
+                log.error("Seed listener failed, URL: " + seed.getUrl(), e);
+            }
+        }
+    }
+
+
+    /**
+     * Stores provided URL as a pending page, as it has been taken to be fetched.
+     * Called by fetcher threads, before the page can possibly come back as ready.
+     */
+    private void fetching (String url) {
+
+        Page pendingPage = new Page(url, idStrategy);
+
+        Seed seed = seedInFlight(url);
+        if (seed != null) pendingPage.setSeed(seed.getUrl());
+
+        repository.save(pendingPage);
+    }
+
+
+    /**
+     * @return seed provided URL in flight is counted towards, or 'null'
+     */
+    private Seed seedInFlight (String url) {
+
+        Seed seed = seedsInFlight.get(url);
+
+        return seed != null ? seed : seedOf(url);
+    }
+
+
+    /**
+     * @return seed whose domain is the domain of provided URL, or the closest parent of it, or 'null'
+     */
+    private Seed seedOf (String url) {
+
+        if (seedsByDomain.isEmpty()) return null;
+
+        String domain = CommonUtils.stripDomain(url);
+
+        while (true) {
+
+            Seed seed = seedsByDomain.get(domain);
+            if (seed != null) return seed;
+
+            int dot = domain.indexOf('.');
+            if (dot < 0) return null;
+            domain = domain.substring(dot + 1);
+        }
+    }
+
+
+    private void notifyListeners (Page page) {
+
+        for (PageListener listener : listeners) {
+            try {
+                listener.onPage(page);
+            } catch (RuntimeException e) {
+
+                // A failing listener must not stop the crawl
+                log.error("Page listener failed, URL: " + page.getUrl(), e);
+            }
+        }
+    }
+
+
+    /**
+     * URL queue as seen by fetchers, stores each URL taken as a pending page.
+     */
+    private final class FetchQueue implements StageQueue<String> {
+
+
+        @Override
+        public void put (String url) throws InterruptedException {
+
+            urlQueue.put(url);
+        }
+
+
+        @Override
+        public boolean offer (String url) {
+
+            return urlQueue.offer(url);
+        }
+
+
+        @Override
+        public String take () throws InterruptedException {
+
+            String url = urlQueue.take();
+            if (url != null) fetching(url);
+
+            return url;
+        }
+
+
+        @Override
+        public String poll () {
+
+            String url = urlQueue.poll();
+            if (url != null) fetching(url);
+
+            return url;
+        }
+
+
+        @Override
+        public int size () {
+
+            return urlQueue.size();
         }
     }
 }
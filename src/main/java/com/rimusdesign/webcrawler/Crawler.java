@@ -1,24 +1,55 @@
 package com.rimusdesign.webcrawler;
 
 
+import com.rimusdesign.webcrawler.checkpoint.Checkpoint;
+import com.rimusdesign.webcrawler.cluster.ClusterNode;
+import com.rimusdesign.webcrawler.fetching.FetchEngine;
+import com.rimusdesign.webcrawler.fetching.FetchMode;
 import com.rimusdesign.webcrawler.fetching.Fetcher;
+import com.rimusdesign.webcrawler.fetching.HttpVersion;
+import com.rimusdesign.webcrawler.fetching.ResponseCache;
+import com.rimusdesign.webcrawler.metrics.CrawlMetrics;
 import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
+import com.rimusdesign.webcrawler.model.PageState;
 import com.rimusdesign.webcrawler.model.TransientPage;
 import com.rimusdesign.webcrawler.parsing.Parser;
+import com.rimusdesign.webcrawler.parsing.ParsingContext;
 import com.rimusdesign.webcrawler.parsing.ParsingContextGeneric;
+import com.rimusdesign.webcrawler.parsing.ParsingContextStreaming;
+import com.rimusdesign.webcrawler.queue.DiskBackedStageQueue;
+import com.rimusdesign.webcrawler.queue.PriorityFrontier;
+import com.rimusdesign.webcrawler.queue.StageQueue;
+import com.rimusdesign.webcrawler.queue.StageQueueType;
+import com.rimusdesign.webcrawler.queue.UrlScorer;
+import com.rimusdesign.webcrawler.queue.UrlScoring;
+import com.rimusdesign.webcrawler.storage.ContentStore;
+import com.rimusdesign.webcrawler.storage.UrlDictionary;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import lombok.NonNull;
 import org.apache.logging.log4j.CloseableThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Retrieves data from all the pages under the initial domain name.
  * Crawls entire website tree.
+ * <p>
+ * Any number of sites can be crawled at once through the same fetchers and parsers,
+ * see {@link #crawl(Collection)}, with progress and pages tracked per site.
  *
  * @author Rimas Krivickas.
  */
@@ -27,18 +58,76 @@ public class Crawler {
 
     private static final Logger log = LoggerFactory.getLogger(Crawler.class);
 
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
     private Repository repository;
-    private LinkedBlockingQueue<String> urlQueue;
-    private LinkedBlockingQueue<TransientPage> fetchedDataQueue;
-    private LinkedBlockingQueue<Page> parsedDataQueue;
+    private StageQueue<String> urlQueue;
+    private StageQueue<TransientPage> fetchedDataQueue;
+    private StageQueue<Page> parsedDataQueue;
 
     private CrawlDataManager crawlDataManager;
 
     private Thread dataManagerThread;
-    private Thread parserThread;
+    private List<Thread> parserThreads;
     private Thread fetcherThread;
 
     private int numFetchers;
+    private int numParsers;
+    private StageQueueType queueType;
+    private int queueCapacity;
+    private FetchMode fetchMode = FetchMode.PLATFORM_THREADS;
+    private FetchEngine fetchEngine = FetchEngine.BLOCKING;
+    private HttpVersion httpVersion = HttpVersion.HTTP_2;
+    private ParsingContext parsingContext = new ParsingContextGeneric();
+    private PageIdStrategy pageIdStrategy = PageIdStrategy.SHA_256;
+    private long minHostDelayMillis = 0;
+    private int maxConnectionsPerHost = Integer.MAX_VALUE;
+    private Path frontierDirectory;
+    private UrlScorer urlScorer;
+    private long maxPages = 0;
+    private long maxMillis = 0;
+    private final List<PageListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SeedListener> seedListeners = new CopyOnWriteArrayList<>();
+    private boolean retainPages = true;
+    private ContentStore contentStore;
+    private UrlDictionary urlDictionary;
+    private Path checkpointDirectory;
+    private ResponseCache responseCache;
+    private Checkpoint checkpoint;
+    private CrawlMetrics metrics;
+    private ClusterNode clusterNode;
+    private volatile Map<String, Seed> seeds = Collections.emptyMap();
+
+
+    /**
+     * @param numFetchers   number of threads to use for fetching data
+     * @param numParsers    number of threads to use for parsing data
+     * @param queueType     type of queues used to pass fetched and parsed pages between crawling stages,
+     *                      URLs to be fetched are always queued without a bound, see {@link #setFrontierDirectory(Path)}
+     * @param queueCapacity capacity of each queue, ignored by unbounded queue types
+     */
+    public Crawler (int numFetchers, int numParsers, @NonNull StageQueueType queueType, int queueCapacity) {
+
+        if (numFetchers < 1) throw new IllegalArgumentException("At least one fetcher is required");
+        if (numParsers < 1) throw new IllegalArgumentException("At least one parser is required");
+        if (queueCapacity < 1) throw new IllegalArgumentException("Queue capacity must be positive");
+
+        this.numFetchers = numFetchers;
+        this.numParsers = numParsers;
+        this.queueType = queueType;
+        this.queueCapacity = queueCapacity;
+    }
+
+
+    /**
+     * @param numFetchers number of threads to use for fetching data
+     * @param numParsers  number of threads to use for parsing data
+     */
+    public Crawler (int numFetchers, int numParsers) {
+
+        // Use default queues
+        this(numFetchers, numParsers, StageQueueType.LINKED, DEFAULT_QUEUE_CAPACITY);
+    }
 
 
     /**
@@ -46,7 +135,8 @@ public class Crawler {
      */
     public Crawler (int numFetchers) {
 
-        this.numFetchers = numFetchers;
+        // Use default number of parsers
+        this(numFetchers, 1);
     }
 
 
@@ -57,6 +147,238 @@ public class Crawler {
     }
 
 
+    /**
+     * Limits the load put on crawled hosts. Requests to the same host are
+     * started no sooner than the given delay apart, and no more than the given
+     * number of them run at the same time. No limits are applied by default.
+     *
+     * @param minHostDelayMillis    minimum delay between two requests to the same host
+     * @param maxConnectionsPerHost maximum number of concurrent requests to the same host
+     */
+    public void setPoliteness (long minHostDelayMillis, int maxConnectionsPerHost) {
+
+        if (minHostDelayMillis < 0) throw new IllegalArgumentException("Delay can't be negative");
+        if (maxConnectionsPerHost < 1) throw new IllegalArgumentException("At least one connection per host is required");
+
+        this.minHostDelayMillis = minHostDelayMillis;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+
+    /**
+     * Selects how concurrent requests are run. With {@link FetchMode#VIRTUAL_THREADS} the
+     * number of fetchers is the maximum number of concurrent requests, which can be in the
+     * thousands without as many OS threads. A fixed pool of threads is used by default.
+     *
+     * @param fetchMode mode to run requests in
+     */
+    public void setFetchMode (@NonNull FetchMode fetchMode) {
+
+        if (!fetchMode.isSupported()) throw new UnsupportedOperationException("Fetch mode is not supported by this JVM: " + fetchMode);
+
+        this.fetchMode = fetchMode;
+    }
+
+
+    /**
+     * Selects how requests are made. {@link FetchEngine#POOLED} and {@link FetchEngine#ASYNC}
+     * reuse connections to each host, which cuts per page latency of single site crawls.
+     * With {@link FetchEngine#ASYNC} the number of fetchers is the maximum number of
+     * requests in flight, which can be in the thousands. Requests are blocking by default.
+     *
+     * @param fetchEngine engine to make requests with
+     */
+    public void setFetchEngine (@NonNull FetchEngine fetchEngine) {
+
+        if (!fetchEngine.isSupported()) throw new UnsupportedOperationException("Fetch engine is not supported by this JVM: " + fetchEngine);
+
+        this.fetchEngine = fetchEngine;
+    }
+
+
+    /**
+     * Sets the HTTP version preferred by engines which reuse connections. HTTP/2 is
+     * preferred by default, and multiplexes all requests to a host over one connection.
+     * With HTTP/1.1 each host gets a pool of kept alive connections, no larger than the
+     * maximum number of connections per host, see {@link #setPoliteness(long, int)}.
+     *
+     * @param httpVersion preferred HTTP version
+     */
+    public void setHttpVersion (@NonNull HttpVersion httpVersion) {
+
+        this.httpVersion = httpVersion;
+    }
+
+
+    /**
+     * Sets the context pages are parsed within, shared by all parser threads.
+     * Defaults to {@link ParsingContextGeneric}. For crawls that only discover
+     * links, {@link ParsingContextStreaming} extracts the same data at a fraction
+     * of the cost.
+     *
+     * @param parsingContext thread safe parsing context
+     */
+    public void setParsingContext (@NonNull ParsingContext parsingContext) {
+
+        this.parsingContext = parsingContext;
+    }
+
+
+    /**
+     * Sets how IDs of crawled pages are generated. Defaults to {@link PageIdStrategy#SHA_256}.
+     * Parsing contexts other than those provided only support the default, see
+     * {@link ParsingContext#parse(String, String, PageIdStrategy)}.
+     *
+     * @param pageIdStrategy page ID generation strategy
+     */
+    public void setPageIdStrategy (@NonNull PageIdStrategy pageIdStrategy) {
+
+        this.pageIdStrategy = pageIdStrategy;
+    }
+
+
+    /**
+     * Keeps the bulk of the URLs waiting to be fetched on disk instead of the heap,
+     * see {@link DiskBackedStageQueue}. Meant for crawls of millions of pages.
+     *
+     * @param frontierDirectory directory for frontier files, or 'null' to keep the frontier in memory
+     */
+    public void setFrontierDirectory (Path frontierDirectory) {
+
+        this.frontierDirectory = frontierDirectory;
+    }
+
+
+    /**
+     * Fetches URLs with the highest score first, as scored by provided scorer, see {@link PriorityFrontier},
+     * rather than in the order found. Along with {@link #setBudget(long, long)}, the most valuable pages
+     * are collected first. Can't be combined with {@link #setFrontierDirectory(Path)}.
+     *
+     * @param urlScorer scorer to order URLs by, e.g. {@link UrlScoring#DEPTH}, or 'null' to fetch URLs in the order found
+     */
+    public void setUrlScorer (UrlScorer urlScorer) {
+
+        this.urlScorer = urlScorer;
+    }
+
+
+    /**
+     * Limits each crawl to a number of pages and/or a period of time, whichever runs out first.
+     * Pages still being fetched once the crawl stops are left pending, URLs still waiting to be fetched get no page.
+     *
+     * @param maxPages  number of ready pages to stop at, or '0' not to limit it
+     * @param maxMillis milliseconds to stop after, or '0' not to limit it
+     */
+    public void setBudget (long maxPages, long maxMillis) {
+
+        if (maxPages < 0 || maxMillis < 0) throw new IllegalArgumentException("Budget can't be negative");
+
+        this.maxPages = maxPages;
+        this.maxMillis = maxMillis;
+    }
+
+
+    /**
+     * Registers a listener to receive each page as soon as it's ready,
+     * while the crawl is still running.
+     *
+     * @param listener listener to add
+     */
+    public void addListener (@NonNull PageListener listener) {
+
+        listeners.add(listener);
+    }
+
+
+    /**
+     * Registers a listener to receive each seed of a multi-seed crawl as soon as its
+     * site has been crawled, while other sites are still being crawled.
+     *
+     * @param listener listener to add
+     */
+    public void addSeedListener (@NonNull SeedListener listener) {
+
+        seedListeners.add(listener);
+    }
+
+
+    /**
+     * By default all pages are kept in memory until the crawl ends, see {@link #getPages()}.
+     * When pages are consumed through listeners instead, they can be dropped once delivered,
+     * so memory use doesn't grow with the size of the site.
+     *
+     * @param retainPages 'false' to drop pages from memory once passed to listeners
+     */
+    public void setRetainPages (boolean retainPages) {
+
+        this.retainPages = retainPages;
+    }
+
+
+    /**
+     * Moves raw HTML of parsed pages to provided store, so it doesn't stay on the heap.
+     * Pages load it back on access, hence the store must be kept open for as long as
+     * raw HTML of crawled pages is needed.
+     *
+     * @param contentStore store for raw HTML, or 'null' to keep it in memory
+     */
+    public void setContentStore (ContentStore contentStore) {
+
+        this.contentStore = contentStore;
+    }
+
+
+    /**
+     * Moves URLs found on ready pages to provided dictionary, see {@link UrlDictionary},
+     * so URLs shared by many pages are only kept in memory once. Pages decode them on
+     * access, and they can no longer be changed through the page.
+     *
+     * @param urlDictionary dictionary for URLs, or 'null' to keep them on each page as they are
+     */
+    public void setUrlDictionary (UrlDictionary urlDictionary) {
+
+        this.urlDictionary = urlDictionary;
+    }
+
+
+    /**
+     * Records progress of crawls to provided directory, so they can be resumed
+     * with {@link #resume(Path)} should the JVM die, see {@link Checkpoint}.
+     *
+     * @param checkpointDirectory directory to record progress in, or 'null' not to record it
+     */
+    public void setCheckpointDirectory (Path checkpointDirectory) {
+
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+
+    /**
+     * Revalidates responses against provided cache with conditional requests, and reuses
+     * cached bodies of unchanged pages, see {@link ResponseCache}. Meant for recrawls.
+     *
+     * @param responseCache cache of responses, or 'null' to always fetch pages in full
+     */
+    public void setResponseCache (ResponseCache responseCache) {
+
+        this.responseCache = responseCache;
+    }
+
+
+    /**
+     * Makes the next crawl one part of a crawl split across several JVMs, see {@link ClusterNode}.
+     * Every node crawls the same initial URL, and fetches only the hosts it owns, so the site
+     * should span multiple hosts, e.g. subdomains, for nodes to share the load. The crawl
+     * completes once all nodes are done, and each node's pages only include its own hosts.
+     *
+     * @param clusterNode node of the cluster for the next crawl, or 'null' to crawl alone
+     */
+    public void setClusterNode (ClusterNode clusterNode) {
+
+        this.clusterNode = clusterNode;
+    }
+
+
     /**
      * Starts the crawling of provided domain.
      *
@@ -65,21 +387,38 @@ public class Crawler {
      */
     public void crawl (@NonNull String url) throws Exception {
 
-        log.debug("Crawling URL: " + url);
+        crawl(Collections.singletonList(url));
+    }
 
-        repository = new Repository();
-        urlQueue = new LinkedBlockingQueue<>();
-        fetchedDataQueue = new LinkedBlockingQueue<>();
-        parsedDataQueue = new LinkedBlockingQueue<>();
 
-        crawlDataManager = new CrawlDataManager(repository, urlQueue, parsedDataQueue);
+    /**
+     * Crawls the sites of all provided URLs at once, through the same fetchers and parsers,
+     * so hundreds of sites don't take hundreds of crawls, or copies of every thread. Each
+     * site only follows its own links, same as when crawled alone. Blocks until all sites
+     * have been crawled, see {@link #getSeeds()} and {@link #addSeedListener(SeedListener)}
+     * to follow each site's progress in the meantime.
+     *
+     * @param urls root domains to be crawled
+     * @throws Exception
+     */
+    public void crawl (@NonNull Collection<String> urls) throws Exception {
+
+        log.debug("Crawling URLs: " + urls);
+
+        if (urls.isEmpty()) throw new IllegalArgumentException("At least one URL is required");
+
+        if (checkpointDirectory != null && Checkpoint.exists(checkpointDirectory)) {
+            throw new IllegalStateException("Checkpoint already exists, resume or remove it: " + checkpointDirectory);
+        }
 
-        // Persist initial page
-        Page initialPage = new Page(url);
-        repository.save(initialPage);
+        prepare(checkpointDirectory);
 
-        // Pass initial URL to be fetched
-        urlQueue.add(initialPage.getUrl());
+        // Persist initial pages and pass them to be fetched, or to the nodes owning their hosts
+        Map<String, Seed> seeds = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (!seeds.containsKey(url)) seeds.put(url, crawlDataManager.addSeed(url));
+        }
+        this.seeds = Collections.unmodifiableMap(seeds);
 
         start();
 
@@ -87,7 +426,89 @@ public class Crawler {
 
 
     /**
-     * @return A set of fetched and parsed pages
+     * Resumes a crawl from a checkpoint. Pages that were ready when the checkpoint was
+     * written are restored without being fetched again, everything else is fetched.
+     * Progress keeps being recorded to the same checkpoint.
+     * <p>
+     * Restored pages only hold the details recorded by {@link Checkpoint}.
+     *
+     * @param checkpointDirectory directory of the checkpoint to resume from
+     * @throws Exception
+     */
+    public void resume (@NonNull Path checkpointDirectory) throws Exception {
+
+        log.debug("Resuming crawl from checkpoint: " + checkpointDirectory);
+
+        if (!Checkpoint.exists(checkpointDirectory)) {
+            throw new IllegalArgumentException("No checkpoint found in: " + checkpointDirectory);
+        }
+
+        Collection<Checkpoint.Entry> entries = Checkpoint.load(checkpointDirectory);
+
+        SeenUrlSet seenUrls = prepare(checkpointDirectory);
+        int numPending = 0;
+
+        for (Checkpoint.Entry entry : entries) {
+
+            seenUrls.add(entry.getUrl());
+
+            // Anything not ready, including pages that were being fetched, gets fetched again, and its page created once taken
+            if (entry.getState() == PageState.PENDING) {
+                crawlDataManager.enqueue(entry.getUrl());
+                numPending++;
+            } else {
+                repository.save(entry.toPage(pageIdStrategy));
+            }
+        }
+
+        log.info("Restored pages: " + entries.size() + ", left to fetch: " + numPending);
+
+        if (numPending > 0) {
+            start();
+        } else {
+            closeResources();
+        }
+    }
+
+
+    /**
+     * Creates storage, queues and data manager for a new run.
+     *
+     * @param checkpointDirectory directory to record progress in, or 'null'
+     * @return set of seen URLs used by data manager
+     */
+    private SeenUrlSet prepare (Path checkpointDirectory) throws IOException {
+
+        repository = new Repository();
+        seeds = Collections.emptyMap();
+        if (frontierDirectory != null && urlScorer != null) throw new IllegalStateException("Frontier on disk can't be ordered by score");
+
+        if (frontierDirectory != null) {
+            urlQueue = new DiskBackedStageQueue(frontierDirectory);
+        } else if (urlScorer != null) {
+            urlQueue = new PriorityFrontier(urlScorer);
+        } else {
+
+            // Never bounded, URLs are queued before the stages taking them start, and by the manager, which fetchers wait on
+            urlQueue = StageQueueType.LINKED.create(queueCapacity);
+        }
+
+        fetchedDataQueue = queueType.create(queueCapacity);
+        parsedDataQueue = queueType.create(queueCapacity);
+
+        checkpoint = checkpointDirectory != null ? new Checkpoint(checkpointDirectory) : null;
+        metrics = new CrawlMetrics(urlQueue, fetchedDataQueue, parsedDataQueue);
+
+        SeenUrlSet seenUrls = new SeenUrlSet();
+        crawlDataManager = new CrawlDataManager(repository, seenUrls, urlQueue, parsedDataQueue, listeners, seedListeners, retainPages, maxPages, checkpoint, metrics, urlDictionary, clusterNode,
+                pageIdStrategy);
+
+        return seenUrls;
+    }
+
+
+    /**
+     * @return A set of fetched and parsed pages, empty if pages are not retained, see {@link #setRetainPages(boolean)}
      */
     public HashSet<Page> getPages () {
 
@@ -95,17 +516,70 @@ public class Crawler {
     }
 
 
+    /**
+     * @param seed URL the site was crawled from, as passed to {@link #crawl(Collection)}
+     * @return fetched and parsed pages of the site, empty if pages are not retained, see {@link #setRetainPages(boolean)}
+     */
+    public HashSet<Page> getPages (@NonNull String seed) {
+
+        HashSet<Page> pages = new HashSet<>();
+
+        if (repository != null) {
+            for (Page page : repository.getItems()) {
+                if (seed.equals(page.getSeed())) pages.add(page);
+            }
+        }
+
+        return pages;
+    }
+
+
+    /**
+     * Seeds of the current, or the last, crawl, in the order given. Safe to be called
+     * from other threads while the crawl is running, to follow the progress of each site.
+     *
+     * @return seeds by URL, empty if nothing has been crawled yet, or the crawl was resumed
+     */
+    public Map<String, Seed> getSeeds () {
+
+        return seeds;
+    }
+
+
+    /**
+     * Metrics of the current, or the last, crawl. While a crawl is running, the same
+     * metrics are also exposed over JMX, named after the crawl's log 'uuid'.
+     *
+     * @return metrics, or 'null' if nothing has been crawled yet
+     */
+    public CrawlMetrics getMetrics () {
+
+        return metrics;
+    }
+
+
     private void startFetcher () {
 
-        fetcherThread = new Thread(new Fetcher(numFetchers, urlQueue, fetchedDataQueue));
+        // URLs are taken only as fetchers free up, so later URLs of higher scores can overtake those ordered by score,
+        // and those kept on disk stay there, rather than piling up in memory
+        int maxPendingUrls = urlQueue instanceof PriorityFrontier || urlQueue instanceof DiskBackedStageQueue ? numFetchers : Integer.MAX_VALUE;
+
+        fetcherThread = new Thread(new Fetcher(numFetchers, fetchMode, fetchEngine, httpVersion, minHostDelayMillis, maxConnectionsPerHost, responseCache, metrics, maxPendingUrls,
+                crawlDataManager.getFetchQueue(), fetchedDataQueue));
         fetcherThread.start();
     }
 
 
-    private void startParser () {
+    private void startParsers () {
+
+        parserThreads = new ArrayList<>(numParsers);
 
-        parserThread = new Thread(new Parser(new ParsingContextGeneric(), fetchedDataQueue, parsedDataQueue));
-        parserThread.start();
+        for (int i = 0; i < numParsers; i++) {
+
+            Thread parserThread = new Thread(new Parser(parsingContext, fetchedDataQueue, parsedDataQueue, contentStore, metrics, pageIdStrategy));
+            parserThreads.add(parserThread);
+            parserThread.start();
+        }
     }
 
 
@@ -116,32 +590,63 @@ public class Crawler {
     }
 
 
-    private boolean isRunning () {
-
-        return crawlDataManager != null ? !crawlDataManager.isDone() : false;
-    }
-
+    private void start () throws InterruptedException, IOException {
 
-    private void start () throws InterruptedException {
+        String uuid = CommonUtils.shortUUID();
 
         try (@SuppressWarnings("unused") final CloseableThreadContext.Instance ctc = CloseableThreadContext
-                .put("uuid", CommonUtils.shortUUID())
+                .put("uuid", uuid)
         ) {
 
+            metrics.register(uuid);
 
             startManager();
-            startParser();
+            startParsers();
             startFetcher();
 
-            while (isRunning()) {
-                // Periodically check if parsing is done
-                Thread.sleep(1);
-            }
+            try {
+
+                // Other nodes can only send URLs once initial ones are queued, or the crawl could end before it starts
+                if (clusterNode != null) clusterNode.start(crawlDataManager);
+
+                // Data manager signals once every queued URL has been handled, or the page budget is used up
+                if (maxMillis > 0) {
+                    if (!crawlDataManager.awaitCompletion(maxMillis, TimeUnit.MILLISECONDS)) log.info("Time budget used up: " + maxMillis + "ms");
+                } else {
+                    crawlDataManager.awaitCompletion();
+                }
+            } finally {
+
+                // Stop all stages, and wait for them, so nothing touches the queues once closed
+                fetcherThread.interrupt();
+                for (Thread parserThread : parserThreads) parserThread.interrupt();
+                dataManagerThread.interrupt();
+                if (clusterNode != null) clusterNode.close();
 
-            fetcherThread.interrupt();
-            parserThread.interrupt();
+                fetcherThread.join();
+                for (Thread parserThread : parserThreads) parserThread.join();
+                dataManagerThread.join();
+
+                closeResources();
+            }
 
             log.info("END");
         }
     }
+
+
+    /**
+     * Releases anything held by the queues, e.g. frontier files, writes out the checkpoint,
+     * and removes metrics from JMX.
+     */
+    private void closeResources () {
+
+        metrics.unregister();
+
+        urlQueue.close();
+        fetchedDataQueue.close();
+        parsedDataQueue.close();
+
+        if (checkpoint != null) checkpoint.close();
+    }
 }
@@ -0,0 +1,24 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+
+
+/**
+ * Receives pages as soon as they have been fetched and parsed,
+ * so processing can overlap with the crawl.
+ * <p>
+ * Listeners are called from the data manager thread, one page at
+ * a time, so anything slow should be handed off to another thread.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface PageListener {
+
+
+    /**
+     * @param page fetched and parsed page, in {@link com.rimusdesign.webcrawler.model.PageState#READY} state
+     */
+    void onPage (Page page);
+
+}
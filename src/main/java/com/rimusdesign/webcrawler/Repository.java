@@ -4,43 +4,121 @@ package com.rimusdesign.webcrawler;
 import com.rimusdesign.webcrawler.model.Page;
 import com.rimusdesign.webcrawler.model.PageState;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
+ * Thread safe storage of {@link Page} instances.
+ * <p>
+ * Keeps a count of stored pages per {@link PageState}, which is updated
+ * on every save, so state checks don't need to scan stored pages.
+ *
  * @author Rimas Krivickas.
  */
 public class Repository {
 
 
-    private HashMap<String, Page> items = new HashMap<>();
+    private final ConcurrentHashMap<String, Entry> items = new ConcurrentHashMap<>();
+    private final EnumMap<PageState, AtomicLong> stateCounts = new EnumMap<>(PageState.class);
 
 
+    public Repository () {
+
+        for (PageState state : PageState.values()) {
+            stateCounts.put(state, new AtomicLong());
+        }
+    }
+
+
+    /**
+     * Stores the page, replacing a previously stored page with the same ID.
+     *
+     * @param page instance to be stored
+     */
     public void save (Page page) {
 
-        items.put(page.getId(), page);
+        // Capture the state at the time of saving, as the page itself is mutable
+        final Entry entry = new Entry(page, page.getState());
+
+        items.compute(page.getId(), (id, previous) -> {
+
+            // Counters are updated within 'compute', which is atomic per ID.
+            // Increment goes first, so counts never dip below actual values
+            stateCounts.get(entry.state).incrementAndGet();
+            if (previous != null) stateCounts.get(previous.state).decrementAndGet();
+
+            return entry;
+        });
     }
 
 
+    /**
+     * @return stored pages, apart from evicted ones
+     */
     public HashSet<Page> getItems () {
 
-        return new HashSet<>(items.values());
+        HashSet<Page> pages = new HashSet<>();
+        for (Entry entry : items.values()) {
+            if (entry.page != null) pages.add(entry.page);
+        }
+        return pages;
+    }
+
+
+    /**
+     * Drops the stored page to free memory, but keeps its ID and state,
+     * so it is still contained and counted.
+     *
+     * @param id ID of the page to evict
+     */
+    public void evict (String id) {
+
+        items.computeIfPresent(id, (key, entry) -> entry.page != null ? new Entry(null, entry.state) : entry);
     }
 
 
     public boolean contains (String id) {
 
-        return items.keySet().contains(id);
+        return items.containsKey(id);
+    }
+
+
+    /**
+     * @param state state to count pages for
+     *
+     * @return number of stored pages that were in provided state when saved
+     */
+    public long count (PageState state) {
+
+        return stateCounts.get(state).get();
     }
 
 
     public boolean hasPendingItems () {
 
-        for (Page page : items.values()) {
-            if (page.getState().equals(PageState.PENDING)) return true;
+        return count(PageState.PENDING) > 0;
+    }
+
+
+    /**
+     * Stored page, along with its state at the time of saving.
+     * Page is 'null' once evicted.
+     */
+    private static final class Entry {
+
+
+        private final Page page;
+        private final PageState state;
+
+
+        private Entry (Page page, PageState state) {
+
+            this.page = page;
+            this.state = state;
         }
-        return false;
     }
 
 }
@@ -0,0 +1,132 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * One of the initial URLs of a crawl, and the progress of crawling its site.
+ * <p>
+ * Every URL queued for fetching is counted towards the seed of the page it was found
+ * on, so each seed keeps its own count of URLs in flight, and completes as soon as
+ * its count drops to zero, regardless of other seeds.
+ * <p>
+ * Thread safe.
+ *
+ * @author Rimas Krivickas.
+ */
+public class Seed {
+
+
+    @Getter
+    private final String url;
+
+    /**
+     * Domain of the seed, see {@link CommonUtils#stripDomain(String)}
+     */
+    @Getter
+    private final String domain;
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong pageCount = new AtomicLong();
+    private final CountDownLatch completion = new CountDownLatch(1);
+
+
+    /**
+     * @param url initial URL of the site
+     */
+    public Seed (@NonNull String url) {
+
+        this.url = url;
+        this.domain = CommonUtils.stripDomain(url);
+    }
+
+
+    /**
+     * @return number of pages of the site crawled so far
+     */
+    public long getPageCount () {
+
+        return pageCount.get();
+    }
+
+
+    /**
+     * @return 'true' once the site has been crawled
+     */
+    public boolean isDone () {
+
+        return completion.getCount() == 0;
+    }
+
+
+    /**
+     * Blocks until the site has been crawled, or the crawl has stopped.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCompletion () throws InterruptedException {
+
+        completion.await();
+    }
+
+
+    /**
+     * @return 'true' if the site has been crawled within provided time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion (long timeout, TimeUnit unit) throws InterruptedException {
+
+        return completion.await(timeout, unit);
+    }
+
+
+    /**
+     * Counts a URL of the site as in flight.
+     */
+    void enqueued () {
+
+        inFlight.incrementAndGet();
+    }
+
+
+    /**
+     * Counts a page of the site as crawled, after URLs found on it have been queued.
+     *
+     * @return 'true' if it was the last page in flight
+     */
+    boolean handled () {
+
+        pageCount.incrementAndGet();
+        return inFlight.decrementAndGet() == 0;
+    }
+
+
+    /**
+     * @return 'true' if the seed has just completed, 'false' if it had already
+     */
+    boolean complete () {
+
+        synchronized (completion) {
+
+            if (isDone()) return false;
+
+            completion.countDown();
+            return true;
+        }
+    }
+
+
+    @Override
+    public String toString () {
+
+        return url;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.rimusdesign.webcrawler;
+
+
+/**
+ * Receives seeds of a multi-seed crawl as soon as their sites have been crawled,
+ * while other sites may still be crawling.
+ * <p>
+ * Called from the data manager thread, same as {@link PageListener}.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface SeedListener {
+
+
+    /**
+     * @param seed seed whose site has been crawled
+     */
+    void onSeedComplete (Seed seed);
+
+}
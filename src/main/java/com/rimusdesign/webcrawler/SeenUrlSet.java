@@ -0,0 +1,223 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import lombok.NonNull;
+
+
+/**
+ * Compact set of URLs discovered during a crawl, used to make sure
+ * each URL is only queued for fetching once.
+ * <p>
+ * Only a 64-bit fingerprint of each URL is kept, in an open addressing
+ * table of primitive 'long' values, so memory use is about 8-16 bytes
+ * per URL. Two URLs sharing a fingerprint is improbable, but would
+ * cause the second one to be skipped.
+ * <p>
+ * Optionally, a Bloom filter is kept in front of the table, to answer
+ * most lookups of new URLs without probing the table.
+ *
+ * @author Rimas Krivickas.
+ */
+public class SeenUrlSet {
+
+
+    public static final int DEFAULT_EXPECTED_SIZE = 1024;
+
+    // Marks empty table slots, fingerprints of this value are remapped
+    private static final long EMPTY = 0;
+
+    private static final int BLOOM_BITS_PER_ITEM = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final boolean useBloomFilter;
+
+    // Guarded by 'this'
+    private long[] table;
+    private int size;
+    private long[] bloomBits;
+
+
+    /**
+     * @param expectedSize   expected number of URLs, the set grows as needed
+     * @param useBloomFilter 'true' to keep a Bloom filter in front of the table
+     */
+    public SeenUrlSet (int expectedSize, boolean useBloomFilter) {
+
+        if (expectedSize < 1) throw new IllegalArgumentException("Expected size must be positive");
+        if (expectedSize > 1 << 29) throw new IllegalArgumentException("Expected size is too large");
+
+        this.useBloomFilter = useBloomFilter;
+
+        // Keep load factor at or under one half
+        table = new long[tableSizeFor(expectedSize)];
+        if (useBloomFilter) bloomBits = new long[bloomWordsFor(table.length / 2)];
+    }
+
+
+    public SeenUrlSet () {
+
+        this(DEFAULT_EXPECTED_SIZE, false);
+    }
+
+
+    /**
+     * Adds URL to the set.
+     *
+     * @param url URL to add
+     * @return 'true' if URL has not been seen before
+     */
+    public boolean add (@NonNull String url) {
+
+        return add(CommonUtils.fingerprint(url));
+    }
+
+
+    /**
+     * Adds URL by its fingerprint, for URLs already fingerprinted, e.g. by
+     * {@link com.rimusdesign.webcrawler.utils.UrlCanonicalizer}.
+     *
+     * @param fingerprint fingerprint of the URL, see {@link CommonUtils#fingerprint(String)}
+     * @return 'true' if URL has not been seen before
+     */
+    public synchronized boolean add (long fingerprint) {
+
+        if (fingerprint == EMPTY) fingerprint = 1;
+
+        if (useBloomFilter && !bloomMightContain(fingerprint)) {
+
+            // Definitely new, no need to look it up
+            insert(fingerprint);
+            return true;
+        }
+
+        int mask = table.length - 1;
+        for (int i = index(fingerprint, mask); ; i = (i + 1) & mask) {
+
+            if (table[i] == fingerprint) return false;
+            if (table[i] == EMPTY) break;
+        }
+
+        insert(fingerprint);
+        return true;
+    }
+
+
+    /**
+     * @param url URL to look for
+     * @return 'true' if URL has been added to the set
+     */
+    public synchronized boolean contains (@NonNull String url) {
+
+        long fingerprint = fingerprint(url);
+
+        if (useBloomFilter && !bloomMightContain(fingerprint)) return false;
+
+        int mask = table.length - 1;
+        for (int i = index(fingerprint, mask); table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == fingerprint) return true;
+        }
+        return false;
+    }
+
+
+    public synchronized int size () {
+
+        return size;
+    }
+
+
+    /**
+     * Inserts fingerprint known to be missing from the table.
+     */
+    private void insert (long fingerprint) {
+
+        if ((size + 1) * 2 > table.length) grow();
+
+        putInTable(table, fingerprint);
+        if (useBloomFilter) bloomAdd(fingerprint);
+        size++;
+    }
+
+
+    private void grow () {
+
+        if (table.length >= 1 << 30) throw new IllegalStateException("Set is full");
+
+        long[] previous = table;
+        table = new long[previous.length * 2];
+        if (useBloomFilter) bloomBits = new long[bloomWordsFor(table.length / 2)];
+
+        for (long fingerprint : previous) {
+            if (fingerprint != EMPTY) {
+                putInTable(table, fingerprint);
+                if (useBloomFilter) bloomAdd(fingerprint);
+            }
+        }
+    }
+
+
+    private static void putInTable (long[] table, long fingerprint) {
+
+        int mask = table.length - 1;
+        int i = index(fingerprint, mask);
+        while (table[i] != EMPTY) i = (i + 1) & mask;
+        table[i] = fingerprint;
+    }
+
+
+    private boolean bloomMightContain (long fingerprint) {
+
+        long numBits = (long) bloomBits.length << 6;
+        int hash1 = (int) fingerprint;
+        int hash2 = (int) (fingerprint >>> 32);
+
+        // Derive the hashes from two halves of the fingerprint
+        for (int i = 1; i <= BLOOM_HASHES; i++) {
+            long bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % numBits;
+            if ((bloomBits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+
+    private void bloomAdd (long fingerprint) {
+
+        long numBits = (long) bloomBits.length << 6;
+        int hash1 = (int) fingerprint;
+        int hash2 = (int) (fingerprint >>> 32);
+
+        for (int i = 1; i <= BLOOM_HASHES; i++) {
+            long bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % numBits;
+            bloomBits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+
+    private static long fingerprint (String url) {
+
+        long fingerprint = CommonUtils.fingerprint(url);
+        return fingerprint != EMPTY ? fingerprint : 1;
+    }
+
+
+    private static int index (long fingerprint, int mask) {
+
+        // Fingerprints are well mixed, low bits will do
+        return (int) fingerprint & mask;
+    }
+
+
+    private static int tableSizeFor (int expectedSize) {
+
+        int size = Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+        return Math.max(size, 16);
+    }
+
+
+    private static int bloomWordsFor (int items) {
+
+        return Math.max(1, (int) (((long) items * BLOOM_BITS_PER_ITEM + 63) / 64));
+    }
+
+}
@@ -0,0 +1,419 @@
+package com.rimusdesign.webcrawler.checkpoint;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
+import com.rimusdesign.webcrawler.model.PageState;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Records crawl progress to local disk, so a crawl can be resumed after the JVM dies.
+ * <p>
+ * Every page that gets queued for fetching, or becomes ready, is appended to a
+ * write-ahead log. Once enough entries have been logged, the log is compacted into
+ * a snapshot holding the latest entry per URL, and the compacted log files are deleted.
+ * <p>
+ * Recording only hands entries over to a background writer thread, so pipeline
+ * threads never wait on disk. The log is flushed at least once per flush interval,
+ * hence entries recorded within that interval before a crash may be lost, in which
+ * case those pages are fetched again on resume.
+ *
+ * @author Rimas Krivickas.
+ */
+public class Checkpoint implements Closeable {
+
+
+    private static final Logger log = LoggerFactory.getLogger(Checkpoint.class);
+
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final String SNAPSHOT_FILE = "snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+    private static final String LOG_FILE_PREFIX = "wal-";
+
+    // Strings written with 'writeUTF' are limited to 64KB
+    private static final int MAX_STRING_LENGTH = 16 * 1024;
+
+    private final Path directory;
+    private final int snapshotInterval;
+    private final long flushIntervalMillis;
+
+    private final LinkedBlockingQueue<Entry> entries = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean isRunning = true;
+
+    // Used by writer thread only
+    private DataOutputStream logStream;
+    private long logNumber;
+    private int entriesSinceSnapshot;
+
+
+    /**
+     * Opens the checkpoint in provided directory, appending to any progress recorded there before.
+     *
+     * @param directory           directory to keep checkpoint files in
+     * @param snapshotInterval    number of logged entries after which the log is compacted
+     * @param flushIntervalMillis maximum time logged entries are kept in memory before being written out
+     * @throws IOException if log file can't be created
+     */
+    public Checkpoint (@NonNull Path directory, int snapshotInterval, long flushIntervalMillis) throws IOException {
+
+        if (snapshotInterval < 1) throw new IllegalArgumentException("Snapshot interval must be positive");
+        if (flushIntervalMillis < 1) throw new IllegalArgumentException("Flush interval must be positive");
+
+        this.directory = Files.createDirectories(directory);
+        this.snapshotInterval = snapshotInterval;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        // Continue after the last log file left by a previous run
+        List<Long> logNumbers = findLogNumbers(directory);
+        logNumber = logNumbers.isEmpty() ? 0 : logNumbers.get(logNumbers.size() - 1) + 1;
+        logStream = openLog(logNumber);
+
+        writerThread = new Thread(this::write, "checkpoint-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+
+    /**
+     * @param directory directory to keep checkpoint files in
+     * @throws IOException if log file can't be created
+     */
+    public Checkpoint (@NonNull Path directory) throws IOException {
+
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+
+    /**
+     * Records a page that has been queued for fetching.
+     *
+     * @param url URL of the page
+     */
+    public void recordPending (@NonNull String url) {
+
+        entries.add(new Entry(url, PageState.PENDING, 0, null, null));
+    }
+
+
+    /**
+     * Records a page that has been fetched and parsed.
+     *
+     * @param page ready page
+     */
+    public void recordReady (@NonNull Page page) {
+
+        entries.add(new Entry(page.getUrl(), PageState.READY, page.getStatusCode(), page.getMimeType(), page.getTitle()));
+    }
+
+
+    /**
+     * Writes out all recorded entries, compacts the log, and stops the writer thread.
+     */
+    @Override
+    public void close () {
+
+        isRunning = false;
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * @param directory checkpoint directory
+     * @return 'true' if any progress has been recorded in provided directory
+     */
+    public static boolean exists (@NonNull Path directory) {
+
+        return Files.exists(directory.resolve(SNAPSHOT_FILE)) || !findLogNumbers(directory).isEmpty();
+    }
+
+
+    /**
+     * Reads all progress recorded in provided directory.
+     *
+     * @param directory checkpoint directory
+     * @return latest entry per URL, in the order URLs have been discovered
+     * @throws IOException if checkpoint files can't be read
+     */
+    public static Collection<Entry> load (@NonNull Path directory) throws IOException {
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+
+        readInto(directory.resolve(SNAPSHOT_FILE), entries);
+        for (long number : findLogNumbers(directory)) readInto(logPath(directory, number), entries);
+
+        return entries.values();
+    }
+
+
+    /**
+     * Writer thread loop. Writes entries as they come, and flushes the log
+     * once the flush interval passes, or when there's nothing else to do.
+     */
+    private void write () {
+
+        long lastFlush = System.nanoTime();
+        Entry entry;
+
+        try {
+
+            while (isRunning || !entries.isEmpty()) {
+
+                entry = entries.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+                if (entry != null) {
+                    writeEntry(logStream, entry);
+                    entriesSinceSnapshot++;
+                }
+
+                if (entry == null || System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis)) {
+                    logStream.flush();
+                    lastFlush = System.nanoTime();
+                }
+
+                if (entriesSinceSnapshot >= snapshotInterval) snapshot();
+            }
+
+            logStream.flush();
+            if (entriesSinceSnapshot > 0) snapshot();
+            logStream.close();
+        } catch (IOException e) {
+
+            // Crawl can go on, but it will only be resumable from the last flushed entry
+            log.error("Checkpoint writing failed, progress is no longer recorded: " + e.getMessage());
+        } catch (InterruptedException e) {
+
+            log.debug("Checkpoint writer interrupted");
+        }
+    }
+
+
+    /**
+     * Starts a new log file, then merges the snapshot and all previous log files into a new snapshot.
+     */
+    private void snapshot () throws IOException {
+
+        logStream.close();
+        long lastCompacted = logNumber;
+        logStream = openLog(++logNumber);
+
+        Map<String, Entry> merged = new LinkedHashMap<>();
+        readInto(directory.resolve(SNAPSHOT_FILE), merged);
+
+        List<Long> compacted = new ArrayList<>();
+        for (long number : findLogNumbers(directory)) {
+            if (number > lastCompacted) break;
+            readInto(logPath(directory, number), merged);
+            compacted.add(number);
+        }
+
+        Path tempPath = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            for (Entry entry : merged.values()) writeEntry(out, entry);
+        }
+
+        // Replace snapshot in one step, so there's always a complete one on disk
+        Files.move(tempPath, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Logs are merged into the snapshot now. Should a crash happen before they're all
+        // deleted, replaying them again is harmless, as ready pages are never downgraded
+        for (long number : compacted) Files.deleteIfExists(logPath(directory, number));
+
+        entriesSinceSnapshot = 0;
+
+        log.debug("Checkpoint snapshot written, entries: " + merged.size());
+    }
+
+
+    private DataOutputStream openLog (long number) throws IOException {
+
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(logPath(directory, number))));
+    }
+
+
+    private static void writeEntry (DataOutputStream out, Entry entry) throws IOException {
+
+        out.writeByte(entry.state.ordinal());
+        out.writeUTF(truncate(entry.url));
+        out.writeInt(entry.statusCode);
+        writeNullable(out, entry.mimeType);
+        writeNullable(out, entry.title);
+    }
+
+
+    private static void writeNullable (DataOutputStream out, String value) throws IOException {
+
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(truncate(value));
+    }
+
+
+    /**
+     * Reads all complete entries from provided file, if it exists, into the map.
+     * An incomplete entry at the end of the file is left out, as it has been cut
+     * short by a crash.
+     */
+    private static void readInto (Path path, Map<String, Entry> entries) throws IOException {
+
+        if (!Files.exists(path)) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+            Entry entry;
+            Entry previous;
+
+            while (true) {
+
+                try {
+                    entry = new Entry(PageState.values()[in.readUnsignedByte()], in);
+                } catch (EOFException e) {
+                    return;
+                }
+
+                // Never downgrade a ready page back to pending
+                previous = entries.get(entry.url);
+                if (previous == null || entry.state == PageState.READY || previous.state != PageState.READY) {
+                    entries.put(entry.url, entry);
+                }
+            }
+        }
+    }
+
+
+    private static List<Long> findLogNumbers (Path directory) {
+
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return numbers;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, LOG_FILE_PREFIX + "*")) {
+
+            for (Path path : stream) {
+                try {
+                    numbers.add(Long.parseLong(path.getFileName().toString().substring(LOG_FILE_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping unexpected file: " + path);
+                }
+            }
+        } catch (IOException e) {
+
+            throw new UncheckedIOException("Failed to list checkpoint files in: " + directory, e);
+        }
+
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+
+    private static Path logPath (Path directory, long number) {
+
+        return directory.resolve(LOG_FILE_PREFIX + number);
+    }
+
+
+    private static String truncate (String value) {
+
+        return value.length() > MAX_STRING_LENGTH ? value.substring(0, MAX_STRING_LENGTH) : value;
+    }
+
+
+    /**
+     * Recorded state of a single page.
+     */
+    public static final class Entry {
+
+
+        private final String url;
+        private final PageState state;
+        private final int statusCode;
+        private final String mimeType;
+        private final String title;
+
+
+        private Entry (String url, PageState state, int statusCode, String mimeType, String title) {
+
+            this.url = url;
+            this.state = state;
+            this.statusCode = statusCode;
+            this.mimeType = mimeType;
+            this.title = title;
+        }
+
+
+        private Entry (PageState state, DataInputStream in) throws IOException {
+
+            this.state = state;
+            this.url = in.readUTF();
+            this.statusCode = in.readInt();
+            this.mimeType = in.readBoolean() ? in.readUTF() : null;
+            this.title = in.readBoolean() ? in.readUTF() : null;
+        }
+
+
+        public String getUrl () {
+
+            return url;
+        }
+
+
+        public PageState getState () {
+
+            return state;
+        }
+
+
+        /**
+         * @return page with recorded details. Raw data, and lists of URLs found on the page, are not recorded
+         */
+        public Page toPage () {
+
+            return toPage(PageIdStrategy.SHA_256);
+        }
+
+
+        /**
+         * @param idStrategy how to generate the ID of the page, the same as for the rest of the crawl
+         * @return page with recorded details, see {@link #toPage()}
+         */
+        public Page toPage (PageIdStrategy idStrategy) {
+
+            Page page = new Page(url, idStrategy);
+            page.setState(state);
+            page.setStatusCode(statusCode);
+            page.setMimeType(mimeType);
+            page.setTitle(title);
+            return page;
+        }
+    }
+
+}
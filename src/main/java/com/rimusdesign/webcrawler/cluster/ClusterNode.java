@@ -0,0 +1,524 @@
+package com.rimusdesign.webcrawler.cluster;
+
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * One of the nodes of a crawl split across several JVMs, e.g. on different machines.
+ * <p>
+ * Every node is given the same list of node addresses, and owns the hosts assigned to
+ * it by {@link HostPartitioner}. URLs of hosts owned by other nodes are forwarded to
+ * them in batches, over one connection per peer, and each node only fetches and dedupes
+ * URLs of its own hosts, so nodes share nothing but the URLs they forward.
+ * <p>
+ * The first node in the list also detects the end of the crawl. It keeps probing all
+ * nodes for whether they are idle, and for the number of URLs they have sent and
+ * received. Once two probes in a row find every node idle, with the same counts and
+ * every URL sent received, no URL can be left anywhere, and all nodes are told to
+ * complete. The crawl therefore doesn't complete until every node has been started,
+ * and nodes are expected to stay up until it does.
+ * <p>
+ * A node serves a single crawl, it's started by the crawler and closed when the crawl ends.
+ *
+ * @author Rimas Krivickas.
+ */
+public class ClusterNode implements Closeable {
+
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterNode.class);
+
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long PROBE_INTERVAL_MILLIS = 100;
+    private static final long RETRY_DELAY_MILLIS = 100;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int MAX_DONE_ATTEMPTS = 50;
+
+    // Message types
+    private static final int URLS = 1;
+    private static final int STATUS = 2;
+    private static final int DONE = 3;
+
+    private final List<InetSocketAddress> nodes;
+    private final int localIndex;
+    private final HostPartitioner partitioner;
+
+    // By node index, 'null' for the local node
+    private final Forwarder[] forwarders;
+
+    // Guarded by itself. Number of the last batch handled, by sending node index
+    private final long[] lastBatches;
+
+    // URLs queued to be forwarded, and URLs received and handed to the local crawl
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private volatile LocalCrawl localCrawl;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean isClosed;
+
+
+    /**
+     * @param nodes      addresses of all nodes, in the same order on every node
+     * @param localIndex index of this node's address, which it listens on
+     */
+    public ClusterNode (@NonNull List<InetSocketAddress> nodes, int localIndex) {
+
+        if (nodes.isEmpty()) throw new IllegalArgumentException("At least one node is required");
+        if (localIndex < 0 || localIndex >= nodes.size()) throw new IllegalArgumentException("No node at index: " + localIndex);
+
+        this.nodes = new ArrayList<>(nodes);
+        this.localIndex = localIndex;
+
+        List<String> names = new ArrayList<>(nodes.size());
+        for (InetSocketAddress node : nodes) names.add(node.getHostString() + ":" + node.getPort());
+        partitioner = new HostPartitioner(names);
+
+        forwarders = new Forwarder[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i != localIndex) forwarders[i] = new Forwarder(i);
+        }
+
+        lastBatches = new long[nodes.size()];
+    }
+
+
+    /**
+     * @param url URL to be crawled
+     *
+     * @return 'true' if the host of provided URL is owned by this node
+     */
+    public boolean isLocal (@NonNull String url) {
+
+        return partitioner.ownerOf(url) == localIndex;
+    }
+
+
+    /**
+     * Queues provided URL to be sent to the node owning its host. Doesn't block,
+     * URLs queued before the node is started are sent once it is.
+     *
+     * @param url URL of a host owned by another node
+     */
+    public void forward (@NonNull String url) {
+
+        int owner = partitioner.ownerOf(url);
+        if (owner == localIndex) throw new IllegalArgumentException("URL is owned by the local node: " + url);
+
+        // Counted before it can possibly be received
+        sent.incrementAndGet();
+        forwarders[owner].queue.add(url);
+    }
+
+
+    /**
+     * Starts listening for URLs from other nodes, and forwarding URLs to them.
+     * Meant to be called once initial URLs have been offered to the local crawl,
+     * as the crawl can't complete before every node has been started.
+     *
+     * @param localCrawl local part of the crawl, to hand received URLs to
+     * @throws IOException if this node's address can't be listened on
+     */
+    public synchronized void start (@NonNull LocalCrawl localCrawl) throws IOException {
+
+        if (this.localCrawl != null) throw new IllegalStateException("Cluster node already started");
+        if (isClosed) throw new IllegalStateException("Cluster node closed");
+
+        this.localCrawl = localCrawl;
+
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(nodes.get(localIndex).getPort()));
+
+        log.info("Cluster node " + localIndex + " of " + nodes.size() + " listening on port: " + serverSocket.getLocalPort());
+
+        startThread(this::accept, "cluster-accept");
+        for (Forwarder forwarder : forwarders) {
+            if (forwarder != null) startThread(forwarder, "cluster-forwarder-" + forwarder.index);
+        }
+        if (localIndex == 0) startThread(this::coordinate, "cluster-coordinator");
+    }
+
+
+    /**
+     * Stops all communication with other nodes.
+     */
+    @Override
+    public void close () {
+
+        isClosed = true;
+
+        closeQuietly(serverSocket);
+        for (Socket socket : sockets) closeQuietly(socket);
+        for (Thread thread : threads) thread.interrupt();
+    }
+
+
+    /**
+     * @return number of URLs forwarded to other nodes so far
+     */
+    public long getSentCount () {
+
+        return sent.get();
+    }
+
+
+    /**
+     * @return number of URLs received from other nodes so far
+     */
+    public long getReceivedCount () {
+
+        return received.get();
+    }
+
+
+    private void startThread (Runnable runnable, String name) {
+
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+
+    private void accept () {
+
+        while (!isClosed) {
+            try {
+
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                startThread(() -> serve(socket), "cluster-connection");
+            } catch (IOException e) {
+
+                if (!isClosed) log.error("Failed to accept connection", e);
+            }
+        }
+    }
+
+
+    /**
+     * Handles messages received over provided connection, until it's closed.
+     */
+    private void serve (Socket socket) {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))
+        ) {
+
+            int type;
+            while ((type = in.read()) >= 0) {
+                switch (type) {
+                    case URLS:
+                        receive(in);
+                        break;
+                    case STATUS:
+                        out.writeBoolean(localCrawl.isIdle());
+                        out.writeLong(sent.get());
+                        out.writeLong(received.get());
+                        out.flush();
+                        break;
+                    case DONE:
+                        log.info("Cluster crawl complete");
+                        localCrawl.complete();
+                        break;
+                    default:
+                        throw new IOException("Unknown message type: " + type);
+                }
+            }
+        } catch (IOException e) {
+
+            if (!isClosed) log.debug("Connection failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+
+            log.debug("Interrupted while handing over URLs");
+        } finally {
+
+            sockets.remove(socket);
+            closeQuietly(socket);
+            threads.remove(Thread.currentThread());
+        }
+    }
+
+
+    private void receive (DataInputStream in) throws IOException, InterruptedException {
+
+        int sender = in.readInt();
+        if (sender < 0 || sender >= nodes.size()) throw new IOException("Unknown node: " + sender);
+
+        long batch = in.readLong();
+        int size = in.readInt();
+
+        String[] urls = new String[size];
+        for (int i = 0; i < size; i++) urls[i] = readUrl(in);
+
+        // Batches are resent if delivery fails midway, skip the ones already handled
+        synchronized (lastBatches) {
+            if (batch <= lastBatches[sender]) return;
+            lastBatches[sender] = batch;
+        }
+
+        for (String url : urls) localCrawl.offer(url);
+
+        // Counted only once handed over, so the local crawl is busy by then, unless URLs were seen
+        received.addAndGet(size);
+    }
+
+
+    /**
+     * Writes URL as length prefixed UTF-8, as URLs can be longer than
+     * {@link DataOutputStream#writeUTF(String)} allows.
+     */
+    private static void writeUrl (DataOutputStream out, String url) throws IOException {
+
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    private static String readUrl (DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid URL length: " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Probes all nodes until the crawl is found complete, then tells every node to complete.
+     */
+    private void coordinate () {
+
+        long[] previous = null;
+
+        try {
+
+            while (!isClosed) {
+
+                Thread.sleep(PROBE_INTERVAL_MILLIS);
+
+                long[] totals = probeAll();
+
+                // Nothing moved between two probes, and nothing is on its way
+                if (totals != null && totals[0] == totals[1] && Arrays.equals(totals, previous)) {
+
+                    for (int i = 0; i < nodes.size(); i++) {
+                        if (i != localIndex) sendDone(i);
+                    }
+
+                    log.info("Cluster crawl complete, URLs forwarded: " + totals[0]);
+                    localCrawl.complete();
+                    return;
+                }
+
+                previous = totals;
+            }
+        } catch (InterruptedException e) {
+
+            log.debug("Interrupted before cluster crawl completed");
+        }
+    }
+
+
+    /**
+     * @return total URLs sent and received by all nodes, or 'null' if any of them is busy or not reachable
+     */
+    private long[] probeAll () {
+
+        long[] totals = new long[2];
+
+        for (int i = 0; i < nodes.size(); i++) {
+
+            if (i == localIndex) {
+
+                if (!localCrawl.isIdle()) return null;
+                totals[0] += sent.get();
+                totals[1] += received.get();
+                continue;
+            }
+
+            try (Socket socket = connect(i);
+                 DataInputStream in = new DataInputStream(socket.getInputStream());
+                 DataOutputStream out = new DataOutputStream(socket.getOutputStream())
+            ) {
+
+                out.writeByte(STATUS);
+                out.flush();
+
+                if (!in.readBoolean()) return null;
+                totals[0] += in.readLong();
+                totals[1] += in.readLong();
+            } catch (IOException e) {
+
+                log.debug("Node " + i + " not reachable: " + e.getMessage());
+                return null;
+            }
+        }
+
+        return totals;
+    }
+
+
+    private void sendDone (int index) throws InterruptedException {
+
+        for (int attempt = 1; ; attempt++) {
+
+            try (Socket socket = connect(index);
+                 DataOutputStream out = new DataOutputStream(socket.getOutputStream())
+            ) {
+
+                out.writeByte(DONE);
+                out.flush();
+                return;
+            } catch (IOException e) {
+
+                if (attempt == MAX_DONE_ATTEMPTS) {
+                    log.error("Failed to tell node " + index + " to complete", e);
+                    return;
+                }
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+
+    private Socket connect (int index) throws IOException {
+
+        Socket socket = new Socket();
+        try {
+
+            socket.setTcpNoDelay(true);
+            socket.connect(nodes.get(index), CONNECT_TIMEOUT_MILLIS);
+            return socket;
+        } catch (IOException e) {
+
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+
+    private static void closeQuietly (Closeable closeable) {
+
+        if (closeable == null) return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("Failed to close: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Sends URLs queued for one of the other nodes, in batches of whatever
+     * has been queued since the previous batch went out.
+     */
+    private final class Forwarder implements Runnable {
+
+
+        private final int index;
+        private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+
+        private Socket socket;
+        private DataOutputStream out;
+        private long batch;
+
+
+        private Forwarder (int index) {
+
+            this.index = index;
+        }
+
+
+        @Override
+        public void run () {
+
+            List<String> urls = new ArrayList<>(MAX_BATCH_SIZE);
+
+            try {
+
+                while (!isClosed) {
+
+                    urls.add(queue.take());
+                    queue.drainTo(urls, MAX_BATCH_SIZE - 1);
+                    batch++;
+
+                    // Keep retrying, the node may not be up yet
+                    while (!send(urls)) Thread.sleep(RETRY_DELAY_MILLIS);
+
+                    urls.clear();
+                }
+            } catch (InterruptedException e) {
+
+                log.debug("Forwarder interrupted, node: " + index);
+            } finally {
+
+                closeQuietly(socket);
+            }
+        }
+
+
+        /**
+         * @return 'true' if the batch has been written out
+         */
+        private boolean send (List<String> urls) {
+
+            try {
+
+                if (out == null) {
+                    socket = connect(index);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                }
+
+                out.writeByte(URLS);
+                out.writeInt(localIndex);
+                out.writeLong(batch);
+                out.writeInt(urls.size());
+                for (String url : urls) writeUrl(out, url);
+                out.flush();
+
+                return true;
+            } catch (IOException e) {
+
+                log.debug("Failed to send URLs to node " + index + ": " + e.getMessage());
+
+                closeQuietly(socket);
+                socket = null;
+                out = null;
+
+                return false;
+            }
+        }
+    }
+
+}
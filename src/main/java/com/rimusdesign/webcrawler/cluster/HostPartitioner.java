@@ -0,0 +1,92 @@
+package com.rimusdesign.webcrawler.cluster;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Assigns hosts to nodes of a cluster by consistent hashing.
+ * <p>
+ * Each node is placed on a ring of 64-bit fingerprints at a number of points derived
+ * from its name, and a host belongs to the node at the first point following the
+ * fingerprint of the host. The assignment only depends on node names, so every node
+ * computes the same one, and adding a node to a cluster of 'n' only moves about
+ * '1/(n+1)' of the hosts.
+ * <p>
+ * Hosts are compared as returned by {@link CommonUtils#stripDomain(String)}, so all
+ * URLs of a site, with or without 'www.', and on any port, belong to the same node.
+ *
+ * @author Rimas Krivickas.
+ */
+public class HostPartitioner {
+
+
+    /**
+     * Points per node, enough to keep the share of hosts of each node within a few percent
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 256;
+
+    // Points of the ring in ascending order, and the node each one belongs to
+    private final long[] points;
+    private final int[] owners;
+
+
+    /**
+     * @param nodeNames    unique names of all nodes, e.g. their addresses, in the same order on every node
+     * @param virtualNodes number of points of each node on the ring
+     */
+    public HostPartitioner (@NonNull List<String> nodeNames, int virtualNodes) {
+
+        if (nodeNames.isEmpty()) throw new IllegalArgumentException("At least one node is required");
+        if (virtualNodes < 1) throw new IllegalArgumentException("At least one virtual node is required");
+
+        int size = nodeNames.size() * virtualNodes;
+
+        // Sort points along with their owners, packed as (point, owner) pairs sorted by point
+        long[][] pairs = new long[size][];
+        for (int node = 0; node < nodeNames.size(); node++) {
+            for (int i = 0; i < virtualNodes; i++) {
+                pairs[node * virtualNodes + i] = new long[]{CommonUtils.fingerprint(nodeNames.get(node) + "#" + i), node};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+
+        points = new long[size];
+        owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+    }
+
+
+    /**
+     * @param nodeNames unique names of all nodes, in the same order on every node
+     */
+    public HostPartitioner (@NonNull List<String> nodeNames) {
+
+        this(nodeNames, DEFAULT_VIRTUAL_NODES);
+    }
+
+
+    /**
+     * @param url a URL
+     *
+     * @return index of the node owning the host of provided URL
+     */
+    public int ownerOf (@NonNull String url) {
+
+        long fingerprint = CommonUtils.fingerprint(CommonUtils.stripDomain(url));
+
+        int i = Arrays.binarySearch(points, fingerprint);
+        if (i < 0) i = -i - 1;
+
+        // Past the last point wraps around to the first one
+        return owners[i == points.length ? 0 : i];
+    }
+
+}
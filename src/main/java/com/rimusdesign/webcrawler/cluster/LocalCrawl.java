@@ -0,0 +1,32 @@
+package com.rimusdesign.webcrawler.cluster;
+
+
+/**
+ * The part of a crawl run by the local node of a cluster, see {@link ClusterNode}.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface LocalCrawl {
+
+
+    /**
+     * Queues provided URL for fetching, unless it has been seen before.
+     *
+     * @param url URL of a host owned by the local node
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    void offer (String url) throws InterruptedException;
+
+
+    /**
+     * @return 'true' if none of the URLs queued locally is waiting or being crawled
+     */
+    boolean isIdle ();
+
+
+    /**
+     * Ends the local part of the crawl, called once the whole cluster is done.
+     */
+    void complete ();
+
+}
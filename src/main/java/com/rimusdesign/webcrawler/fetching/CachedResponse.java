@@ -0,0 +1,23 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import lombok.Data;
+
+
+/**
+ * A response stored by {@link ResponseCache}, along with
+ * the headers needed to revalidate it.
+ *
+ * @author Rimas Krivickas.
+ */
+@Data
+public class CachedResponse {
+
+
+    private final String mimeType;
+    private final String charset;
+    private final String etag;
+    private final String lastModified;
+    private final byte[] body;
+
+}
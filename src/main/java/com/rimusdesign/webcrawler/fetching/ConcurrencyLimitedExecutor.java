@@ -0,0 +1,95 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Runs tasks on the delegate executor, but lets no more than a given number
+ * of them run at the same time. Meant for executors that start a new thread
+ * per task, where waiting for a permit inside the task costs next to nothing.
+ *
+ * @author Rimas Krivickas.
+ */
+class ConcurrencyLimitedExecutor extends AbstractExecutorService {
+
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+
+    /**
+     * @param delegate      executor to run tasks with
+     * @param maxConcurrent maximum number of tasks to run at the same time
+     */
+    ConcurrencyLimitedExecutor (ExecutorService delegate, int maxConcurrent) {
+
+        if (maxConcurrent < 1) throw new IllegalArgumentException("At least one concurrent task is required");
+
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+
+    @Override
+    public void execute (Runnable task) {
+
+        delegate.execute(() -> {
+
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+
+                // Executor is being shut down, don't start the task
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+
+    @Override
+    public void shutdown () {
+
+        delegate.shutdown();
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow () {
+
+        return delegate.shutdownNow();
+    }
+
+
+    @Override
+    public boolean isShutdown () {
+
+        return delegate.isShutdown();
+    }
+
+
+    @Override
+    public boolean isTerminated () {
+
+        return delegate.isTerminated();
+    }
+
+
+    @Override
+    public boolean awaitTermination (long timeout, TimeUnit unit) throws InterruptedException {
+
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+}
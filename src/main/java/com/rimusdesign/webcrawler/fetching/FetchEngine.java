@@ -0,0 +1,56 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+/**
+ * Defines how {@link Fetcher} makes HTTP requests.
+ *
+ * @author Rimas Krivickas.
+ */
+public enum FetchEngine {
+
+
+    /**
+     * Blocking requests made with Jsoup, each one holding a thread for its whole
+     * duration. Threads are provided according to the {@link FetchMode}.
+     */
+    BLOCKING,
+
+    /**
+     * Blocking requests, like {@link #BLOCKING}, but all made through a shared JDK's HTTP
+     * client, see {@link HttpClientFetcher}. Connections to each host are kept alive and
+     * reused, and multiplexed over HTTP/2 where the server supports it, see {@link HttpVersion},
+     * so same host requests don't pay for TCP and TLS setup each time.
+     * Threads are provided according to the {@link FetchMode}. Requires Java 11 or newer.
+     */
+    POOLED {
+        @Override
+        public boolean isSupported () {
+
+            return HttpClientFetcher.isSupported();
+        }
+    },
+
+    /**
+     * Non-blocking requests made with the JDK's HTTP client, see {@link HttpClientFetcher},
+     * over kept alive connections, like {@link #POOLED}. Thousands of requests can be in
+     * flight on a handful of threads, so the number of fetchers becomes the maximum number
+     * of requests in flight. {@link FetchMode} is ignored. Requires Java 11 or newer.
+     */
+    ASYNC {
+        @Override
+        public boolean isSupported () {
+
+            return HttpClientFetcher.isSupported();
+        }
+    };
+
+
+    /**
+     * @return 'true' if the engine can be used on the current JVM
+     */
+    public boolean isSupported () {
+
+        return true;
+    }
+
+}
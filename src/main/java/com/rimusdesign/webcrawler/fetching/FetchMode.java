@@ -0,0 +1,91 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Defines how {@link Fetcher} runs concurrent requests.
+ *
+ * @author Rimas Krivickas.
+ */
+public enum FetchMode {
+
+
+    /**
+     * Fixed pool of platform threads, one thread per concurrent request.
+     */
+    PLATFORM_THREADS {
+        @Override
+        public ExecutorService createExecutor (int maxConcurrentFetches) {
+
+            return Executors.newFixedThreadPool(maxConcurrentFetches);
+        }
+    },
+
+    /**
+     * A new virtual thread per request, with the number of requests running
+     * at the same time capped by a limit instead of by pool size.
+     * Allows thousands of concurrent requests without as many OS threads.
+     * Requires Java 21 or newer.
+     */
+    VIRTUAL_THREADS {
+        @Override
+        public ExecutorService createExecutor (int maxConcurrentFetches) {
+
+            if (VIRTUAL_EXECUTOR_FACTORY == null) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+            }
+
+            try {
+
+                return new ConcurrencyLimitedExecutor((ExecutorService) VIRTUAL_EXECUTOR_FACTORY.invoke(null), maxConcurrentFetches);
+            } catch (ReflectiveOperationException e) {
+
+                throw new UnsupportedOperationException("Failed to create virtual thread executor", e);
+            }
+        }
+
+
+        @Override
+        public boolean isSupported () {
+
+            return VIRTUAL_EXECUTOR_FACTORY != null;
+        }
+    };
+
+
+    // Looked up at runtime, so the crawler still builds and runs on older JVMs
+    private static final Method VIRTUAL_EXECUTOR_FACTORY = findVirtualExecutorFactory();
+
+
+    /**
+     * @param maxConcurrentFetches maximum number of requests to run at the same time
+     * @return new executor to run fetch tasks with
+     */
+    public abstract ExecutorService createExecutor (int maxConcurrentFetches);
+
+
+    /**
+     * @return 'true' if the mode can be used on the current JVM
+     */
+    public boolean isSupported () {
+
+        return true;
+    }
+
+
+    private static Method findVirtualExecutorFactory () {
+
+        try {
+
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+
+            return null;
+        }
+    }
+
+}
@@ -1,7 +1,9 @@
 package com.rimusdesign.webcrawler.fetching;
 
 
+import com.rimusdesign.webcrawler.metrics.CrawlMetrics;
 import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.StageQueue;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import org.apache.logging.log4j.CloseableThreadContext;
 import org.jsoup.Connection;
@@ -14,7 +16,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -28,24 +31,89 @@ public class Fetcher implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(Fetcher.class);
 
+    /**
+     * Number of URLs which may wait for their host to become available, per pending URL allowed
+     */
+    public static final int PARKED_URLS_PER_PENDING_URL = 8;
+
+    // Longer than any request can take, see 'Jsoup.connect(String)'
+    private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+    private static final long INTERRUPT_INTERVAL_MILLIS = 100;
+
     private final int numFetchers;
-    private LinkedBlockingQueue<String> urlQueue;
-    private LinkedBlockingQueue<TransientPage> fetchedDataQueue;
+    private final FetchMode fetchMode;
+    private final FetchEngine fetchEngine;
+    private final HttpVersion httpVersion;
+    private final long minHostDelayMillis;
+    private final int maxConnectionsPerHost;
+    private final ResponseCache responseCache;
+    private final CrawlMetrics metrics;
+    private final int maxPendingUrls;
+    private StageQueue<String> urlQueue;
+    private StageQueue<TransientPage> fetchedDataQueue;
+
+    // Set once running
+    private volatile HostScheduler scheduler;
 
 
     /**
-     * @param numFetchers      number of fetcher threads to be used
-     * @param urlQueue         input queue for retrieving URLs
-     * @param fetchedDataQueue output queue
+     * @param numFetchers           maximum number of concurrent requests
+     * @param fetchMode             defines how concurrent requests are run, see {@link FetchMode}
+     * @param fetchEngine           defines how requests are made, see {@link FetchEngine}
+     * @param httpVersion           preferred HTTP version, ignored by {@link FetchEngine#BLOCKING}
+     * @param minHostDelayMillis    minimum delay between two requests to the same host
+     * @param maxConnectionsPerHost maximum number of concurrent requests to the same host
+     * @param responseCache         cache to revalidate responses against, or 'null' to always fetch in full
+     * @param metrics               metrics to record requests to, or 'null'
+     * @param maxPendingUrls        maximum number of URLs taken from the input queue, but not yet being fetched,
+     *                              so the order of the input queue decides what's fetched next. URLs waiting for
+     *                              a busy host don't count, so other hosts keep being fetched, but no more than
+     *                              {@link #PARKED_URLS_PER_PENDING_URL} times as many of them are taken
+     * @param urlQueue              input queue for retrieving URLs
+     * @param fetchedDataQueue      output queue
      */
-    public Fetcher (int numFetchers, LinkedBlockingQueue<String> urlQueue, LinkedBlockingQueue<TransientPage> fetchedDataQueue) {
+    public Fetcher (int numFetchers, FetchMode fetchMode, FetchEngine fetchEngine, HttpVersion httpVersion, long minHostDelayMillis, int maxConnectionsPerHost, ResponseCache responseCache,
+                    CrawlMetrics metrics, int maxPendingUrls, StageQueue<String> urlQueue, StageQueue<TransientPage> fetchedDataQueue) {
+
+        if (maxPendingUrls < 1) throw new IllegalArgumentException("At least one pending URL is required");
 
         this.numFetchers = numFetchers;
+        this.fetchMode = fetchMode;
+        this.fetchEngine = fetchEngine;
+        this.httpVersion = httpVersion;
+        this.minHostDelayMillis = minHostDelayMillis;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.responseCache = responseCache;
+        this.metrics = metrics;
+        this.maxPendingUrls = maxPendingUrls;
         this.urlQueue = urlQueue;
         this.fetchedDataQueue = fetchedDataQueue;
     }
 
 
+    /**
+     * @param numFetchers      number of fetcher threads to be used
+     * @param urlQueue         input queue for retrieving URLs
+     * @param fetchedDataQueue output queue
+     */
+    public Fetcher (int numFetchers, StageQueue<String> urlQueue, StageQueue<TransientPage> fetchedDataQueue) {
+
+        // Use thread pool, no politeness limits, no cache, no metrics, take URLs as soon as queued
+        this(numFetchers, FetchMode.PLATFORM_THREADS, FetchEngine.BLOCKING, HttpVersion.HTTP_2, 0, numFetchers, null, null, Integer.MAX_VALUE, urlQueue, fetchedDataQueue);
+    }
+
+
+    /**
+     * @return number of URLs taken from the input queue, which wait for their host to become available
+     */
+    int getPendingCount () {
+
+        HostScheduler scheduler = this.scheduler;
+        return scheduler != null ? scheduler.getPendingCount() : 0;
+    }
+
+
     @Override
     public void run () {
 
@@ -57,21 +125,76 @@ public class Fetcher implements Runnable {
 
             String url;
 
-            // Instantiate thread pool
-            ExecutorService executorService = Executors.newFixedThreadPool(numFetchers);
+            // Requests made through the JDK's client share its pool of kept alive connections
+            final HttpClientFetcher httpClientFetcher = fetchEngine != FetchEngine.BLOCKING
+                    ? new HttpClientFetcher(numFetchers, httpVersion, responseCache, metrics, fetchedDataQueue)
+                    : null;
+
+            // Non-blocking requests only need a thread to start them, others need a thread each.
+            // Instantiate thread pool, or virtual thread executor
+            ExecutorService executorService = fetchEngine == FetchEngine.ASYNC ? Executors.newSingleThreadExecutor() : fetchMode.createExecutor(numFetchers);
+
+            // Keeps requests to each host within politeness limits, without blocking this thread
+            final HostScheduler scheduler = new HostScheduler(executorService, minHostDelayMillis, maxConnectionsPerHost);
+            this.scheduler = scheduler;
+
+            // URLs taken but not yet being fetched, each holds a permit until its request starts
+            final Semaphore pending = new Semaphore(maxPendingUrls);
+
+            // Same for URLs waiting for their host, which give up their pending permits
+            final Semaphore parked = maxPendingUrls < Integer.MAX_VALUE
+                    ? new Semaphore((int) Math.min(Integer.MAX_VALUE, (long) maxPendingUrls * PARKED_URLS_PER_PENDING_URL))
+                    : null;
 
             try {
 
-                // Take URLs from the input queue
-                while ((url = urlQueue.take()) != null) {
+                // Take URLs from the input queue, no further ahead of free fetchers than allowed
+                while (true) {
 
-                    log.debug("Received URL: " + url);
+                    pending.acquire();
+                    if ((url = urlQueue.take()) == null) break;
 
-                    // Fetch data
-                    executorService.execute(new FetcherRunnable(url, fetchedDataQueue));
+                    log.debug("Received URL: " + url);
 
-                    // TODO add pause
-//                    Thread.sleep(500);
+                    // URLs of hosts which have to wait don't hold up URLs of other hosts
+                    final Semaphore permit;
+                    if (parked != null && !scheduler.isReady(url)) {
+                        parked.acquire();
+                        pending.release();
+                        permit = parked;
+                    } else {
+                        permit = pending;
+                    }
+
+                    // Fetch data once the host allows it
+                    final String requestUrl = url;
+                    switch (fetchEngine) {
+
+                        case ASYNC:
+                            scheduler.submitAsync(url, done -> {
+                                permit.release();
+                                httpClientFetcher.fetch(requestUrl, done);
+                            });
+                            break;
+
+                        case POOLED:
+                            scheduler.submit(url, () -> {
+                                permit.release();
+                                try {
+                                    httpClientFetcher.fetchAndWait(requestUrl);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            });
+                            break;
+
+                        default:
+                            final FetcherRunnable fetcherRunnable = new FetcherRunnable(url, responseCache, metrics, fetchedDataQueue);
+                            scheduler.submit(url, () -> {
+                                permit.release();
+                                fetcherRunnable.run();
+                            });
+                    }
                 }
             } catch (InterruptedException e) {
 
@@ -81,10 +204,43 @@ public class Fetcher implements Runnable {
                 // Ensure all threads terminate
                 log.debug("Shutting down fetcher thread pool");
 
-                executorService.shutdown();
+                scheduler.shutdown();
+
+                // Requests not yet started are dropped, threads making them, or waiting for them, are interrupted
+                executorService.shutdownNow();
+
+                // Threads may be waiting for requests to complete, which won't happen once the client is closed
+                if (httpClientFetcher != null) httpClientFetcher.close();
+
+                // Nothing gets fetched once the fetcher has stopped
+                awaitTermination(executorService);
             }
         }
     }
+
+
+    private static void awaitTermination (ExecutorService executorService) {
+
+        try {
+
+            // jsoup clears the interrupt of a thread interrupted while reading a response, which may then
+            // block on a full output queue, so threads are interrupted again until they have all terminated
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TERMINATION_TIMEOUT_SECONDS);
+            while (!executorService.awaitTermination(INTERRUPT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                if (System.nanoTime() - deadline >= 0) {
+                    log.warn("Fetcher threads failed to terminate");
+                    return;
+                }
+
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+
+            log.debug("Interrupted while waiting for fetcher threads to terminate");
+            Thread.currentThread().interrupt();
+        }
+    }
 }
 
 
@@ -99,17 +255,26 @@ class FetcherRunnable implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(FetcherRunnable.class);
 
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+
     private String url;
-    private LinkedBlockingQueue<TransientPage> fetchedDataQueue;
+    private ResponseCache responseCache;
+    private CrawlMetrics metrics;
+    private StageQueue<TransientPage> fetchedDataQueue;
 
 
     /**
      * @param url              URL from which to fetch data
+     * @param responseCache    cache to revalidate response against, or 'null'
+     * @param metrics          metrics to record the request to, or 'null'
      * @param fetchedDataQueue queue to write fetched data to
      */
-    public FetcherRunnable (String url, LinkedBlockingQueue<TransientPage> fetchedDataQueue) {
+    public FetcherRunnable (String url, ResponseCache responseCache, CrawlMetrics metrics, StageQueue<TransientPage> fetchedDataQueue) {
 
         this.url = url;
+        this.responseCache = responseCache;
+        this.metrics = metrics;
         this.fetchedDataQueue = fetchedDataQueue;
     }
 
@@ -124,29 +289,65 @@ class FetcherRunnable implements Runnable {
 
             log.debug("Thread started");
 
+            // Crawl has been stopped before the request could be made
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Interrupted before data could be fetched");
+                return;
+            }
+
             // Set initial values
             String mimeType = null;
-            String html = null;
+            byte[] body = null;
+            String charset = null;
             int statusCode = 0;
+            long startedAt = System.nanoTime();
 
             try {
 
+                Connection connection = Jsoup.connect(url).method(Connection.Method.GET);
+
+                // Ask server to only send the body if it has changed since it was cached
+                CachedResponse cached = responseCache != null ? responseCache.get(url) : null;
+                if (cached != null) {
+                    if (cached.getEtag() != null) connection.header("If-None-Match", cached.getEtag());
+                    if (cached.getLastModified() != null) connection.header("If-Modified-Since", cached.getLastModified());
+                }
+
                 // Get the HTTP response
-                Connection.Response response = Jsoup.connect(url).method(Connection.Method.GET).execute();
+                Connection.Response response = connection.execute();
 
                 // Set status code
                 statusCode = response.statusCode();
 
-                // Set MIME type
-                mimeType = response.contentType();
+                if (statusCode == HTTP_NOT_MODIFIED && cached != null) {
 
-                // Parse document and set HTML
-                html = response.parse().html();
+                    log.debug("Not modified, using cached response");
+
+                    // Reuse cached data, as if it has just been fetched
+                    statusCode = HTTP_OK;
+                    mimeType = cached.getMimeType();
+                    body = cached.getBody();
+                    charset = cached.getCharset();
+                } else {
+
+                    // Set MIME type
+                    mimeType = response.contentType();
+
+                    // Set raw body, leave decoding and parsing to the parser
+                    body = response.bodyAsBytes();
+                    charset = response.charset();
+
+                    if (responseCache != null) {
+                        responseCache.put(url, new CachedResponse(mimeType, charset, response.header("ETag"), response.header("Last-Modified"), body));
+                    }
+                }
             } catch (HttpStatusException e) {
 
                 // Set status code
                 statusCode = e.getStatusCode();
 
+                if (metrics != null) metrics.recordError(statusCode);
+
                 log.debug("Failed to fetch data. HTTP status code: " + e.getStatusCode());
             } catch (UnsupportedMimeTypeException e) {
 
@@ -154,14 +355,38 @@ class FetcherRunnable implements Runnable {
                 log.debug("Non HTML resource. MIME type: " + e.getMimeType());
             } catch (IOException e) {
 
+                if (metrics != null) metrics.recordError(CrawlMetrics.NO_RESPONSE);
+
                 log.error(e.getMessage());
+            } catch (RuntimeException e) {
+
+                // E.g. a URL which can't be requested, or a response which can't be cached. Forwarded
+                // without data regardless, or the page would never be ready, and the crawl never complete
+                if (metrics != null) metrics.recordError(CrawlMetrics.NO_RESPONSE);
+
+                log.error("Failed to fetch data", e);
+
+                mimeType = null;
+                body = null;
+                charset = null;
+                statusCode = 0;
             }
 
+            if (metrics != null) metrics.recordFetch(System.nanoTime() - startedAt, body != null ? body.length : 0);
+
 
             // Forward data for parsing
-            fetchedDataQueue.add(new TransientPage(url, mimeType, statusCode, html));
+            try {
 
-            log.debug("Forwarded data for parsing. Data fetched from URL: " + url);
+                fetchedDataQueue.put(new TransientPage(url, mimeType, statusCode, body, charset));
+
+                log.debug("Forwarded data for parsing. Data fetched from URL: " + url);
+            } catch (InterruptedException e) {
+
+                // Crawl has been stopped while waiting for space in the output queue
+                log.debug("Interrupted before data could be forwarded for parsing");
+                Thread.currentThread().interrupt();
+            }
 
             log.debug("Thread terminating");
         }
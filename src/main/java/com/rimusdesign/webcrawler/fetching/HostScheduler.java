@@ -0,0 +1,277 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * Schedules fetch tasks so that target hosts are not overloaded.
+ * <p>
+ * Keeps a queue of pending tasks and a ready time per host, and only passes
+ * a task to the executor once the minimum delay since the previous request
+ * to the same host has passed, and the host has a free connection.
+ * <p>
+ * The delay is counted from when the executor actually starts a task, not from
+ * when the task is passed to it, as a busy executor may keep it waiting for a
+ * thread or permit. Until then, no other task of the same host is passed on.
+ * The delay is also counted again once a task completes, so requests which
+ * wait for a permit inside the task, e.g. for the number in flight, don't
+ * follow each other any sooner.
+ * <p>
+ * {@link #submit(String, Runnable)} never blocks, tasks for a host that has
+ * to wait are dispatched later by a timer, so other hosts keep being fetched
+ * in the meantime.
+ * <p>
+ * Tasks that complete asynchronously are submitted with {@link #submitAsync(String, Consumer)},
+ * and hold their host's connection until they call back, rather than until they return.
+ *
+ * @author Rimas Krivickas.
+ */
+public class HostScheduler {
+
+
+    private static final Logger log = LoggerFactory.getLogger(HostScheduler.class);
+
+    private final Executor executor;
+    private final long minDelayNanos;
+    private final int maxConnectionsPerHost;
+
+    private final ScheduledExecutorService timer;
+
+    // Guarded by 'this'
+    private final Map<String, Host> hosts = new HashMap<>();
+    private boolean isShutdown;
+
+
+    /**
+     * @param executor              executor to run tasks with
+     * @param minDelayMillis        minimum delay between starting two requests to the same host
+     * @param maxConnectionsPerHost maximum number of tasks running against the same host at any time
+     */
+    public HostScheduler (@NonNull Executor executor, long minDelayMillis, int maxConnectionsPerHost) {
+
+        if (minDelayMillis < 0) throw new IllegalArgumentException("Delay can't be negative");
+        if (maxConnectionsPerHost < 1) throw new IllegalArgumentException("At least one connection per host is required");
+
+        this.executor = executor;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "host-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Queues the task, to be run as soon as the host of provided URL allows it.
+     *
+     * @param url  URL the task is going to request
+     * @param task task to run
+     */
+    public void submit (@NonNull String url, @NonNull Runnable task) {
+
+        submitAsync(url, release -> {
+            try {
+                task.run();
+            } finally {
+                release.run();
+            }
+        });
+    }
+
+
+    /**
+     * Queues the task, to be started as soon as the host of provided URL allows it.
+     * The task is passed a callback, which it must run exactly once when it completes,
+     * even if it fails. Host's connection is held until then.
+     *
+     * @param url  URL the task is going to request
+     * @param task task to start
+     */
+    public synchronized void submitAsync (@NonNull String url, @NonNull Consumer<Runnable> task) {
+
+        if (isShutdown) throw new RejectedExecutionException("Scheduler has been shut down");
+
+        String name = CommonUtils.stripDomain(url);
+
+        Host host = hosts.get(name);
+        if (host == null) {
+            host = new Host(name);
+            hosts.put(name, host);
+        }
+
+        host.pending.add(task);
+        dispatch(host);
+    }
+
+
+    /**
+     * @param url URL a task is going to request
+     * @return 'true' if a task for the host of provided URL would be started right away, as of now
+     */
+    public synchronized boolean isReady (@NonNull String url) {
+
+        Host host = hosts.get(CommonUtils.stripDomain(url));
+
+        return host == null || (host.pending.isEmpty() && host.active < maxConnectionsPerHost && !host.isStarting
+                && System.nanoTime() - host.readyAt >= 0);
+    }
+
+
+    /**
+     * Drops all pending tasks. Tasks already passed to the executor are not affected.
+     */
+    public synchronized void shutdown () {
+
+        isShutdown = true;
+        hosts.clear();
+        timer.shutdownNow();
+    }
+
+
+    /**
+     * @return number of tasks waiting for their host to become available
+     */
+    public synchronized int getPendingCount () {
+
+        int count = 0;
+        for (Host host : hosts.values()) count += host.pending.size();
+        return count;
+    }
+
+
+    /**
+     * Passes as many pending tasks of the host to the executor as its limits allow,
+     * and sets up a wake up call if the host has to wait out the delay.
+     * Must be called while holding the lock.
+     */
+    private void dispatch (Host host) {
+
+        while (!isShutdown && !host.pending.isEmpty() && host.active < maxConnectionsPerHost && !host.isStarting) {
+
+            long now = System.nanoTime();
+
+            if (now - host.readyAt < 0) {
+
+                // Too early, try again once the delay has passed
+                if (!host.isWakeUpScheduled) scheduleWakeUp(host, host.readyAt - now);
+                return;
+            }
+
+            final Consumer<Runnable> task = host.pending.poll();
+            host.active++;
+            host.isStarting = true;
+
+            try {
+
+                executor.execute(() -> {
+                    start(host);
+                    task.accept(() -> release(host));
+                });
+            } catch (RejectedExecutionException e) {
+
+                // Executor has been shut down, nothing else will run
+                log.debug("Executor rejected task for host: " + host.name);
+                host.active--;
+                host.isStarting = false;
+                return;
+            }
+        }
+
+        forgetIfIdle(host);
+    }
+
+
+    private synchronized void wakeUp (Host host) {
+
+        host.isWakeUpScheduled = false;
+        dispatch(host);
+    }
+
+
+    private synchronized void start (Host host) {
+
+        host.isStarting = false;
+        host.readyAt = System.nanoTime() + minDelayNanos;
+        dispatch(host);
+    }
+
+
+    private synchronized void release (Host host) {
+
+        host.active--;
+
+        long readyAt = System.nanoTime() + minDelayNanos;
+        if (readyAt - host.readyAt > 0) host.readyAt = readyAt;
+
+        dispatch(host);
+    }
+
+
+    /**
+     * Stops tracking a host once it has nothing to do, and its delay has passed,
+     * so memory use doesn't grow with the number of hosts ever visited.
+     * Must be called while holding the lock.
+     */
+    private void forgetIfIdle (Host host) {
+
+        if (host.active > 0 || !host.pending.isEmpty() || host.isWakeUpScheduled) return;
+
+        long remaining = host.readyAt - System.nanoTime();
+
+        if (remaining <= 0) {
+
+            if (hosts.get(host.name) == host) hosts.remove(host.name);
+        } else if (!isShutdown) {
+
+            // Keep the ready time until it passes, then check again
+            scheduleWakeUp(host, remaining);
+        }
+    }
+
+
+    private void scheduleWakeUp (Host host, long delayNanos) {
+
+        host.isWakeUpScheduled = true;
+        timer.schedule(() -> wakeUp(host), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Scheduling state of a single host.
+     */
+    private static final class Host {
+
+
+        private final String name;
+        private final ArrayDeque<Consumer<Runnable>> pending = new ArrayDeque<>();
+        private int active;
+        private long readyAt;
+        private boolean isStarting;
+        private boolean isWakeUpScheduled;
+
+
+        private Host (String name) {
+
+            this.name = name;
+            this.readyAt = System.nanoTime();
+        }
+    }
+
+}
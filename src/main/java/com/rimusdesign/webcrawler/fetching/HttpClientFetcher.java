@@ -0,0 +1,506 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import com.rimusdesign.webcrawler.metrics.CrawlMetrics;
+import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.StageQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Fetches pages with non-blocking requests, made with the JDK's 'java.net.http' client.
+ * <p>
+ * Starting a request only takes a permit and hands the request over to the client, which
+ * waits for all responses on its own selector thread, and completes them on a small pool
+ * of threads. Once the number of requests in flight reaches the limit, starting another
+ * one blocks until a response arrives. {@link #fetchAndWait(String)} also blocks until the
+ * response has been handled, for callers that dedicate a thread to each request.
+ * <p>
+ * All requests go through one client, which keeps connections alive in a pool per host,
+ * and multiplexes requests to a host over a single connection with HTTP/2, if preferred
+ * and supported by the server, see {@link HttpVersion}. The pool lives as long as the fetcher.
+ * <p>
+ * Responses are handled the same way as by blocking fetches with Jsoup: error statuses
+ * and non HTML resources are passed on without a body, and responses are revalidated
+ * against the {@link ResponseCache}, if provided. Bodies of responses that are not going
+ * to be parsed are not downloaded at all.
+ * <p>
+ * The client is looked up at runtime, so the crawler still builds and runs on JVMs
+ * without it, see {@link #isSupported()}.
+ *
+ * @author Rimas Krivickas.
+ */
+class HttpClientFetcher implements Closeable {
+
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientFetcher.class);
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    // Same content types as accepted by Jsoup
+    private static final Pattern XML_CONTENT_TYPE = Pattern.compile("(application|text)/\\w*\\+?xml.*");
+    private static final Pattern CHARSET = Pattern.compile("(?i)\\bcharset=\\s*(?:[\"'])?([^\\s,;\"']*)");
+
+    private static final HttpApi API = HttpApi.find();
+
+    private final Semaphore permits;
+    private final ResponseCache responseCache;
+    private final CrawlMetrics metrics;
+    private final StageQueue<TransientPage> fetchedDataQueue;
+
+    private final ExecutorService callbackExecutor;
+    private final Object client;
+    private final Object bodyHandler;
+
+
+    /**
+     * @param maxInFlight      maximum number of requests in flight at any time
+     * @param httpVersion      preferred HTTP version
+     * @param responseCache    cache to revalidate responses against, or 'null'
+     * @param metrics          metrics to record requests to, or 'null'
+     * @param fetchedDataQueue queue to write fetched data to
+     */
+    HttpClientFetcher (int maxInFlight, HttpVersion httpVersion, ResponseCache responseCache, CrawlMetrics metrics,
+                       StageQueue<TransientPage> fetchedDataQueue) {
+
+        if (API == null) throw new UnsupportedOperationException("JDK's HTTP client requires Java 11 or newer");
+        if (maxInFlight < 1) throw new IllegalArgumentException("At least one request in flight is required");
+
+        this.permits = new Semaphore(maxInFlight);
+        this.responseCache = responseCache;
+        this.metrics = metrics;
+        this.fetchedDataQueue = fetchedDataQueue;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        callbackExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "http-client-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        client = API.newClient(callbackExecutor, httpVersion);
+        bodyHandler = API.newBodyHandler(HttpClientFetcher::isBodyNeeded);
+    }
+
+
+    /**
+     * @return 'true' if the JDK's HTTP client is available on the current JVM
+     */
+    static boolean isSupported () {
+
+        return API != null;
+    }
+
+
+    /**
+     * Starts fetching provided URL, waiting for a permit if too many requests are in flight.
+     * Fetched data is written to the output queue once the response arrives.
+     *
+     * @param url  URL to fetch
+     * @param done callback to run once fetched data has been passed on, or the fetch has been abandoned
+     */
+    void fetch (String url, Runnable done) {
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+
+            // Crawl has been stopped
+            Thread.currentThread().interrupt();
+            done.run();
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        CachedResponse cached = null;
+
+        try {
+
+            cached = responseCache != null ? responseCache.get(url) : null;
+
+            // Ask server to only send the body if it has changed since it was cached
+            String etag = cached != null ? cached.getEtag() : null;
+            String lastModified = cached != null ? cached.getLastModified() : null;
+
+            final CachedResponse revalidated = cached;
+            API.sendAsync(client, API.newRequest(url, etag, lastModified), bodyHandler)
+                    .whenComplete((response, error) -> complete(url, revalidated, startedAt, response, error, done));
+        } catch (RuntimeException e) {
+
+            // Request could not even be started, e.g. because of a malformed URL
+            complete(url, cached, startedAt, null, e, done);
+        }
+    }
+
+
+    /**
+     * Fetches provided URL, and waits until fetched data has been passed on.
+     *
+     * @param url URL to fetch
+     * @throws InterruptedException if interrupted while waiting, the request may still complete
+     */
+    void fetchAndWait (String url) throws InterruptedException {
+
+        CountDownLatch done = new CountDownLatch(1);
+        fetch(url, done::countDown);
+        done.await();
+    }
+
+
+    /**
+     * Stops threads completing responses.
+     */
+    @Override
+    public void close () {
+
+        callbackExecutor.shutdown();
+    }
+
+
+    private void complete (String url, CachedResponse cached, long startedAt, Object response, Throwable error, Runnable done) {
+
+        // Set initial values
+        String mimeType = null;
+        byte[] body = null;
+        String charset = null;
+        int statusCode = 0;
+
+        try {
+
+            if (error != null) {
+
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+                if (metrics != null) metrics.recordError(CrawlMetrics.NO_RESPONSE);
+
+                log.error("Failed to fetch: " + url + ", " + cause);
+            } else {
+
+                statusCode = API.statusCode(response);
+                String contentType = API.header(response, "Content-Type");
+
+                if (statusCode == HTTP_NOT_MODIFIED && cached != null) {
+
+                    log.debug("Not modified, using cached response, URL: " + url);
+
+                    // Reuse cached data, as if it has just been fetched
+                    statusCode = HTTP_OK;
+                    mimeType = cached.getMimeType();
+                    body = cached.getBody();
+                    charset = cached.getCharset();
+                } else if (isError(statusCode)) {
+
+                    if (metrics != null) metrics.recordError(statusCode);
+
+                    log.debug("Failed to fetch data. HTTP status code: " + statusCode + ", URL: " + url);
+                } else if (!isAccepted(contentType)) {
+
+                    // Non HTML data, nothing to do
+                    statusCode = 0;
+
+                    log.debug("Non HTML resource. MIME type: " + contentType + ", URL: " + url);
+                } else {
+
+                    mimeType = contentType;
+                    body = API.body(response);
+                    charset = charsetOf(contentType);
+
+                    if (responseCache != null) {
+                        responseCache.put(url, new CachedResponse(mimeType, charset, API.header(response, "ETag"), API.header(response, "Last-Modified"), body));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+
+            // Forwarded without data regardless, or the page would never be ready, and the crawl never complete
+            log.error("Failed to handle response from: " + url, e);
+
+            mimeType = null;
+            body = null;
+            charset = null;
+            statusCode = 0;
+        }
+
+        try {
+
+            if (metrics != null) metrics.recordFetch(System.nanoTime() - startedAt, body != null ? body.length : 0);
+
+            // Forward data for parsing
+            fetchedDataQueue.put(new TransientPage(url, mimeType, statusCode, body, charset));
+
+            log.debug("Forwarded data for parsing. Data fetched from URL: " + url);
+        } catch (InterruptedException e) {
+
+            // Crawl has been stopped while waiting for space in the output queue
+            log.debug("Interrupted before data could be forwarded for parsing");
+            Thread.currentThread().interrupt();
+        } finally {
+
+            permits.release();
+            done.run();
+        }
+    }
+
+
+    /**
+     * Decides, once status and headers arrive, whether the body is worth downloading.
+     */
+    private static boolean isBodyNeeded (int statusCode, String contentType) {
+
+        return statusCode != HTTP_NOT_MODIFIED && !isError(statusCode) && isAccepted(contentType);
+    }
+
+
+    private static boolean isError (int statusCode) {
+
+        return statusCode < HTTP_OK || statusCode >= HTTP_BAD_REQUEST;
+    }
+
+
+    private static boolean isAccepted (String contentType) {
+
+        return contentType == null || contentType.startsWith("text/") || XML_CONTENT_TYPE.matcher(contentType).matches();
+    }
+
+
+    private static String charsetOf (String contentType) {
+
+        if (contentType == null) return null;
+
+        Matcher matcher = CHARSET.matcher(contentType);
+        return matcher.find() && !matcher.group(1).isEmpty() ? matcher.group(1) : null;
+    }
+
+
+    /**
+     * Decides whether to download a response body, based on status code and content type.
+     */
+    private interface BodyFilter {
+
+        boolean isBodyNeeded (int statusCode, String contentType);
+    }
+
+
+    /**
+     * Reflective access to the parts of 'java.net.http' used by the fetcher.
+     */
+    private static final class HttpApi {
+
+
+        private Method newClientBuilder;
+        private Method clientBuilderFollowRedirects;
+        private Method clientBuilderExecutor;
+        private Method clientBuilderConnectTimeout;
+        private Method clientBuilderVersion;
+        private Method clientBuilderBuild;
+        private Object redirectNormal;
+        private Class<?> versionClass;
+
+        private Method newRequestBuilder;
+        private Method requestBuilderTimeout;
+        private Method requestBuilderHeader;
+        private Method requestBuilderGet;
+        private Method requestBuilderBuild;
+
+        private Method sendAsync;
+        private Method ofByteArray;
+        private Method replacing;
+        private Class<?> bodyHandlerClass;
+        private Method bodyHandlerApply;
+        private Method responseInfoStatusCode;
+        private Method responseInfoHeaders;
+        private Method responseStatusCode;
+        private Method responseHeaders;
+        private Method responseBody;
+        private Method headersFirstValue;
+
+
+        /**
+         * @return access to the client, or 'null' if not available on the current JVM
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static HttpApi find () {
+
+            try {
+
+                Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+                Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+                Class<?> bodyHandlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> bodySubscribersClass = Class.forName("java.net.http.HttpResponse$BodySubscribers");
+                Class<?> responseInfoClass = Class.forName("java.net.http.HttpResponse$ResponseInfo");
+                Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+
+                HttpApi api = new HttpApi();
+
+                api.newClientBuilder = clientClass.getMethod("newBuilder");
+                api.clientBuilderFollowRedirects = clientBuilderClass.getMethod("followRedirects", redirectClass);
+                api.clientBuilderExecutor = clientBuilderClass.getMethod("executor", Executor.class);
+                api.clientBuilderConnectTimeout = clientBuilderClass.getMethod("connectTimeout", Duration.class);
+                api.clientBuilderVersion = clientBuilderClass.getMethod("version", versionClass);
+                api.clientBuilderBuild = clientBuilderClass.getMethod("build");
+                api.redirectNormal = Enum.valueOf((Class) redirectClass, "NORMAL");
+                api.versionClass = versionClass;
+
+                api.newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+                api.requestBuilderTimeout = requestBuilderClass.getMethod("timeout", Duration.class);
+                api.requestBuilderHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+                api.requestBuilderGet = requestBuilderClass.getMethod("GET");
+                api.requestBuilderBuild = requestBuilderClass.getMethod("build");
+
+                api.bodyHandlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                api.sendAsync = clientClass.getMethod("sendAsync", requestClass, api.bodyHandlerClass);
+                api.ofByteArray = bodyHandlersClass.getMethod("ofByteArray");
+                api.replacing = bodySubscribersClass.getMethod("replacing", Object.class);
+                api.bodyHandlerApply = api.bodyHandlerClass.getMethod("apply", responseInfoClass);
+                api.responseInfoStatusCode = responseInfoClass.getMethod("statusCode");
+                api.responseInfoHeaders = responseInfoClass.getMethod("headers");
+                api.responseStatusCode = responseClass.getMethod("statusCode");
+                api.responseHeaders = responseClass.getMethod("headers");
+                api.responseBody = responseClass.getMethod("body");
+                api.headersFirstValue = headersClass.getMethod("firstValue", String.class);
+
+                return api;
+            } catch (ReflectiveOperationException | IllegalArgumentException e) {
+
+                return null;
+            }
+        }
+
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object newClient (Executor executor, HttpVersion httpVersion) {
+
+            Object builder = invoke(newClientBuilder, null);
+            invoke(clientBuilderVersion, builder, Enum.valueOf((Class) versionClass, httpVersion.name()));
+            invoke(clientBuilderFollowRedirects, builder, redirectNormal);
+            invoke(clientBuilderExecutor, builder, executor);
+            invoke(clientBuilderConnectTimeout, builder, CONNECT_TIMEOUT);
+            return invoke(clientBuilderBuild, builder);
+        }
+
+
+        private Object newRequest (String url, String etag, String lastModified) {
+
+            Object builder = invoke(newRequestBuilder, null, URI.create(url));
+            invoke(requestBuilderTimeout, builder, REQUEST_TIMEOUT);
+            if (etag != null) invoke(requestBuilderHeader, builder, "If-None-Match", etag);
+            if (lastModified != null) invoke(requestBuilderHeader, builder, "If-Modified-Since", lastModified);
+            invoke(requestBuilderGet, builder);
+            return invoke(requestBuilderBuild, builder);
+        }
+
+
+        /**
+         * @return body handler reading bodies into byte arrays, or skipping them if the filter says so
+         */
+        private Object newBodyHandler (BodyFilter filter) {
+
+            final Object byteArrayHandler = invoke(ofByteArray, null);
+
+            InvocationHandler handler = (proxy, method, args) -> {
+
+                switch (method.getName()) {
+
+                    case "apply":
+
+                        Object responseInfo = args[0];
+                        int statusCode = (int) invoke(responseInfoStatusCode, responseInfo);
+                        String contentType = firstValue(invoke(responseInfoHeaders, responseInfo), "Content-Type");
+
+                        return filter.isBodyNeeded(statusCode, contentType)
+                                ? invoke(bodyHandlerApply, byteArrayHandler, responseInfo)
+                                : invoke(replacing, null, (Object) null);
+
+                    case "equals":
+                        return proxy == args[0];
+
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+
+                    default:
+                        return "BodyHandler(" + filter + ")";
+                }
+            };
+
+            return Proxy.newProxyInstance(bodyHandlerClass.getClassLoader(), new Class<?>[]{bodyHandlerClass}, handler);
+        }
+
+
+        private CompletableFuture<?> sendAsync (Object client, Object request, Object bodyHandler) {
+
+            return (CompletableFuture<?>) invoke(sendAsync, client, request, bodyHandler);
+        }
+
+
+        private int statusCode (Object response) {
+
+            return (int) invoke(responseStatusCode, response);
+        }
+
+
+        private String header (Object response, String name) {
+
+            return firstValue(invoke(responseHeaders, response), name);
+        }
+
+
+        private byte[] body (Object response) {
+
+            return (byte[]) invoke(responseBody, response);
+        }
+
+
+        private String firstValue (Object headers, String name) {
+
+            return ((Optional<?>) invoke(headersFirstValue, headers, name)).map(Object::toString).orElse(null);
+        }
+
+
+        private static Object invoke (Method method, Object target, Object... args) {
+
+            try {
+
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+
+                // Let the client's own exceptions through, e.g. for malformed requests
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            } catch (IllegalAccessException e) {
+
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+/**
+ * HTTP version preferred by fetch engines built on the JDK's HTTP client,
+ * see {@link FetchEngine#POOLED} and {@link FetchEngine#ASYNC}.
+ *
+ * @author Rimas Krivickas.
+ */
+public enum HttpVersion {
+
+
+    /**
+     * One request at a time per connection. Idle connections are kept alive and reused,
+     * so each host gets a pool of up to as many connections as requests run against it
+     * at the same time, which is capped by the maximum number of connections per host.
+     */
+    HTTP_1_1,
+
+    /**
+     * All requests to a host are multiplexed over a single connection, if the server
+     * supports HTTP/2, negotiated via ALPN for 'https', or via upgrade for 'http'.
+     * Falls back to {@link #HTTP_1_1} otherwise.
+     */
+    HTTP_2
+
+}
@@ -0,0 +1,152 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+
+/**
+ * On-disk cache of HTTP responses, keyed by URL, which persists between crawls.
+ * <p>
+ * Only responses carrying an 'ETag' or 'Last-Modified' header are cached, so
+ * that recrawls can send conditional requests, and reuse the cached body when
+ * the server replies with '304 Not Modified'.
+ * <p>
+ * Thread safe. Each response is kept in its own file, which is replaced
+ * atomically, so readers never see a partially written response.
+ *
+ * @author Rimas Krivickas.
+ */
+public class ResponseCache {
+
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    // Changing the file layout must come with a new version, so stale files get ignored
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+
+
+    /**
+     * @param directory directory to keep cached responses in
+     * @throws IOException if directory can't be created
+     */
+    public ResponseCache (@NonNull Path directory) throws IOException {
+
+        this.directory = Files.createDirectories(directory);
+    }
+
+
+    /**
+     * @param url URL of the response
+     * @return cached response, or 'null' if none is cached, or it can't be read
+     */
+    public CachedResponse get (@NonNull String url) {
+
+        Path path = pathFor(url);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+            // Guard against a different format, or a hash collision
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) return null;
+
+            String mimeType = readNullable(in);
+            String charset = readNullable(in);
+            String etag = readNullable(in);
+            String lastModified = readNullable(in);
+
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            return new CachedResponse(mimeType, charset, etag, lastModified, body);
+        } catch (NoSuchFileException e) {
+
+            return null;
+        } catch (IOException e) {
+
+            log.debug("Failed to read cached response for URL: " + url + ", " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Stores the response, if it can be revalidated, replacing any previously cached one.
+     *
+     * @param url      URL of the response
+     * @param response response to cache
+     */
+    public void put (@NonNull String url, @NonNull CachedResponse response) {
+
+        if (response.getEtag() == null && response.getLastModified() == null) return;
+        if (response.getBody() == null) return;
+
+        Path path = pathFor(url);
+        Path tempPath = null;
+
+        try {
+
+            Files.createDirectories(path.getParent());
+            tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(url);
+                writeNullable(out, response.getMimeType());
+                writeNullable(out, response.getCharset());
+                writeNullable(out, response.getEtag());
+                writeNullable(out, response.getLastModified());
+                out.writeInt(response.getBody().length);
+                out.write(response.getBody());
+            }
+
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+
+            // Caching is best effort, fetching goes on regardless
+            log.warn("Failed to cache response for URL: " + url + ", " + e.getMessage());
+
+            try {
+                if (tempPath != null) Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+                // Nothing else to do
+            }
+        }
+    }
+
+
+    private Path pathFor (String url) {
+
+        // Spread files over subdirectories, so no single directory gets too large
+        String hash = CommonUtils.getHash(url);
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+
+    private static void writeNullable (DataOutputStream out, String value) throws IOException {
+
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+
+    private static String readNullable (DataInputStream in) throws IOException {
+
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
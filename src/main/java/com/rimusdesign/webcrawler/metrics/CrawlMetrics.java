@@ -0,0 +1,293 @@
+package com.rimusdesign.webcrawler.metrics;
+
+
+import com.rimusdesign.webcrawler.queue.StageQueue;
+import lombok.Getter;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Metrics of a single crawl: depth of the queues between stages, time spent in each
+ * stage, throughput, and failed requests by HTTP status code.
+ * <p>
+ * Recording only increments striped counters, see {@link LongAdder}, so it's cheap
+ * enough to stay on for every crawl. Values are summed up when read, either through
+ * the getters, or over JMX once {@link #register(String)} is called.
+ * <p>
+ * A stage that's the bottleneck shows up as a growing queue in front of it, and
+ * as the highest latency multiplied by the number of threads working on it.
+ *
+ * @author Rimas Krivickas.
+ */
+public class CrawlMetrics implements CrawlMetricsMBean {
+
+
+    private static final Logger log = LoggerFactory.getLogger(CrawlMetrics.class);
+
+    public static final String JMX_DOMAIN = "com.rimusdesign.webcrawler";
+
+    /**
+     * Status code errors are recorded under when a request fails without a response.
+     */
+    public static final int NO_RESPONSE = 0;
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final StageQueue<?> urlQueue;
+    private final StageQueue<?> fetchedDataQueue;
+    private final StageQueue<?> parsedDataQueue;
+    private final long startedAt = System.nanoTime();
+
+    private final LongAdder pagesFetched = new LongAdder();
+    private final LongAdder pagesParsed = new LongAdder();
+    private final LongAdder pagesCompleted = new LongAdder();
+    private final LongAdder bytesFetched = new LongAdder();
+    private final Map<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+    @Getter
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+    @Getter
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    @Getter
+    private final LatencyHistogram manageLatency = new LatencyHistogram();
+
+    private ObjectName objectName;
+
+
+    /**
+     * @param urlQueue         queue of URLs waiting to be fetched
+     * @param fetchedDataQueue queue of fetched data waiting to be parsed
+     * @param parsedDataQueue  queue of parsed pages waiting to be handled by data manager
+     */
+    public CrawlMetrics (@NonNull StageQueue<?> urlQueue, @NonNull StageQueue<?> fetchedDataQueue, @NonNull StageQueue<?> parsedDataQueue) {
+
+        this.urlQueue = urlQueue;
+        this.fetchedDataQueue = fetchedDataQueue;
+        this.parsedDataQueue = parsedDataQueue;
+    }
+
+
+    /**
+     * @param latencyNanos time taken by the request
+     * @param bytes        size of the response body
+     */
+    public void recordFetch (long latencyNanos, long bytes) {
+
+        pagesFetched.increment();
+        bytesFetched.add(bytes);
+        fetchLatency.record(latencyNanos);
+    }
+
+
+    /**
+     * @param statusCode HTTP status code of a failed request, or {@link #NO_RESPONSE}
+     */
+    public void recordError (int statusCode) {
+
+        errors.computeIfAbsent(statusCode, key -> new LongAdder()).increment();
+    }
+
+
+    /**
+     * @param latencyNanos time taken to parse a page
+     */
+    public void recordParse (long latencyNanos) {
+
+        pagesParsed.increment();
+        parseLatency.record(latencyNanos);
+    }
+
+
+    /**
+     * @param latencyNanos time taken by data manager to handle a parsed page
+     */
+    public void recordManage (long latencyNanos) {
+
+        pagesCompleted.increment();
+        manageLatency.record(latencyNanos);
+    }
+
+
+    /**
+     * Exposes the metrics over JMX, under {@link #JMX_DOMAIN}.
+     *
+     * @param name value of the 'name' key of the MBean's object name, must be unique within the JVM
+     */
+    public synchronized void register (@NonNull String name) {
+
+        if (objectName != null) return;
+
+        try {
+
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=CrawlMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+
+            // Metrics are still available through the getters
+            log.warn("Failed to register crawl metrics with JMX: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Removes the metrics from JMX, if registered.
+     */
+    public synchronized void unregister () {
+
+        if (objectName == null) return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("Failed to unregister crawl metrics from JMX: " + e.getMessage());
+        }
+
+        objectName = null;
+    }
+
+
+    @Override
+    public int getUrlQueueDepth () {
+
+        return urlQueue.size();
+    }
+
+
+    @Override
+    public int getFetchedDataQueueDepth () {
+
+        return fetchedDataQueue.size();
+    }
+
+
+    @Override
+    public int getParsedDataQueueDepth () {
+
+        return parsedDataQueue.size();
+    }
+
+
+    @Override
+    public long getPagesFetched () {
+
+        return pagesFetched.sum();
+    }
+
+
+    @Override
+    public long getPagesParsed () {
+
+        return pagesParsed.sum();
+    }
+
+
+    @Override
+    public long getPagesCompleted () {
+
+        return pagesCompleted.sum();
+    }
+
+
+    @Override
+    public long getBytesFetched () {
+
+        return bytesFetched.sum();
+    }
+
+
+    /**
+     * @return pages completed per second, on average since the crawl started
+     */
+    @Override
+    public double getPagesPerSecond () {
+
+        return perSecond(pagesCompleted.sum());
+    }
+
+
+    /**
+     * @return bytes fetched per second, on average since the crawl started
+     */
+    @Override
+    public double getBytesPerSecond () {
+
+        return perSecond(bytesFetched.sum());
+    }
+
+
+    @Override
+    public double getFetchLatencyMeanMillis () {
+
+        return fetchLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+
+    @Override
+    public double getFetchLatency99thMillis () {
+
+        return fetchLatency.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+
+    @Override
+    public double getParseLatencyMeanMillis () {
+
+        return parseLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+
+    @Override
+    public double getParseLatency99thMillis () {
+
+        return parseLatency.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+
+    @Override
+    public double getManageLatencyMeanMillis () {
+
+        return manageLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+
+    @Override
+    public double getManageLatency99thMillis () {
+
+        return manageLatency.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+
+    /**
+     * @return number of failed requests by HTTP status code, {@link #NO_RESPONSE} counting requests that got no response
+     */
+    @Override
+    public Map<Integer, Long> getErrorCounts () {
+
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : errors.entrySet()) counts.put(entry.getKey(), entry.getValue().sum());
+        return counts;
+    }
+
+
+    private double perSecond (long value) {
+
+        long elapsed = System.nanoTime() - startedAt;
+        return elapsed > 0 ? value * NANOS_PER_SECOND / elapsed : 0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.rimusdesign.webcrawler.metrics;
+
+
+import java.util.Map;
+
+
+/**
+ * JMX view of {@link CrawlMetrics}. Latencies are reported in milliseconds.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface CrawlMetricsMBean {
+
+
+    int getUrlQueueDepth ();
+
+
+    int getFetchedDataQueueDepth ();
+
+
+    int getParsedDataQueueDepth ();
+
+
+    long getPagesFetched ();
+
+
+    long getPagesParsed ();
+
+
+    long getPagesCompleted ();
+
+
+    long getBytesFetched ();
+
+
+    double getPagesPerSecond ();
+
+
+    double getBytesPerSecond ();
+
+
+    double getFetchLatencyMeanMillis ();
+
+
+    double getFetchLatency99thMillis ();
+
+
+    double getParseLatencyMeanMillis ();
+
+
+    double getParseLatency99thMillis ();
+
+
+    double getManageLatencyMeanMillis ();
+
+
+    double getManageLatency99thMillis ();
+
+
+    Map<Integer, Long> getErrorCounts ();
+}
@@ -0,0 +1,141 @@
+package com.rimusdesign.webcrawler.metrics;
+
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Histogram of non-negative values, e.g. latencies in nanoseconds, which is cheap
+ * enough to record into from every pipeline thread while a crawl is running.
+ * <p>
+ * Values are counted in buckets that grow exponentially, each power of two being
+ * split into four, so any reported percentile is within 25% of the true value.
+ * Every bucket is a {@link LongAdder}, which spreads concurrent increments over
+ * separate cells instead of having all threads contend on a single counter.
+ *
+ * @author Rimas Krivickas.
+ */
+public class LatencyHistogram {
+
+
+    // Each power of two is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Enough buckets to hold Long.MAX_VALUE
+    private static final int NUM_BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+    public LatencyHistogram () {
+
+        for (int i = 0; i < NUM_BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+
+    /**
+     * @param value value to record, negative values are recorded as '0'
+     */
+    public void record (long value) {
+
+        if (value < 0) value = 0;
+
+        buckets[bucketOf(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount () {
+
+        return count.sum();
+    }
+
+
+    /**
+     * @return mean of all values recorded, or '0' if nothing has been recorded
+     */
+    public double getMean () {
+
+        long total = count.sum();
+        return total > 0 ? (double) sum.sum() / total : 0;
+    }
+
+
+    /**
+     * @return largest value recorded, or '0' if nothing has been recorded
+     */
+    public long getMax () {
+
+        return max.get();
+    }
+
+
+    /**
+     * @param percentile percentile to get, between '0' and '100'
+     * @return upper bound of the bucket holding the given percentile, never above
+     * the largest value recorded, or '0' if nothing has been recorded
+     */
+    public long getPercentile (double percentile) {
+
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be between 0 and 100");
+
+        // Bucket counts are read one by one, so use their own total rather than the count
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBoundOf(i), getMax());
+        }
+
+        return getMax();
+    }
+
+
+    /**
+     * Values below {@link #SUB_BUCKETS} get a bucket each, larger ones share a bucket
+     * with the values having the same highest bit and the same next {@link #SUB_BUCKET_BITS} bits.
+     */
+    static int bucketOf (long value) {
+
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * @return largest value that falls into provided bucket
+     */
+    static long upperBoundOf (int bucket) {
+
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+}
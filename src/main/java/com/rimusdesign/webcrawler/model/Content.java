@@ -0,0 +1,18 @@
+package com.rimusdesign.webcrawler.model;
+
+
+/**
+ * Raw content of a {@link Page}, which may be held in memory,
+ * or stored elsewhere and loaded on access.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface Content {
+
+
+    /**
+     * @return content data, loaded if not held in memory
+     */
+    String get ();
+
+}
@@ -0,0 +1,27 @@
+package com.rimusdesign.webcrawler.model;
+
+
+import lombok.NonNull;
+import lombok.Value;
+
+
+/**
+ * {@link Content} held on the heap as is.
+ *
+ * @author Rimas Krivickas.
+ */
+@Value
+public class InMemoryContent implements Content {
+
+
+    @NonNull
+    private final String data;
+
+
+    @Override
+    public String get () {
+
+        return data;
+    }
+
+}
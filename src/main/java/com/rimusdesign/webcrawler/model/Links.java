@@ -0,0 +1,25 @@
+package com.rimusdesign.webcrawler.model;
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+
+/**
+ * URLs found on a {@link Page}, held in a compact form elsewhere
+ * and decoded on access. Read only, decoded sets are copies.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface Links {
+
+
+    HashSet<String> getInternalUrls ();
+
+
+    HashSet<String> getExternalUrls ();
+
+
+    HashMap<StaticContentType, HashSet<String>> getStaticContentUrls ();
+
+}
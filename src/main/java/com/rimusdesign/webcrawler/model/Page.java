@@ -1,20 +1,28 @@
 package com.rimusdesign.webcrawler.model;
 
 
+import com.rimusdesign.webcrawler.utils.CanonicalUrl;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.ToString;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 
 /**
- * An entity to hold the fetched and parsed data.
+ * An entity to hold the fetched and parsed data. Pages are equal if
+ * their IDs are, neither equality nor {@link #toString()} decode links.
  *
  * @author Rimas Krivickas.
  */
 @Data
+@EqualsAndHashCode(of = "id")
+@ToString(doNotUseGetters = true, exclude = {"links", "internalLinks"})
 public class Page {
 
 
@@ -22,18 +30,35 @@ public class Page {
     private final String url;
     private int statusCode;
     private String mimeType;
-    private String rawData;
+    private Content content;
     private String title;
     private HashMap<StaticContentType, HashSet<String>> staticContentUrls;
     private HashSet<String> externalUrls;
     private HashSet<String> internalUrls;
+    private Links links;
+
+    // Canonical forms of internal URLs, along with their fingerprints, 'null' unless kept by the parser
+    private List<CanonicalUrl> internalLinks;
     private PageState state;
 
+    // URL of the seed the page was crawled under, 'null' if not known, e.g. when restored from a checkpoint
+    private String seed;
+
 
 
     public Page (String url) {
 
-        this.id = generateId(url); // Generate ID
+        this(url, PageIdStrategy.SHA_256);
+    }
+
+
+    /**
+     * @param url        URL of the page
+     * @param idStrategy how to generate the ID from the URL, the same for all pages of a crawl
+     */
+    public Page (String url, @NonNull PageIdStrategy idStrategy) {
+
+        this.id = idStrategy.generateId(url); // Generate ID
         this.state = PageState.PENDING; // Set default state
         this.url = url;
     }
@@ -41,13 +66,106 @@ public class Page {
 
     public Set<String> getStaticItemsOfType (StaticContentType type) {
 
+        HashMap<StaticContentType, HashSet<String>> staticContentUrls = getStaticContentUrls();
+
         return staticContentUrls.containsKey(type) ? staticContentUrls.get(type) : null;
     }
 
 
+    /**
+     * @return static content URLs by type, decoded if links have been compacted, see {@link #setLinks(Links)}
+     */
+    public HashMap<StaticContentType, HashSet<String>> getStaticContentUrls () {
+
+        return links != null ? links.getStaticContentUrls() : staticContentUrls;
+    }
+
+
+    /**
+     * @return external URLs, decoded if links have been compacted, see {@link #setLinks(Links)}
+     */
+    public HashSet<String> getExternalUrls () {
+
+        return links != null ? links.getExternalUrls() : externalUrls;
+    }
+
+
+    /**
+     * @return internal URLs, decoded if links have been compacted, see {@link #setLinks(Links)}
+     */
+    public HashSet<String> getInternalUrls () {
+
+        return links != null ? links.getInternalUrls() : internalUrls;
+    }
+
+
+    /**
+     * Replaces internal URLs. Canonical forms kept along with them are dropped,
+     * as they would no longer match, see {@link #setInternalLinks(List)}.
+     *
+     * @param internalUrls internal URLs
+     */
+    public void setInternalUrls (HashSet<String> internalUrls) {
+
+        this.internalUrls = internalUrls;
+        this.internalLinks = null;
+    }
+
+
+    /**
+     * Keeps canonical forms of internal URLs, so their fingerprints don't have to be
+     * computed again when they are followed. Must hold the same URLs as internal URLs,
+     * so whoever adds to one must add to the other.
+     *
+     * @param internalLinks canonical forms of internal URLs, or 'null' if not kept
+     */
+    public void setInternalLinks (List<CanonicalUrl> internalLinks) {
+
+        this.internalLinks = internalLinks;
+    }
+
+
+    /**
+     * Replaces URL sets with their compact form, which is decoded on access.
+     * URL sets can no longer be changed through the getters from then on.
+     *
+     * @param links compact form of this page's URLs
+     */
+    public void setLinks (@NonNull Links links) {
+
+        this.links = links;
+        this.staticContentUrls = null;
+        this.externalUrls = null;
+        this.internalUrls = null;
+        this.internalLinks = null;
+    }
+
+
+    /**
+     * @return raw HTML data, loaded from wherever the content is stored,
+     * or 'null' if page has no HTML data
+     */
+    public String getRawData () {
+
+        return content != null ? content.get() : null;
+    }
+
+
+    /**
+     * Keeps provided HTML data in memory, see {@link #setContent(Content)}
+     * to keep it elsewhere.
+     *
+     * @param rawData raw HTML data
+     */
+    public void setRawData (String rawData) {
+
+        content = rawData != null ? new InMemoryContent(rawData) : null;
+    }
+
+
     public boolean isHtml () {
 
-        return rawData != null;
+        return content != null;
     }
 
     public static String generateId (String url){
@@ -0,0 +1,71 @@
+package com.rimusdesign.webcrawler.model;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+
+
+/**
+ * Defines how {@link Page} IDs are generated from URLs.
+ * Pages are identified by their IDs, so all pages of a crawl
+ * have to be created with the same strategy.
+ *
+ * @author Rimas Krivickas.
+ */
+public enum PageIdStrategy {
+
+
+    /**
+     * SHA-256 hash of the URL, as a 64 characters long hex string.
+     * Stable across versions, use when IDs are stored or compared outside the crawler.
+     */
+    SHA_256 {
+        @Override
+        public String generateId (String url) {
+
+            return CommonUtils.getHash(url);
+        }
+    },
+
+    /**
+     * Fast, non-cryptographic 64-bit fingerprint of the URL, see {@link CommonUtils#fingerprint(String)},
+     * as an 11 characters long URL safe base64 string.
+     */
+    FINGERPRINT_64 {
+        @Override
+        public String generateId (String url) {
+
+            return encode(CommonUtils.fingerprint(url));
+        }
+    };
+
+
+    private static final char[] BASE64_URL_CHARS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final int ENCODED_LENGTH = 11;
+
+
+    /**
+     * @param url URL of the page
+     * @return ID of the page
+     */
+    public abstract String generateId (String url);
+
+
+    /**
+     * Encodes value six bits per character, most significant bits first.
+     */
+    static String encode (long value) {
+
+        char[] chars = new char[ENCODED_LENGTH];
+
+        // Top character only holds the remaining four bits
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = BASE64_URL_CHARS[(int) (value & 0x3F)];
+            value >>>= 6;
+        }
+
+        return new String(chars);
+    }
+
+}
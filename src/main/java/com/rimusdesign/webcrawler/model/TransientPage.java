@@ -1,12 +1,16 @@
 package com.rimusdesign.webcrawler.model;
 
 
+import com.rimusdesign.webcrawler.utils.CommonUtils;
 import lombok.Data;
 
 
 /**
  * A trancient value object to be used for passing data
  * between fetcher and parser threads.
+ * <p>
+ * Carries the raw response body, so it only gets decoded
+ * and parsed once, by the parser.
  *
  * @author Rimas Krivickas.
  */
@@ -17,6 +21,19 @@ public class TransientPage {
     private final String url;
     private final String mimeType;
     private final int statusCode;
-    private final String html;
+    private final byte[] body;
+    private final String charset;
+
+
+    /**
+     * Decodes response body using declared charset, or charset detected
+     * from the body itself if none has been declared.
+     *
+     * @return HTML data, or 'null' if there's no response body
+     */
+    public String getHtml () {
+
+        return body != null ? CommonUtils.decode(body, charset) : null;
+    }
 
 }
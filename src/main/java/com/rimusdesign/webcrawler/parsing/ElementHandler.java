@@ -0,0 +1,22 @@
+package com.rimusdesign.webcrawler.parsing;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import org.jsoup.nodes.Element;
+
+
+/**
+ * Extracts data from a single element into a {@link Page}.
+ * Registered by tag name with {@link ParsingContextGeneric#addHandler(String, ElementHandler)}.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface ElementHandler {
+
+
+    /**
+     * @param element element of the registered tag name, found within the body of a document
+     * @param page    instance to set data for
+     */
+    void handle (Element element, Page page);
+}
@@ -1,19 +1,25 @@
 package com.rimusdesign.webcrawler.parsing;
 
 
+import com.rimusdesign.webcrawler.metrics.CrawlMetrics;
 import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
 import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.StageQueue;
+import com.rimusdesign.webcrawler.storage.ContentStore;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import org.apache.logging.log4j.CloseableThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.LinkedBlockingQueue;
 
 
 /**
  * Takes data from input queue, parses it within provided context,
  * and forwards the resulting {@link Page} instances to the output queue.
+ * <p>
+ * Multiple parsers can share the same queues and {@link ParsingContext}
+ * to spread parsing over several cores.
  *
  * @author Rimas Krivickas.
  */
@@ -23,20 +29,42 @@ public class Parser implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(Parser.class);
 
     private ParsingContext context;
-    private LinkedBlockingQueue<TransientPage> fetchedDataQueue;
-    private LinkedBlockingQueue<Page> parsedDataQueue;
+    private StageQueue<TransientPage> fetchedDataQueue;
+    private StageQueue<Page> parsedDataQueue;
+    private ContentStore contentStore;
+    private CrawlMetrics metrics;
+    private PageIdStrategy idStrategy;
 
 
     /**
      * @param context          an instance of parsing context, see {@link ParsingContext}
      * @param fetchedDataQueue input queue for receiving {@link TransientPage} objects for parsing
      * @param parsedDataQueue  output queue to forward parsed {@link Page} objects
+     * @param contentStore     store to move raw HTML to once parsed, or 'null' to keep it in memory
+     * @param metrics          metrics to record parsing time to, or 'null'
+     * @param idStrategy       how to generate IDs of parsed pages, the same as for the rest of the crawl
      */
-    public Parser (ParsingContext context, LinkedBlockingQueue<TransientPage> fetchedDataQueue, LinkedBlockingQueue<Page> parsedDataQueue) {
+    public Parser (ParsingContext context, StageQueue<TransientPage> fetchedDataQueue, StageQueue<Page> parsedDataQueue,
+                   ContentStore contentStore, CrawlMetrics metrics, PageIdStrategy idStrategy) {
 
         this.context = context;
         this.fetchedDataQueue = fetchedDataQueue;
         this.parsedDataQueue = parsedDataQueue;
+        this.contentStore = contentStore;
+        this.metrics = metrics;
+        this.idStrategy = idStrategy;
+    }
+
+
+    /**
+     * @param context          an instance of parsing context, see {@link ParsingContext}
+     * @param fetchedDataQueue input queue for receiving {@link TransientPage} objects for parsing
+     * @param parsedDataQueue  output queue to forward parsed {@link Page} objects
+     */
+    public Parser (ParsingContext context, StageQueue<TransientPage> fetchedDataQueue, StageQueue<Page> parsedDataQueue) {
+
+        // Keep raw HTML in memory, no metrics, default page IDs
+        this(context, fetchedDataQueue, parsedDataQueue, null, null, PageIdStrategy.SHA_256);
     }
 
 
@@ -51,6 +79,7 @@ public class Parser implements Runnable {
 
             TransientPage data;
             Page page;
+            long startedAt;
 
             try {
 
@@ -58,26 +87,24 @@ public class Parser implements Runnable {
                 while ((data = fetchedDataQueue.take()) != null) {
 
                     log.debug("Received data, URL: " + data.getUrl()+", MIME: " + data.getMimeType() );
-                    // Parse only if contains HTML data
-                    if (data.getHtml() != null && !data.getHtml().isEmpty() && data.getMimeType() != null && data.getMimeType().contains("text/html")) {
+                    startedAt = System.nanoTime();
 
-                        // Get parsed page from provided context
-                        page = context.parse(data.getUrl(), data.getHtml());
-                    } else {
+                    try {
 
-                        // Create empty page if there's no HTML to parse
-                        page = new Page(data.getUrl());
-                    }
+                        page = parse(data);
+                    } catch (RuntimeException e) {
 
-                    // Set status code
-                    page.setStatusCode(data.getStatusCode());
+                        // E.g. content which can't be stored. Forwarded empty regardless, or the page would never be ready,
+                        // and the crawl never complete
+                        log.error("Failed to parse data, URL: " + data.getUrl(), e);
+                        page = new Page(data.getUrl(), idStrategy);
+                    }
 
-                    // Set MIME type
-                    page.setMimeType(data.getMimeType());
+                    if (metrics != null) metrics.recordParse(System.nanoTime() - startedAt);
 
                     // Forward page to data manager
                     log.debug("Adding 'Page' object to output queue, URL: " + data.getUrl());
-                    parsedDataQueue.add(page);
+                    parsedDataQueue.put(page);
                 }
             } catch (InterruptedException e) {
 
@@ -86,4 +113,38 @@ public class Parser implements Runnable {
             }
         }
     }
+
+
+    /**
+     * @return page parsed from provided data, or an empty page if there's no HTML to parse
+     */
+    private Page parse (TransientPage data) {
+
+        Page page;
+
+        // Parse only if contains HTML data
+        if (data.getBody() != null && data.getBody().length > 0 && data.getMimeType() != null && data.getMimeType().contains("text/html")) {
+
+            // Decode raw body, this is the only place HTML gets decoded
+            String html = data.getHtml();
+
+            // Get parsed page from provided context
+            page = context.parse(data.getUrl(), html, idStrategy);
+
+            // Compress raw HTML off the heap, page keeps a handle to load it
+            if (contentStore != null && page.isHtml()) page.setContent(contentStore.store(html));
+        } else {
+
+            // Create empty page if there's no HTML to parse
+            page = new Page(data.getUrl(), idStrategy);
+        }
+
+        // Set status code
+        page.setStatusCode(data.getStatusCode());
+
+        // Set MIME type
+        page.setMimeType(data.getMimeType());
+
+        return page;
+    }
 }
@@ -2,6 +2,7 @@ package com.rimusdesign.webcrawler.parsing;
 
 
 import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
 
 
 /**
@@ -9,6 +10,11 @@ import com.rimusdesign.webcrawler.model.Page;
  * Different implementations can be created for different
  * websites if, for example, there's a need to extract data
  * by HTML tag class names etc.
+ * <p>
+ * A single instance is shared by all {@link Parser} threads, hence
+ * implementations must be thread safe. Preferably, implementations
+ * should be stateless, keeping all intermediate data local
+ * to {@link #parse(String, String)} call.
  *
  * @author Rimas Krivickas.
  */
@@ -27,4 +33,22 @@ public interface ParsingContext {
      */
     Page parse (String url, String html);
 
+
+    /**
+     * Same as {@link #parse(String, String)}, but the ID of the page is generated with provided
+     * strategy, so it matches the IDs of the other pages of a crawl. Contexts which don't
+     * override this method only support the default strategy, {@link PageIdStrategy#SHA_256}.
+     *
+     * @param url        URL from which data has been fetched
+     * @param html       HTML data
+     * @param idStrategy how to generate the ID of the page
+     * @return instance of {@link Page}
+     */
+    default Page parse (String url, String html, PageIdStrategy idStrategy) {
+
+        if (idStrategy != PageIdStrategy.SHA_256) throw new UnsupportedOperationException("Unsupported page ID strategy: " + idStrategy);
+
+        return parse(url, html);
+    }
+
 }
@@ -2,22 +2,38 @@ package com.rimusdesign.webcrawler.parsing;
 
 
 import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
 import com.rimusdesign.webcrawler.model.StaticContentType;
+import com.rimusdesign.webcrawler.utils.CanonicalUrl;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
+import com.rimusdesign.webcrawler.utils.UrlCanonicalizer;
+import lombok.NonNull;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.nodes.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 
 /**
  * A generic implementation of {@link ParsingContext}.
  * Uses default tag and attribute names.
+ * <p>
+ * Data is extracted in a single traversal of the document body, with each element
+ * passed to the {@link ElementHandler}s registered for its tag name. Site specific
+ * contexts can extend this one and register additional handlers with
+ * {@link #addHandler(String, ElementHandler)}, without adding another traversal.
+ * <p>
+ * Stateless, hence safe to be shared by multiple {@link Parser} threads,
+ * as long as handlers are only registered while constructing the context.
  *
  * @author Rimas Krivickas.
  */
@@ -26,6 +42,28 @@ public class ParsingContextGeneric implements ParsingContext {
 
     private static final Logger log = LoggerFactory.getLogger(ParsingContextGeneric.class);
 
+    private final Map<String, List<ElementHandler>> handlers = new HashMap<>();
+
+
+    public ParsingContextGeneric () {
+
+        // Links
+        addHandler("a", this::handleLink);
+
+        // Images
+        addHandler("img", (element, page) -> addStaticItem(page, StaticContentType.IMAGE, element.attr("src")));
+
+        // Audio and video
+        addHandler("source", this::handleSource);
+
+        // Plug-ins
+        addHandler("object", (element, page) -> addStaticItem(page, StaticContentType.PLUGIN, element.attr("data")));
+        addHandler("embed", (element, page) -> addStaticItem(page, StaticContentType.PLUGIN, element.attr("src")));
+
+        // Iframes
+        addHandler("iframe", (element, page) -> addStaticItem(page, StaticContentType.IFRAME, element.attr("src")));
+    }
+
 
     /**
      * {@inheritDoc}
@@ -33,8 +71,18 @@ public class ParsingContextGeneric implements ParsingContext {
     @Override
     public Page parse (String url, String html) {
 
+        return parse(url, html, PageIdStrategy.SHA_256);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Page parse (String url, String html, PageIdStrategy idStrategy) {
+
         // Create new Page
-        Page page = new Page(url);
+        Page page = new Page(url, idStrategy);
 
         // If not an HTML resource, return without processing
         if (html == null || html.isEmpty()) {
@@ -52,216 +100,168 @@ public class ParsingContextGeneric implements ParsingContext {
         // Set title
         page.setTitle(document.title());
 
-        // Extract and set static content
-        handleStaticContent(document, page);
-
-        // Extract and set links
-        handleLinks(document, page);
+        // Extract and set links and static content
+        extract(document, page);
 
         return page;
     }
 
 
     /**
-     * Applies static content details extracted from {@link Document}
-     * to provided {@link Page} instance.
+     * Registers a handler for elements with provided tag name. Handlers registered
+     * for the same tag name are called in the order of registration.
+     * Meant to be called from constructors of extending contexts.
      *
-     * @param document instance from which to extract data
-     * @param page     instance to set data for
+     * @param tag     name of tag, case insensitive
+     * @param handler to be called with every element of the tag
      */
-    private void handleStaticContent (Document document, Page page) {
-
-        // Instantiate static item map if needed
-        HashMap<StaticContentType, HashSet<String>> items = page.getStaticContentUrls() == null
-                ? new HashMap<>() : page.getStaticContentUrls();
-
-        // Set/reset item list to avoid null pointer exceptions
-        page.setStaticContentUrls(items);
+    protected final void addHandler (@NonNull String tag, @NonNull ElementHandler handler) {
 
-        // Extract and set images
-        addStaticItems(StaticContentType.IMAGE, items,
-                extractStaticItems(document, "img", "src"));
-
-        // Extract and set audio
-        addStaticItems(StaticContentType.AUDIO, items,
-                extractStaticItems(document, "source", "src", "audio"));
-
-        // Extract and set video
-        addStaticItems(StaticContentType.VIDEO, items,
-                extractStaticItems(document, "source", "src", "video"));
-
-        // Extract and set plug-ins
-        addStaticItems(StaticContentType.PLUGIN, items,
-                extractStaticItems(document, "object", "data"));
-        addStaticItems(StaticContentType.PLUGIN, items,
-                extractStaticItems(document, "embed", "src"));
-
-        // Extract and set iframes
-        addStaticItems(StaticContentType.IFRAME, items,
-                extractStaticItems(document, "iframe", "src"));
+        handlers.computeIfAbsent(tag.toLowerCase(Locale.ROOT), key -> new ArrayList<>()).add(handler);
     }
 
 
     /**
-     * Extracts the value of an attribute from specific tag.
+     * Adds a static content item to provided {@link Page} instance.
      *
-     * @param document instance to extract data from
-     * @param tag      name of tag
-     * @param srcAttr  name of attribute
-     *
-     * @return a set of attribute values
+     * @param page  instance to set data for
+     * @param type  to use as a key for data access
+     * @param value item to be added, ignored if 'null' or empty
      */
-    private HashSet<String> extractStaticItems (Document document,
-                                                String tag,
-                                                String srcAttr) {
+    protected static void addStaticItem (Page page, StaticContentType type, String value) {
+
+        // Return is there is no item to add
+        if (value == null || value.isEmpty()) return;
+
+        HashMap<StaticContentType, HashSet<String>> items = page.getStaticContentUrls();
 
-        return this.extractStaticItems(document, tag, srcAttr, null);
+        if (!items.containsKey(type)) items.put(type, new HashSet<>());
+        items.get(type).add(value);
     }
 
 
     /**
-     * Extracts the value of an attribute from specific tag.
+     * Passes every element within the body of provided {@link Document}
+     * to its handlers, in document order.
      *
-     * @param document  instance to extract data from
-     * @param tag       name of tag
-     * @param srcAttr   name of attribute
-     * @param parentTag name of parent tag of provided 'tag' parameter.
-     *                  If provided, will extract only those attribute
-     *                  values that are nested within specified
-     *                  parent tag
-     *
-     * @return a set of attribute values, or 'null' if no values are found
+     * @param document instance from which to extract data
+     * @param page     instance to set data for
      */
-    private HashSet<String> extractStaticItems (Document document,
-                                                String tag,
-                                                String srcAttr,
-                                                String parentTag) {
+    void extract (Document document, Page page) {
 
-        // Get top level elements
-        Elements topElements = document.body().getElementsByTag(parentTag == null ? tag : parentTag);
+        // Instantiate item sets if needed, so handlers can add to them
+        if (page.getStaticContentUrls() == null) page.setStaticContentUrls(new HashMap<>());
+        if (page.getInternalUrls() == null) page.setInternalUrls(new HashSet<>());
+        if (page.getInternalLinks() == null) page.setInternalLinks(new ArrayList<>());
+        if (page.getExternalUrls() == null) page.setExternalUrls(new HashSet<>());
 
-        // If no elements found return 'null'
-        if (topElements == null || topElements.size() == 0) return null;
+        Element root = document.body();
+        if (root == null) return;
 
-        // Declare/instantiate variables
-        Elements childElements;
-        String src;
-        HashSet<String> set = new HashSet<>();
+        // Depth first, moving between siblings and parents, so no stack is needed
+        Node node = root;
+        int depth = 0;
 
-        // Extract values
-        for (Element topElement : topElements) {
+        while (node != null) {
 
-            if (parentTag == null || parentTag.isEmpty()) {
+            if (node instanceof Element) handle((Element) node, page);
 
-                // Get attribute value from non-nested tag
-                src = topElement.attr(srcAttr);
+            if (node.childNodeSize() > 0) {
 
-                // If valid, add to set
-                if (src != null && !src.isEmpty()) set.add(src);
+                node = node.childNode(0);
+                depth++;
             } else {
 
-                // Get nested tags
-                childElements = topElement.getElementsByTag(tag);
-
-                for (Element childElement : childElements) {
-
-                    // Get attribute value from nested tag
-                    src = childElement.attr(srcAttr);
-
-                    // If valid, add to set
-                    if (src != null && !src.isEmpty()) set.add(src);
+                while (node.nextSibling() == null && depth > 0) {
+                    node = node.parentNode();
+                    depth--;
                 }
+
+                if (node == root) break;
+                node = node.nextSibling();
             }
         }
+    }
+
 
-        // If no values are found return 'null', otherwise return items
-        return set.size() > 0 ? set : null;
+    private void handle (Element element, Page page) {
+
+        List<ElementHandler> tagHandlers = handlers.get(element.tagName());
+        if (tagHandlers == null) return;
+
+        for (ElementHandler handler : tagHandlers) handler.handle(element, page);
     }
 
 
     /**
-     * Adds items from source to target under specified {@link StaticContentType}.
+     * Adds the URL of a link to internal or external URLs of provided {@link Page}.
      *
-     * @param type   to use as a key for data access
-     * @param target object to which the data will be added
-     * @param source items to be added
+     * @param element 'a' element
+     * @param page    instance to set data for
      */
-    private void addStaticItems (StaticContentType type,
-                                 HashMap<StaticContentType, HashSet<String>> target,
-                                 HashSet<String> source) {
+    private void handleLink (Element element, Page page) {
+
+        // Extract URL from tag
+        String url = element.absUrl("href");
 
-        // Return is there are no items to add
-        if (source == null || source.isEmpty()) return;
+        // Proceed only if URL is usable
+        if (url == null || url.isEmpty()) return;
 
-        if (!target.containsKey(type)) {
+        // Bring URL to canonical form, 'null' if it's not usable
+        CanonicalUrl link = UrlCanonicalizer.canonicalize(url);
+        if (link == null) return;
 
-            // If target doesn't have data under provided key, set key and add data
-            target.put(type, source);
+        // Add URL to relevant list
+        if (isExternal(link.getHost(), element.baseUri())) {
+
+            page.getExternalUrls().add(link.getUrl());
         } else {
 
-            // If target has data under provided key, append data
-            target.get(type).addAll(source);
+            // Fingerprint is kept, so it doesn't have to be computed again when following the link
+            if (page.getInternalUrls().add(link.getUrl())) page.getInternalLinks().add(link);
         }
     }
 
 
     /**
-     * Sets internal/external URLs extracted from {@link Document} instance
-     * to {@link Page} instance provided.
+     * Adds the source as audio if nested within an 'audio' element,
+     * and as video if nested within a 'video' element.
      *
-     * @param document instance from which to extract data
-     * @param page     instance to set data for
+     * @param element 'source' element
+     * @param page    instance to set data for
      */
-    private void handleLinks (Document document, Page page) {
-
-        // Instantiate URL sets if needed
-        if (page.getInternalUrls() == null) page.setInternalUrls(new HashSet<>());
-        if (page.getExternalUrls() == null) page.setExternalUrls(new HashSet<>());
-
-        // Extract all links
-        Elements elements = document.body().getElementsByTag("a");
+    private void handleSource (Element element, Page page) {
 
-        String url;
+        boolean isAudio = false;
+        boolean isVideo = false;
 
-        for (Element element : elements) {
+        for (Element parent = element.parent(); parent != null; parent = parent.parent()) {
 
-            // Extract URL from tag
-            url = element.absUrl("href");
-
-            // Proceed only if URL is usable
-            if (url != null &&
-                    !url.isEmpty() &&
-                    !CommonUtils.containsUnsafeChars(url)) {
-
-                // Clean up URL
-                url = CommonUtils.cleanUpURL(url);
-
-                // Add URL to relevant list
-                if (isExternal(url, document.baseUri())) {
-
-                    page.getExternalUrls().add(url);
-                } else {
-
-                    page.getInternalUrls().add(url);
-                }
+            if (parent.tagName().equals("audio")) {
+                isAudio = true;
+            } else if (parent.tagName().equals("video")) {
+                isVideo = true;
             }
         }
+
+        if (isAudio) addStaticItem(page, StaticContentType.AUDIO, element.attr("src"));
+        if (isVideo) addStaticItem(page, StaticContentType.VIDEO, element.attr("src"));
     }
 
 
     /**
-     * A util for determining if provided URL is external
+     * A util for determining if provided host is external
      * in regards to base URL.
      *
-     * @param url     value to be validated
+     * @param host    lower case host name to be validated
      * @param baseUrl value to be validated against
      *
-     * @return 'false' if domain name of provided 'url' belongs to
-     * domain of 'baseUrl'
+     * @return 'false' if provided 'host' belongs to
+     * domain of 'baseUrl', or one of its subdomains
      */
-    private boolean isExternal (String url, String baseUrl) {
+    private boolean isExternal (String host, String baseUrl) {
 
-        return !CommonUtils.stripDomain(url).contains(CommonUtils.stripDomain(baseUrl));
+        return !CommonUtils.isWithinDomain(CommonUtils.stripDomain(host), CommonUtils.stripDomain(baseUrl));
     }
 
 }
@@ -0,0 +1,524 @@
+package com.rimusdesign.webcrawler.parsing;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
+import com.rimusdesign.webcrawler.model.StaticContentType;
+import com.rimusdesign.webcrawler.utils.CanonicalUrl;
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import com.rimusdesign.webcrawler.utils.UrlCanonicalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+
+/**
+ * An implementation of {@link ParsingContext} which extracts the same data as
+ * {@link ParsingContextGeneric}, i.e. title, links, and static content, without
+ * building a document tree.
+ * <p>
+ * HTML is scanned once, tag by tag. Only attributes of the tags of interest are
+ * read, text outside of the title is skipped, and contents of 'script', 'style'
+ * and 'textarea' elements are skipped as a whole, so the work done per page is a
+ * fraction of what a full parse takes. Nesting is only tracked for 'audio' and
+ * 'video', which is all the extracted data depends on.
+ * <p>
+ * Meant for crawls that only discover links. Malformed HTML can be interpreted
+ * differently than by a full parser, e.g. tags misplaced within the 'head'.
+ * <p>
+ * Stateless, hence safe to be shared by multiple {@link Parser} threads.
+ *
+ * @author Rimas Krivickas.
+ */
+public class ParsingContextStreaming implements ParsingContext {
+
+
+    private static final Logger log = LoggerFactory.getLogger(ParsingContextStreaming.class);
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Page parse (String url, String html) {
+
+        return parse(url, html, PageIdStrategy.SHA_256);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Page parse (String url, String html, PageIdStrategy idStrategy) {
+
+        // Create new Page
+        Page page = new Page(url, idStrategy);
+
+        // If not an HTML resource, return without processing
+        if (html == null || html.isEmpty()) {
+
+            log.debug("Not an HTML, return without parsing. For URL: " + url);
+            return page;
+        }
+
+        // Set raw data
+        page.setRawData(html);
+
+        // Scan tags, collecting data into the page
+        new Scanner(url, html, page).scan();
+
+        return page;
+    }
+
+
+    /**
+     * Holds the state of a single scan.
+     */
+    private static final class Scanner {
+
+
+        private final String html;
+        private final int length;
+        private final Page page;
+        private final HashMap<StaticContentType, HashSet<String>> staticItems = new HashMap<>();
+
+        private String baseDomain;
+        private URL base;
+        private boolean isBaseSet;
+        private boolean isTitleSet;
+        private int audioDepth;
+        private int videoDepth;
+        private int position;
+
+        // Attributes of the current tag, only the ones of interest are kept
+        private String href;
+        private String src;
+        private String data;
+
+
+        private Scanner (String url, String html, Page page) {
+
+            this.html = html;
+            this.length = html.length();
+            this.page = page;
+            this.baseDomain = CommonUtils.stripDomain(url);
+            this.base = toUrl(url);
+        }
+
+
+        private void scan () {
+
+            page.setInternalUrls(new HashSet<>());
+            page.setInternalLinks(new ArrayList<>());
+            page.setExternalUrls(new HashSet<>());
+
+            while (position < length) {
+
+                int start = html.indexOf('<', position);
+                if (start < 0 || start + 1 >= length) break;
+
+                position = start + 1;
+                char next = html.charAt(position);
+
+                if (next == '!') {
+
+                    // Comment, doctype, or CDATA
+                    skipMarkupDeclaration();
+                } else if (next == '?') {
+
+                    // Bogus comment, e.g. XML declaration
+                    skipPast(">");
+                } else if (next == '/') {
+
+                    position++;
+                    if (position < length && isLetter(html.charAt(position))) endTag(skipName());
+                    skipTag();
+                } else if (isLetter(next)) {
+
+                    startTag(skipName());
+                }
+                // Otherwise it's just a '<' in text
+            }
+
+            page.setStaticContentUrls(staticItems);
+            if (!isTitleSet) page.setTitle("");
+        }
+
+
+        /**
+         * Handles a start tag, its name being between provided start and the current position.
+         * Names are compared in place, as most tags are of no interest.
+         */
+        private void startTag (int nameStart) {
+
+            if (isName(nameStart, "a")) {
+
+                readAttributes();
+                if (href != null) addLink(href);
+            } else if (isName(nameStart, "img")) {
+
+                readAttributes();
+                addStaticItem(StaticContentType.IMAGE, src);
+            } else if (isName(nameStart, "source")) {
+
+                readAttributes();
+                if (audioDepth > 0) addStaticItem(StaticContentType.AUDIO, src);
+                if (videoDepth > 0) addStaticItem(StaticContentType.VIDEO, src);
+            } else if (isName(nameStart, "object")) {
+
+                readAttributes();
+                addStaticItem(StaticContentType.PLUGIN, data);
+            } else if (isName(nameStart, "embed")) {
+
+                readAttributes();
+                addStaticItem(StaticContentType.PLUGIN, src);
+            } else if (isName(nameStart, "iframe")) {
+
+                readAttributes();
+                addStaticItem(StaticContentType.IFRAME, src);
+            } else if (isName(nameStart, "base")) {
+
+                readAttributes();
+
+                // Only the first base with a URL counts, like in a full parse
+                if (!isBaseSet && href != null) {
+                    String resolved = resolve(href);
+                    if (!resolved.isEmpty()) {
+                        baseDomain = CommonUtils.stripDomain(resolved);
+                        base = toUrl(resolved);
+                        isBaseSet = true;
+                    }
+                }
+            } else if (isName(nameStart, "audio")) {
+
+                if (!skipTag()) audioDepth++;
+            } else if (isName(nameStart, "video")) {
+
+                if (!skipTag()) videoDepth++;
+            } else if (isName(nameStart, "title")) {
+
+                if (!skipTag()) readTitle();
+            } else if (isName(nameStart, "script") || isName(nameStart, "style") || isName(nameStart, "textarea")) {
+
+                // Contents are not markup, a '<a' in there is not a link
+                String name = html.substring(nameStart, position);
+                if (!skipTag()) skipRawText(name);
+            } else {
+
+                skipTag();
+            }
+        }
+
+
+        private void endTag (int nameStart) {
+
+            if (isName(nameStart, "audio") && audioDepth > 0) {
+                audioDepth--;
+            } else if (isName(nameStart, "video") && videoDepth > 0) {
+                videoDepth--;
+            }
+        }
+
+
+        /**
+         * @return 'true' if the tag name between provided start and the current position matches, ignoring case
+         */
+        private boolean isName (int nameStart, String name) {
+
+            return position - nameStart == name.length() && html.regionMatches(true, nameStart, name, 0, name.length());
+        }
+
+
+        /**
+         * Reads attributes of the current tag, up to and including the closing '&gt;'.
+         * Keeps the first value of each attribute of interest, with entities decoded.
+         */
+        private void readAttributes () {
+
+            href = null;
+            src = null;
+            data = null;
+
+            while (position < length) {
+
+                char c = html.charAt(position);
+
+                if (c == '>') {
+                    position++;
+                    return;
+                } else if (isWhitespace(c) || c == '/') {
+                    position++;
+                    continue;
+                }
+
+                // Attribute name
+                int nameStart = position;
+                while (position < length && !isWhitespace(c = html.charAt(position)) && c != '>' && c != '=' && c != '/') {
+                    position++;
+                }
+                String name = html.substring(nameStart, position);
+
+                skipWhitespace();
+
+                // Attribute value, if any
+                String value = "";
+                if (position < length && html.charAt(position) == '=') {
+
+                    position++;
+                    skipWhitespace();
+
+                    if (position < length && ((c = html.charAt(position)) == '"' || c == '\'')) {
+
+                        int end = html.indexOf(c, position + 1);
+                        if (end < 0) end = length;
+                        value = html.substring(position + 1, end);
+                        position = Math.min(end + 1, length);
+                    } else {
+
+                        int valueStart = position;
+                        while (position < length && !isWhitespace(c = html.charAt(position)) && c != '>') position++;
+                        value = html.substring(valueStart, position);
+                    }
+                }
+
+                keepAttribute(name, value);
+            }
+        }
+
+
+        private void keepAttribute (String name, String value) {
+
+            if (name.equalsIgnoreCase("href")) {
+                if (href == null) href = decode(value);
+            } else if (name.equalsIgnoreCase("src")) {
+                if (src == null) src = decode(value);
+            } else if (name.equalsIgnoreCase("data")) {
+                if (data == null) data = decode(value);
+            }
+        }
+
+
+        /**
+         * Moves past the end of the current tag, skipping quoted attribute values.
+         *
+         * @return 'true' if the tag is self closing
+         */
+        private boolean skipTag () {
+
+            char quote = 0;
+            char c;
+
+            while (position < length) {
+
+                c = html.charAt(position++);
+
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return position >= 2 && html.charAt(position - 2) == '/';
+                }
+            }
+
+            return false;
+        }
+
+
+        private void skipMarkupDeclaration () {
+
+            if (html.startsWith("!--", position)) {
+                position += 3;
+                skipPast("-->");
+            } else {
+                skipPast(">");
+            }
+        }
+
+
+        private void skipPast (String terminator) {
+
+            int end = html.indexOf(terminator, position);
+            position = end < 0 ? length : end + terminator.length();
+        }
+
+
+        /**
+         * Skips contents of an element which can't contain other tags, up to its end tag.
+         */
+        private void skipRawText (String name) {
+
+            int end = indexOfEndTag(name);
+            position = end < 0 ? length : end;
+        }
+
+
+        private void readTitle () {
+
+            int end = indexOfEndTag("title");
+            if (end < 0) end = length;
+
+            // Only the first title counts, like in a full parse
+            if (!isTitleSet) {
+                page.setTitle(normaliseWhitespace(org.jsoup.parser.Parser.unescapeEntities(html.substring(position, end), false)));
+                isTitleSet = true;
+            }
+
+            position = end;
+        }
+
+
+        /**
+         * @return position of the end tag of provided element, matched case insensitively, or '-1'
+         */
+        private int indexOfEndTag (String name) {
+
+            int from = position;
+            int end;
+
+            while ((end = html.indexOf("</", from)) >= 0) {
+
+                if (html.regionMatches(true, end + 2, name, 0, name.length())) {
+                    int after = end + 2 + name.length();
+                    if (after >= length || !isLetter(html.charAt(after))) return end;
+                }
+                from = end + 2;
+            }
+
+            return -1;
+        }
+
+
+        /**
+         * Moves past a tag name.
+         *
+         * @return position the name starts at
+         */
+        private int skipName () {
+
+            int start = position;
+            char c;
+
+            while (position < length && !isWhitespace(c = html.charAt(position)) && c != '>' && c != '/') position++;
+
+            return start;
+        }
+
+
+        private void skipWhitespace () {
+
+            while (position < length && isWhitespace(html.charAt(position))) position++;
+        }
+
+
+        private void addLink (String value) {
+
+            // Resolve against base URL, same as 'absUrl' of a parsed element
+            String url = resolve(value);
+
+            // Proceed only if URL is usable
+            if (url.isEmpty()) return;
+
+            // Bring URL to canonical form, 'null' if it's not usable
+            CanonicalUrl link = UrlCanonicalizer.canonicalize(url);
+            if (link == null) return;
+
+            // Add URL to relevant list
+            if (!CommonUtils.isWithinDomain(CommonUtils.stripDomain(link.getHost()), baseDomain)) {
+                page.getExternalUrls().add(link.getUrl());
+            } else {
+                if (page.getInternalUrls().add(link.getUrl())) page.getInternalLinks().add(link);
+            }
+        }
+
+
+        private void addStaticItem (StaticContentType type, String value) {
+
+            if (value == null || value.isEmpty()) return;
+
+            HashSet<String> items = staticItems.get(type);
+            if (items == null) {
+                items = new HashSet<>();
+                staticItems.put(type, items);
+            }
+            items.add(value);
+        }
+
+
+        /**
+         * @return absolute URL, or an empty string if it can't be resolved
+         */
+        private String resolve (String relativeUrl) {
+
+            try {
+
+                URL url = base != null ? base : new URL(relativeUrl);
+
+                // A query alone replaces the query of the base URL, which 'URL' gets wrong
+                if (relativeUrl.startsWith("?")) relativeUrl = url.getPath() + relativeUrl;
+
+                return new URL(url, relativeUrl).toExternalForm();
+            } catch (MalformedURLException e) {
+
+                return "";
+            }
+        }
+
+
+        private static URL toUrl (String url) {
+
+            try {
+                return new URL(url);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+
+        private static String decode (String value) {
+
+            return value.indexOf('&') < 0 ? value : org.jsoup.parser.Parser.unescapeEntities(value, true);
+        }
+
+
+        private static String normaliseWhitespace (String text) {
+
+            StringBuilder builder = new StringBuilder(text.length());
+            boolean isPendingSpace = false;
+
+            for (int i = 0; i < text.length(); i++) {
+
+                char c = text.charAt(i);
+
+                if (isWhitespace(c)) {
+                    isPendingSpace = builder.length() > 0;
+                } else {
+                    if (isPendingSpace) builder.append(' ');
+                    builder.append(c);
+                    isPendingSpace = false;
+                }
+            }
+
+            return builder.toString();
+        }
+
+
+        private static boolean isLetter (char c) {
+
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+
+
+        private static boolean isWhitespace (char c) {
+
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+    }
+
+}
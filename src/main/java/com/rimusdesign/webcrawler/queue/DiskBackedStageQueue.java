@@ -0,0 +1,240 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+
+/**
+ * Unbounded {@link StageQueue} of strings, meant to be used as the crawl frontier,
+ * which keeps heap use flat no matter how many items it holds.
+ * <p>
+ * Only a small head, to take items from, and a small tail, to add items to, are kept
+ * in memory. Once the tail fills up it's written to an append-only segment file, and
+ * segments are read back in order, through a memory map, whenever the head runs empty.
+ * Segment files are deleted once read, and on {@link #close()}.
+ *
+ * @author Rimas Krivickas.
+ */
+public class DiskBackedStageQueue implements StageQueue<String> {
+
+
+    private static final Logger log = LoggerFactory.getLogger(DiskBackedStageQueue.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8192;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // Guarded by 'this'
+    private final ArrayDeque<String> head;
+    private final ArrayDeque<String> tail;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long spilledCount;
+    private long nextSegmentId;
+
+
+    /**
+     * @param parentDirectory directory to create segment files in, a new
+     *                        subdirectory is created for each queue
+     * @param segmentSize     number of items held in memory at each end of the
+     *                        queue, and written to each segment file
+     * @throws IOException if segment directory can't be created
+     */
+    public DiskBackedStageQueue (@NonNull Path parentDirectory, int segmentSize) throws IOException {
+
+        if (segmentSize < 1) throw new IllegalArgumentException("Segment size must be positive");
+
+        this.directory = Files.createTempDirectory(Files.createDirectories(parentDirectory), "frontier-");
+        this.segmentSize = segmentSize;
+
+        head = new ArrayDeque<>(segmentSize);
+        tail = new ArrayDeque<>(segmentSize);
+    }
+
+
+    /**
+     * @param parentDirectory directory to create segment files in
+     * @throws IOException if segment directory can't be created
+     */
+    public DiskBackedStageQueue (@NonNull Path parentDirectory) throws IOException {
+
+        this(parentDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+
+    @Override
+    public void put (String item) throws InterruptedException {
+
+        offer(item);
+    }
+
+
+    /**
+     * Always accepts the item, as the queue is unbounded.
+     *
+     * @throws UncheckedIOException if a full tail can't be written to disk
+     */
+    @Override
+    public synchronized boolean offer (@NonNull String item) {
+
+        if (segments.isEmpty() && tail.isEmpty() && head.size() < segmentSize) {
+
+            // Nothing waiting in between, item can go straight to the head
+            head.add(item);
+        } else {
+
+            tail.add(item);
+            if (tail.size() >= segmentSize) spill();
+        }
+
+        notifyAll();
+        return true;
+    }
+
+
+    @Override
+    public synchronized String take () throws InterruptedException {
+
+        String item;
+        while ((item = poll()) == null) wait();
+        return item;
+    }
+
+
+    /**
+     * @throws UncheckedIOException if a segment can't be read back from disk
+     */
+    @Override
+    public synchronized String poll () {
+
+        if (head.isEmpty()) refill();
+        return head.poll();
+    }
+
+
+    @Override
+    public synchronized int size () {
+
+        return (int) Math.min(Integer.MAX_VALUE, head.size() + spilledCount + tail.size());
+    }
+
+
+    /**
+     * Drops all items, and deletes segment files along with their directory.
+     */
+    @Override
+    public synchronized void close () {
+
+        head.clear();
+        tail.clear();
+        spilledCount = 0;
+
+        while (!segments.isEmpty()) delete(segments.poll().path);
+        delete(directory);
+    }
+
+
+    /**
+     * Moves items to the head from the oldest segment, or from the tail if nothing has been spilled.
+     */
+    private void refill () {
+
+        Segment segment = segments.poll();
+
+        if (segment == null) {
+
+            head.addAll(tail);
+            tail.clear();
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes;
+
+            for (int i = 0; i < segment.count; i++) {
+                bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                head.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+
+            throw new UncheckedIOException("Failed to read frontier segment: " + segment.path, e);
+        }
+
+        spilledCount -= segment.count;
+        delete(segment.path);
+    }
+
+
+    /**
+     * Writes the tail to a new segment file.
+     */
+    private void spill () {
+
+        Path path = directory.resolve("segment-" + nextSegmentId++);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+
+            byte[] bytes;
+            for (String item : tail) {
+                bytes = item.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+
+            throw new UncheckedIOException("Failed to write frontier segment: " + path, e);
+        }
+
+        segments.add(new Segment(path, tail.size()));
+        spilledCount += tail.size();
+        tail.clear();
+
+        log.debug("Spilled frontier segment to disk: " + path);
+    }
+
+
+    private static void delete (Path path) {
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete: " + path);
+        }
+    }
+
+
+    /**
+     * A segment file, along with the number of items written to it.
+     */
+    private static final class Segment {
+
+
+        private final Path path;
+        private final int count;
+
+
+        private Segment (Path path, int count) {
+
+            this.path = path;
+            this.count = count;
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+
+/**
+ * {@link StageQueue} backed by {@link LinkedBlockingQueue}.
+ * Unbounded unless capacity is provided.
+ *
+ * @param <T> type of items passed through the queue
+ *
+ * @author Rimas Krivickas.
+ */
+public class LinkedStageQueue<T> implements StageQueue<T> {
+
+
+    private final LinkedBlockingQueue<T> queue;
+
+
+    public LinkedStageQueue () {
+
+        queue = new LinkedBlockingQueue<>();
+    }
+
+
+    /**
+     * @param capacity maximum number of items held by the queue
+     */
+    public LinkedStageQueue (int capacity) {
+
+        queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+
+    @Override
+    public void put (T item) throws InterruptedException {
+
+        queue.put(item);
+    }
+
+
+    @Override
+    public boolean offer (T item) {
+
+        return queue.offer(item);
+    }
+
+
+    @Override
+    public T take () throws InterruptedException {
+
+        return queue.take();
+    }
+
+
+    @Override
+    public T poll () {
+
+        return queue.poll();
+    }
+
+
+    @Override
+    public int size () {
+
+        return queue.size();
+    }
+}
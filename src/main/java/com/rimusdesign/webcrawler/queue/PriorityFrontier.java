@@ -0,0 +1,284 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Unbounded {@link StageQueue} of URLs to be fetched, which hands out URLs with
+ * the highest score first, as scored by a {@link UrlScorer}.
+ * <p>
+ * Scores are mapped to a fixed number of levels, each a lock free FIFO bucket,
+ * so queueing and taking a URL costs the same regardless of the number of URLs
+ * waiting, and neither locks the whole frontier. A URL whose level changes while
+ * it's waiting is added to its new bucket, and the entry left in the old one is
+ * skipped once it comes up, so updates don't need to search buckets either.
+ * <p>
+ * Each URL is held once, queueing a URL already waiting has no effect. Scores of
+ * URLs taken are kept until {@link #done(String)}, as scores of links found on
+ * their pages derive from them.
+ * <p>
+ * URLs only get fetched in order of their scores if they are taken as fetchers
+ * free up, rather than as soon as they are queued.
+ *
+ * @author Rimas Krivickas.
+ */
+public class PriorityFrontier implements StageQueue<String> {
+
+
+    /**
+     * Number of priority levels
+     */
+    public static final int LEVELS = 64;
+
+    private final UrlScorer scorer;
+    private final ConcurrentLinkedQueue<String>[] buckets;
+
+    // Score and level of each URL waiting, entries of a URL found in other buckets are stale
+    private final Map<String, Entry> waiting = new ConcurrentHashMap<>();
+
+    // Score of each URL taken, until its page is done
+    private final Map<String, Double> taken = new ConcurrentHashMap<>();
+
+    // One permit per URL waiting
+    private final Semaphore available = new Semaphore(0);
+
+    // Number of URLs moved to another bucket so far, signalled on the lock, as a move can hide a URL from takers
+    private final AtomicLong numMoves = new AtomicLong();
+    private final Object moveLock = new Object();
+
+
+    /**
+     * @param scorer scorer to order URLs by
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityFrontier (@NonNull UrlScorer scorer) {
+
+        this.scorer = scorer;
+
+        buckets = new ConcurrentLinkedQueue[LEVELS];
+        for (int i = 0; i < LEVELS; i++) buckets[i] = new ConcurrentLinkedQueue<>();
+    }
+
+
+    /**
+     * Queues provided URL with the initial score, see {@link UrlScorer#initialScore()}.
+     */
+    @Override
+    public void put (@NonNull String url) {
+
+        add(url, scorer.initialScore());
+    }
+
+
+    /**
+     * Queues provided URL with the initial score, see {@link UrlScorer#initialScore()}.
+     * Never rejects URLs, as the frontier is unbounded.
+     */
+    @Override
+    public boolean offer (@NonNull String url) {
+
+        add(url, scorer.initialScore());
+        return true;
+    }
+
+
+    /**
+     * Queues a URL found on provided page, scored from the score of the page.
+     *
+     * @param url    URL to be queued
+     * @param parent page the URL was found on, taken from this frontier
+     */
+    public void put (@NonNull String url, @NonNull Page parent) {
+
+        add(url, scorer.score(scoreOf(parent), linkCount(parent), Double.NaN));
+    }
+
+
+    /**
+     * Updates the score of a URL found again, on provided page. Has no effect unless the URL is waiting.
+     *
+     * @param url    URL found on the page
+     * @param parent page the URL was found on, taken from this frontier
+     */
+    public void link (@NonNull String url, @NonNull Page parent) {
+
+        double parentScore = scoreOf(parent);
+        int linkCount = linkCount(parent);
+        final boolean[] isMoved = new boolean[1];
+
+        waiting.computeIfPresent(url, (key, entry) -> {
+
+            double score = scorer.score(parentScore, linkCount, entry.score);
+            int level = level(score);
+
+            // The entry in the old bucket goes stale
+            if (level != entry.level) {
+                buckets[level].add(url);
+                isMoved[0] = true;
+            }
+
+            return new Entry(score, level);
+        });
+
+        // Wake takers which have missed the URL while it was being moved
+        if (isMoved[0]) {
+            numMoves.incrementAndGet();
+            synchronized (moveLock) {
+                moveLock.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Forgets the score of a URL taken, once links found on its page have been queued.
+     *
+     * @param url URL of a page taken from this frontier
+     */
+    public void done (@NonNull String url) {
+
+        taken.remove(url);
+    }
+
+
+    @Override
+    public String take () throws InterruptedException {
+
+        available.acquire();
+        return next();
+    }
+
+
+    @Override
+    public String poll () {
+
+        return available.tryAcquire() ? next() : null;
+    }
+
+
+    @Override
+    public int size () {
+
+        return available.availablePermits();
+    }
+
+
+    private void add (String url, double score) {
+
+        Entry entry = new Entry(score, level(score));
+
+        // Already waiting
+        if (waiting.putIfAbsent(url, entry) != null) return;
+
+        buckets[entry.level].add(url);
+        available.release();
+    }
+
+
+    /**
+     * @return URL of the highest level, one of them being reserved by a permit
+     */
+    private String next () {
+
+        while (true) {
+
+            long seenMoves = numMoves.get();
+
+            for (int level = LEVELS - 1; level >= 0; level--) {
+
+                String url;
+                while ((url = buckets[level].poll()) != null) {
+
+                    // Claim the URL, unless this entry went stale
+                    final int bucketLevel = level;
+                    final Entry[] claimed = new Entry[1];
+
+                    waiting.computeIfPresent(url, (key, entry) -> {
+
+                        if (entry.level != bucketLevel) return entry;
+
+                        claimed[0] = entry;
+                        return null;
+                    });
+
+                    if (claimed[0] != null) {
+                        taken.put(url, claimed[0].score);
+                        return url;
+                    }
+                }
+            }
+
+            // The URL reserved is being moved to another bucket, look again once it's there
+            awaitMove(seenMoves);
+        }
+    }
+
+
+    /**
+     * Blocks until a URL has been moved to another bucket since provided number of moves was seen.
+     */
+    private void awaitMove (long seenMoves) {
+
+        boolean isInterrupted = false;
+
+        synchronized (moveLock) {
+            while (numMoves.get() == seenMoves) {
+                try {
+                    moveLock.wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        }
+
+        // A URL is reserved already, so it's taken regardless, with the interrupt kept for the caller
+        if (isInterrupted) Thread.currentThread().interrupt();
+    }
+
+
+    private double scoreOf (Page parent) {
+
+        Double score = taken.get(parent.getUrl());
+        return score != null ? score : scorer.initialScore();
+    }
+
+
+    private int level (double score) {
+
+        int level = scorer.level(score);
+        return level < 0 ? 0 : level >= LEVELS ? LEVELS - 1 : level;
+    }
+
+
+    private static int linkCount (Page parent) {
+
+        return parent.getInternalUrls() != null ? parent.getInternalUrls().size() : 0;
+    }
+
+
+    /**
+     * Score of a URL waiting, and the level of the bucket it's in.
+     */
+    private static final class Entry {
+
+
+        private final double score;
+        private final int level;
+
+
+        private Entry (double score, int level) {
+
+            this.score = score;
+            this.level = level;
+        }
+    }
+
+}
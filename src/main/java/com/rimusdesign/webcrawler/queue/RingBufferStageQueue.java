@@ -0,0 +1,247 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Bounded, lock-free {@link StageQueue} backed by a preallocated ring buffer.
+ * <p>
+ * Every slot carries a sequence number which tells producers and consumers
+ * whether the slot is free to be written or ready to be read, so handing an
+ * item over takes a single CAS on either end, and allocates nothing.
+ * Safe for multiple producers and multiple consumers.
+ * <p>
+ * Blocking calls spin briefly, then yield, then block until signalled by the
+ * other end, so idle stages use no CPU. The lock is only taken, on either end,
+ * while some thread is blocked.
+ *
+ * @param <T> type of items passed through the queue
+ *
+ * @author Rimas Krivickas.
+ */
+public class RingBufferStageQueue<T> implements StageQueue<T> {
+
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+
+    // Next position to write to, and next position to read from
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    // Threads blocked waiting for items, or for space, signalled by the other end only while there are any
+    private final AtomicInteger numWaitingTakers = new AtomicInteger();
+    private final AtomicInteger numWaitingPutters = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+
+    /**
+     * @param capacity maximum number of items held by the queue,
+     *                 rounded up to the nearest power of two, at least two
+     */
+    public RingBufferStageQueue (int capacity) {
+
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        if (capacity > 1 << 30) throw new IllegalArgumentException("Capacity is too large");
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+
+        // With a single slot, an item published for one lap reads as free for the next
+        size = Math.max(size, 2);
+
+        mask = size - 1;
+        buffer = new Object[size];
+        sequences = new AtomicLongArray(size);
+
+        // Each slot is initially free to be written at its own position
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+
+    @Override
+    public void put (T item) throws InterruptedException {
+
+        for (int tries = 0; tries < SPIN_TRIES + YIELD_TRIES; tries++) {
+            if (offer(item)) return;
+            backOff(tries);
+        }
+
+        // Still full, block until a consumer frees a slot
+        numWaitingPutters.incrementAndGet();
+        try {
+
+            lock.lockInterruptibly();
+            try {
+                while (!offer(item)) notFull.await();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+
+            numWaitingPutters.decrementAndGet();
+        }
+    }
+
+
+    @Override
+    public boolean offer (T item) {
+
+        if (item == null) throw new NullPointerException();
+
+        long position;
+        int index;
+        long difference;
+
+        while (true) {
+
+            position = tail.get();
+            index = (int) position & mask;
+            difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+
+                // Slot is free, claim it
+                if (tail.compareAndSet(position, position + 1)) break;
+            } else if (difference < 0) {
+
+                // Slot still holds an item from the previous lap, queue is full
+                return false;
+            }
+            // Otherwise another producer has claimed the slot, try again
+        }
+
+        buffer[index] = item;
+
+        // Publish the item to consumers. Not a lazy set, so either this producer sees a consumer
+        // which is about to block, or the consumer sees the item
+        sequences.set(index, position + 1);
+        if (numWaitingTakers.get() > 0) signalAll(notEmpty);
+
+        return true;
+    }
+
+
+    @Override
+    public T take () throws InterruptedException {
+
+        T item;
+
+        for (int tries = 0; tries < SPIN_TRIES + YIELD_TRIES; tries++) {
+            if ((item = poll()) != null) return item;
+            backOff(tries);
+        }
+
+        // Still empty, block until a producer publishes an item
+        numWaitingTakers.incrementAndGet();
+        try {
+
+            lock.lockInterruptibly();
+            try {
+                while ((item = poll()) == null) notEmpty.await();
+                return item;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+
+            numWaitingTakers.decrementAndGet();
+        }
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll () {
+
+        long position;
+        int index;
+        long difference;
+
+        while (true) {
+
+            position = head.get();
+            index = (int) position & mask;
+            difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+
+                // Slot holds a published item, claim it
+                if (head.compareAndSet(position, position + 1)) break;
+            } else if (difference < 0) {
+
+                // Nothing has been published to the slot yet, queue is empty
+                return null;
+            }
+            // Otherwise another consumer has claimed the slot, try again
+        }
+
+        T item = (T) buffer[index];
+        buffer[index] = null;
+
+        // Free the slot for the next lap, same as publishing, not a lazy set
+        sequences.set(index, position + mask + 1);
+        if (numWaitingPutters.get() > 0) signalAll(notFull);
+
+        return item;
+    }
+
+
+    @Override
+    public int size () {
+
+        // Read head first, so the result never goes negative
+        long headPosition = head.get();
+        long tailPosition = tail.get();
+        return (int) Math.max(0, Math.min(tailPosition - headPosition, mask + 1));
+    }
+
+
+    /**
+     * @return number of slots in the buffer
+     */
+    public int capacity () {
+
+        return mask + 1;
+    }
+
+
+    /**
+     * Wakes all threads blocked on provided condition. All of them, as one
+     * woken but interrupted could otherwise leave the others waiting.
+     */
+    private void signalAll (Condition condition) {
+
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Spins, then yields, before the next attempt.
+     *
+     * @param tries number of attempts made so far
+     * @throws InterruptedException if current thread has been interrupted
+     */
+    private static void backOff (int tries) throws InterruptedException {
+
+        if (Thread.interrupted()) throw new InterruptedException();
+
+        if (tries >= SPIN_TRIES) Thread.yield();
+    }
+}
@@ -0,0 +1,71 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+/**
+ * A queue used to hand data over between crawler pipeline stages,
+ * i.e. from data manager to fetcher, from fetcher to parser, and
+ * from parser back to data manager.
+ * <p>
+ * Implementations must be thread safe, and allow multiple producers
+ * and multiple consumers.
+ *
+ * @param <T> type of items passed through the queue
+ *
+ * @author Rimas Krivickas.
+ */
+public interface StageQueue<T> extends AutoCloseable {
+
+
+    /**
+     * Adds an item to the queue, waiting for space to become available if needed.
+     *
+     * @param item item to add, must not be 'null'
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put (T item) throws InterruptedException;
+
+
+    /**
+     * Adds an item to the queue if there's space available.
+     *
+     * @param item item to add, must not be 'null'
+     * @return 'true' if item has been added
+     */
+    boolean offer (T item);
+
+
+    /**
+     * Retrieves and removes the head of the queue, waiting for an item
+     * to become available if needed.
+     *
+     * @return head of the queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    T take () throws InterruptedException;
+
+
+    /**
+     * Retrieves and removes the head of the queue if available.
+     *
+     * @return head of the queue, or 'null' if queue is empty
+     */
+    T poll ();
+
+
+    /**
+     * @return number of items in the queue. In case of concurrent access
+     * the value is only an estimate
+     */
+    int size ();
+
+
+    /**
+     * Releases any resources held by the queue, such as files.
+     * The queue must not be used afterwards.
+     */
+    @Override
+    default void close () {
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+/**
+ * Available {@link StageQueue} implementations.
+ *
+ * @author Rimas Krivickas.
+ */
+public enum StageQueueType {
+
+
+    /**
+     * Unbounded linked queue, see {@link LinkedStageQueue}.
+     * Capacity is ignored.
+     */
+    LINKED {
+        @Override
+        public <T> StageQueue<T> create (int capacity) {
+
+            return new LinkedStageQueue<>();
+        }
+    },
+
+    /**
+     * Bounded, preallocated ring buffer, see {@link RingBufferStageQueue}.
+     */
+    RING_BUFFER {
+        @Override
+        public <T> StageQueue<T> create (int capacity) {
+
+            return new RingBufferStageQueue<>(capacity);
+        }
+    };
+
+
+    /**
+     * @param capacity maximum number of items to be held by the queue
+     * @param <T>      type of items passed through the queue
+     * @return new queue instance
+     */
+    public abstract <T> StageQueue<T> create (int capacity);
+
+}
@@ -0,0 +1,46 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+/**
+ * Scores URLs for {@link PriorityFrontier}, higher scores are fetched first.
+ * <p>
+ * A URL's score is derived from the scores of the pages linking to it, as they
+ * get crawled. It keeps being updated for as long as the URL waits in the frontier,
+ * so for example URLs linked from many pages can move ahead of those linked once.
+ * See {@link UrlScoring} for common scorers.
+ * <p>
+ * Implementations must be thread safe, and should be cheap, as scores are computed
+ * for every link found.
+ *
+ * @author Rimas Krivickas.
+ */
+public interface UrlScorer {
+
+
+    /**
+     * @return score of initial URLs, and of any other URLs queued without a page linking to them
+     */
+    double initialScore ();
+
+
+    /**
+     * @param parentScore score of the page the link was found on, as it was when the page was taken to be fetched
+     * @param linkCount   number of internal links found on that page
+     * @param score       current score of the linked URL if it's waiting in the frontier, or 'NaN' if it's new
+     *
+     * @return new score of the linked URL
+     */
+    double score (double parentScore, int linkCount, double score);
+
+
+    /**
+     * Maps a score to one of the frontier's priority levels. URLs of the same level are
+     * fetched in the order queued, so levels only need to tell apart scores that matter.
+     *
+     * @param score a score
+     *
+     * @return level from '0', the lowest, up to {@link PriorityFrontier#LEVELS} - 1, values outside are clamped
+     */
+    int level (double score);
+
+}
@@ -0,0 +1,96 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+/**
+ * Common {@link UrlScorer}s.
+ *
+ * @author Rimas Krivickas.
+ */
+public enum UrlScoring implements UrlScorer {
+
+
+    /**
+     * Breadth first, URLs closer to initial ones are fetched first. Score is the
+     * negated depth, i.e. the fewest links it takes to get to the URL.
+     */
+    DEPTH {
+        @Override
+        public double initialScore () {
+
+            return 0;
+        }
+
+
+        @Override
+        public double score (double parentScore, int linkCount, double score) {
+
+            // A shorter path may turn up later
+            return Double.isNaN(score) ? parentScore - 1 : Math.max(score, parentScore - 1);
+        }
+
+
+        @Override
+        public int level (double score) {
+
+            return PriorityFrontier.LEVELS - 1 + (int) score;
+        }
+    },
+
+    /**
+     * URLs linked from more of the pages crawled so far are fetched first.
+     * Score is the number of links found to the URL.
+     */
+    INBOUND_LINKS {
+        @Override
+        public double initialScore () {
+
+            return 0;
+        }
+
+
+        @Override
+        public double score (double parentScore, int linkCount, double score) {
+
+            return Double.isNaN(score) ? 1 : score + 1;
+        }
+
+
+        @Override
+        public int level (double score) {
+
+            return (int) score;
+        }
+    },
+
+    /**
+     * On-line Page Importance Computation. Initial URLs start with a score of '1', and
+     * every crawled page splits its score evenly among the URLs it links to, which add
+     * it up until they get crawled. Approximates PageRank without a link graph.
+     * Levels are powers of two, so scores within a factor of two are treated as equal.
+     */
+    OPIC {
+        @Override
+        public double initialScore () {
+
+            return 1;
+        }
+
+
+        @Override
+        public double score (double parentScore, int linkCount, double score) {
+
+            double share = parentScore / Math.max(linkCount, 1);
+
+            return Double.isNaN(score) ? share : score + share;
+        }
+
+
+        @Override
+        public int level (double score) {
+
+            // Scores of '1' and above share the top level
+            return score > 0 ? PriorityFrontier.LEVELS - 1 + Math.getExponent(score) : 0;
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.rimusdesign.webcrawler.storage;
+
+
+import com.rimusdesign.webcrawler.model.Content;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Keeps page content compressed in append-only segment files, off the heap.
+ * <p>
+ * {@link #store(String)} returns a small {@link Content} handle, which loads and
+ * decompresses the data each time it's accessed, so heap use of a crawl is bounded
+ * by page metadata rather than by the total size of the site.
+ * <p>
+ * Thread safe. Compression happens on the calling thread, only appending to the
+ * segment file is serialised. Handles can no longer be loaded once the store is closed,
+ * which also deletes all segment files.
+ *
+ * @author Rimas Krivickas.
+ */
+public class ContentStore implements Closeable {
+
+
+    private static final Logger log = LoggerFactory.getLogger(ContentStore.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    // Compressors are expensive to set up, reuse one per thread
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final Path directory;
+    private final long segmentSize;
+
+    // Guarded by 'this'
+    private final List<Segment> segments = new ArrayList<>();
+    private long storedBytes;
+    private boolean isClosed;
+
+
+    /**
+     * @param parentDirectory directory to create segment files in, a new
+     *                        subdirectory is created for each store
+     * @param segmentSize     size in bytes after which a new segment file is started
+     * @throws IOException if segment directory can't be created
+     */
+    public ContentStore (@NonNull Path parentDirectory, long segmentSize) throws IOException {
+
+        if (segmentSize < 1) throw new IllegalArgumentException("Segment size must be positive");
+
+        this.directory = Files.createTempDirectory(Files.createDirectories(parentDirectory), "content-");
+        this.segmentSize = segmentSize;
+    }
+
+
+    /**
+     * @param parentDirectory directory to create segment files in
+     * @throws IOException if segment directory can't be created
+     */
+    public ContentStore (@NonNull Path parentDirectory) throws IOException {
+
+        this(parentDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+
+    /**
+     * Compresses and stores provided data.
+     *
+     * @param data data to store
+     * @return handle to load the data with
+     * @throws UncheckedIOException if data can't be written
+     */
+    public Content store (@NonNull String data) {
+
+        byte[] input = data.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(input);
+        int length = compressed.length;
+
+        Segment segment;
+        long offset;
+
+        synchronized (this) {
+
+            if (isClosed) throw new IllegalStateException("Content store has been closed");
+
+            segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+            // Start a new segment if the current one is full
+            if (segment == null || (segment.size > 0 && segment.size + length > segmentSize)) {
+                segment = openSegment(segments.size());
+                segments.add(segment);
+            }
+
+            offset = segment.size;
+
+            try {
+
+                ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                while (buffer.hasRemaining()) segment.channel.write(buffer, offset + buffer.position());
+            } catch (IOException e) {
+
+                throw new UncheckedIOException("Failed to write content to: " + segment.path, e);
+            }
+
+            segment.size += length;
+            storedBytes += length;
+        }
+
+        return new StoredContent(segment, offset, length, input.length);
+    }
+
+
+    /**
+     * @return total number of compressed bytes stored
+     */
+    public synchronized long getStoredBytes () {
+
+        return storedBytes;
+    }
+
+
+    /**
+     * Deletes all segment files. Content stored so far can no longer be loaded.
+     */
+    @Override
+    public synchronized void close () {
+
+        isClosed = true;
+
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("Failed to delete: " + segment.path);
+            }
+        }
+        segments.clear();
+
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("Failed to delete: " + directory);
+        }
+    }
+
+
+    private Segment openSegment (int index) {
+
+        Path path = directory.resolve("segment-" + index);
+
+        try {
+
+            return new Segment(path, FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        } catch (IOException e) {
+
+            throw new UncheckedIOException("Failed to create content segment: " + path, e);
+        }
+    }
+
+
+    private static byte[] compress (byte[] input) {
+
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+
+        // HTML usually compresses well, start small and grow as needed
+        byte[] output = new byte[Math.max(64, input.length / 4)];
+        int length = 0;
+
+        while (!deflater.finished()) {
+            if (length == output.length) output = Arrays.copyOf(output, output.length * 2);
+            length += deflater.deflate(output, length, output.length - length);
+        }
+
+        return Arrays.copyOf(output, length);
+    }
+
+
+    private static String load (Segment segment, long offset, int length, int uncompressedLength) {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        try {
+
+            // Positional reads don't move the channel position, so are safe to run concurrently
+            while (buffer.hasRemaining()) {
+                if (segment.channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of segment");
+                }
+            }
+        } catch (IOException e) {
+
+            throw new UncheckedIOException("Failed to read content from: " + segment.path, e);
+        }
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(buffer.array());
+
+        byte[] output = new byte[uncompressedLength];
+
+        try {
+
+            int inflated = 0;
+            while (inflated < uncompressedLength && !inflater.finished()) {
+                int count = inflater.inflate(output, inflated, uncompressedLength - inflated);
+
+                // No progress can be made, data has run out before the end of the stream
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += count;
+            }
+
+            if (inflated < uncompressedLength) {
+                throw new DataFormatException("Inflated " + inflated + " of " + uncompressedLength + " bytes");
+            }
+        } catch (DataFormatException e) {
+
+            throw new IllegalStateException("Corrupt content in: " + segment.path, e);
+        }
+
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * A segment file, along with the number of bytes written to it.
+     */
+    private static final class Segment {
+
+
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+
+
+        private Segment (Path path, FileChannel channel) {
+
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+
+    /**
+     * Handle to content stored in a segment file.
+     */
+    private static final class StoredContent implements Content {
+
+
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final int uncompressedLength;
+
+
+        private StoredContent (Segment segment, long offset, int length, int uncompressedLength) {
+
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+
+        @Override
+        public String get () {
+
+            return load(segment, offset, length, uncompressedLength);
+        }
+
+
+        @Override
+        public String toString () {
+
+            return "StoredContent(length=" + length + ", uncompressedLength=" + uncompressedLength + ")";
+        }
+    }
+
+}
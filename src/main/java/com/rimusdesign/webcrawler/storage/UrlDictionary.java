@@ -0,0 +1,346 @@
+package com.rimusdesign.webcrawler.storage;
+
+
+import com.rimusdesign.webcrawler.model.Links;
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.StaticContentType;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+
+/**
+ * Stores URLs shared by crawled pages once, so pages only hold 'int' references to them.
+ * <p>
+ * URLs are kept in a trie of segments, split at each '/' following the authority.
+ * A URL's first segment, e.g. 'http://www.example.com', is its host, which is stored
+ * only once, and so is every path prefix shared by multiple URLs, i.e. paths are
+ * front coded. Segment characters of all URLs are packed into a single array, so
+ * a URL costs a few 'int's per segment it doesn't share with previously stored URLs.
+ * <p>
+ * Any string can be stored, e.g. relative URLs of static content, those are split
+ * at every '/'. URLs are never removed, the dictionary grows with the number of
+ * distinct URLs found during the crawl, rather than with the number of links.
+ * <p>
+ * Thread safe, all access is serialised.
+ *
+ * @author Rimas Krivickas.
+ */
+public class UrlDictionary {
+
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Marks empty slots of the lookup table
+    private static final int EMPTY = -1;
+
+    // Guarded by 'this'. Segment of each node, and its parent node, '-1' for first segments
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // Guarded by 'this'. Characters of all segments, back to back
+    private char[] chars = new char[INITIAL_CAPACITY * 16];
+    private int charsSize;
+
+    // Guarded by 'this'. Open addressing table of node IDs, by parent and segment
+    private int[] table = newTable(INITIAL_CAPACITY * 2);
+
+
+    /**
+     * Stores provided URL, unless already stored.
+     *
+     * @param url value to be stored
+     *
+     * @return ID of the URL, which {@link #get(int)} returns it by
+     */
+    public synchronized int add (@NonNull String url) {
+
+        int length = url.length();
+
+        // First segment extends past '//' of the scheme, if any
+        int authority = url.indexOf("://");
+        authority = authority < 0 ? 0 : authority + 3;
+
+        int node = -1;
+        int start = 0;
+
+        do {
+
+            int end = url.indexOf('/', Math.max(start + 1, authority));
+            if (end < 0) end = length;
+
+            node = addSegment(node, url, start, end);
+            start = end;
+        } while (start < length);
+
+        return node;
+    }
+
+
+    /**
+     * @param id ID returned by {@link #add(String)}
+     *
+     * @return URL stored under provided ID
+     */
+    public synchronized String get (int id) {
+
+        if (id < 0 || id >= size) throw new IllegalArgumentException("Unknown URL ID: " + id);
+
+        int length = 0;
+        for (int node = id; node >= 0; node = parents[node]) length += lengths[node];
+
+        // Segments are appended from the last one up
+        char[] url = new char[length];
+        for (int node = id; node >= 0; node = parents[node]) {
+            length -= lengths[node];
+            System.arraycopy(chars, offsets[node], url, length, lengths[node]);
+        }
+
+        return new String(url);
+    }
+
+
+    /**
+     * @return number of distinct segments stored, which URLs share
+     */
+    public synchronized int getSegmentCount () {
+
+        return size;
+    }
+
+
+    /**
+     * @return approximate number of bytes taken by stored URLs
+     */
+    public synchronized long getFootprint () {
+
+        return (long) parents.length * Integer.BYTES * 3 + (long) table.length * Integer.BYTES + (long) chars.length * Character.BYTES;
+    }
+
+
+    /**
+     * Stores URLs of provided page, see {@link Page#setLinks(Links)}.
+     *
+     * @param page instance to store URLs of
+     *
+     * @return compact form of URLs of provided page, which loads them from this dictionary on access
+     */
+    public Links compact (@NonNull Page page) {
+
+        HashMap<StaticContentType, HashSet<String>> staticContentUrls = page.getStaticContentUrls();
+        int[][] staticContentIds = null;
+
+        if (staticContentUrls != null) {
+
+            staticContentIds = new int[StaticContentType.values().length][];
+
+            for (Map.Entry<StaticContentType, HashSet<String>> entry : staticContentUrls.entrySet()) {
+                staticContentIds[entry.getKey().ordinal()] = addAll(entry.getValue());
+            }
+        }
+
+        return new CompactLinks(addAll(page.getInternalUrls()), addAll(page.getExternalUrls()), staticContentIds);
+    }
+
+
+    /**
+     * @return IDs of provided URLs, or 'null' if there are none
+     */
+    private synchronized int[] addAll (Collection<String> urls) {
+
+        if (urls == null) return null;
+
+        int[] ids = new int[urls.size()];
+        int i = 0;
+        for (String url : urls) ids[i++] = add(url);
+
+        return ids;
+    }
+
+
+    /**
+     * @return URLs stored under provided IDs, or 'null' if IDs are 'null'
+     */
+    private synchronized HashSet<String> getAll (int[] ids) {
+
+        if (ids == null) return null;
+
+        HashSet<String> urls = new HashSet<>();
+        for (int id : ids) urls.add(get(id));
+
+        return urls;
+    }
+
+
+    /**
+     * @return ID of the node of provided segment under provided parent, added if not found
+     */
+    private int addSegment (int parent, String url, int start, int end) {
+
+        int mask = table.length - 1;
+
+        for (int i = hash(parent, url, start, end) & mask; ; i = (i + 1) & mask) {
+
+            int node = table[i];
+
+            if (node == EMPTY) {
+
+                node = newNode(parent, url, start, end);
+                table[i] = node;
+
+                // Keep the table at most half full
+                if (size * 2 > table.length) rehash();
+
+                return node;
+            }
+
+            if (parents[node] == parent && isSegment(node, url, start, end)) return node;
+        }
+    }
+
+
+    private int newNode (int parent, String url, int start, int end) {
+
+        if (size == parents.length) {
+
+            int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        int length = end - start;
+
+        if (charsSize + length > chars.length) chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsSize + length));
+
+        url.getChars(start, end, chars, charsSize);
+
+        parents[size] = parent;
+        offsets[size] = charsSize;
+        lengths[size] = length;
+        charsSize += length;
+
+        return size++;
+    }
+
+
+    private boolean isSegment (int node, String url, int start, int end) {
+
+        if (lengths[node] != end - start) return false;
+
+        int offset = offsets[node];
+        for (int i = start; i < end; i++) {
+            if (chars[offset++] != url.charAt(i)) return false;
+        }
+
+        return true;
+    }
+
+
+    private void rehash () {
+
+        table = newTable(table.length * 2);
+        int mask = table.length - 1;
+
+        for (int node = 0; node < size; node++) {
+
+            int i = hash(parents[node], chars, offsets[node], lengths[node]) & mask;
+            while (table[i] != EMPTY) i = (i + 1) & mask;
+            table[i] = node;
+        }
+    }
+
+
+    private static int hash (int parent, String url, int start, int end) {
+
+        int hash = parent;
+        for (int i = start; i < end; i++) hash = 31 * hash + url.charAt(i);
+
+        return mix(hash);
+    }
+
+
+    private static int hash (int parent, char[] chars, int offset, int length) {
+
+        int hash = parent;
+        for (int i = offset; i < offset + length; i++) hash = 31 * hash + chars[i];
+
+        return mix(hash);
+    }
+
+
+    /**
+     * Spreads bits of the hash, so similar segments don't cluster in the table.
+     */
+    private static int mix (int hash) {
+
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+
+    private static int[] newTable (int capacity) {
+
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+
+    /**
+     * {@link Links} of a single page, as IDs of URLs stored in the dictionary.
+     */
+    private final class CompactLinks implements Links {
+
+
+        private final int[] internalUrlIds;
+        private final int[] externalUrlIds;
+
+        // By ordinal of static content type, 'null' if the page had no static content map
+        private final int[][] staticContentIds;
+
+
+        private CompactLinks (int[] internalUrlIds, int[] externalUrlIds, int[][] staticContentIds) {
+
+            this.internalUrlIds = internalUrlIds;
+            this.externalUrlIds = externalUrlIds;
+            this.staticContentIds = staticContentIds;
+        }
+
+
+        @Override
+        public HashSet<String> getInternalUrls () {
+
+            return getAll(internalUrlIds);
+        }
+
+
+        @Override
+        public HashSet<String> getExternalUrls () {
+
+            return getAll(externalUrlIds);
+        }
+
+
+        @Override
+        public HashMap<StaticContentType, HashSet<String>> getStaticContentUrls () {
+
+            if (staticContentIds == null) return null;
+
+            HashMap<StaticContentType, HashSet<String>> items = new HashMap<>();
+
+            for (StaticContentType type : StaticContentType.values()) {
+                if (staticContentIds[type.ordinal()] != null) items.put(type, getAll(staticContentIds[type.ordinal()]));
+            }
+
+            return items;
+        }
+    }
+
+}
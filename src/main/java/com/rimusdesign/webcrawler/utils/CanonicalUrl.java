@@ -0,0 +1,31 @@
+package com.rimusdesign.webcrawler.utils;
+
+
+import lombok.Value;
+
+
+/**
+ * Result of {@link UrlCanonicalizer#canonicalize(String)}.
+ *
+ * @author Rimas Krivickas.
+ */
+@Value
+public class CanonicalUrl {
+
+
+    /**
+     * Lower case host name, without port and user info
+     */
+    private final String host;
+
+    /**
+     * Canonical form of the URL
+     */
+    private final String url;
+
+    /**
+     * Fingerprint of the canonical form, see {@link CommonUtils#fingerprint(String)}
+     */
+    private final long fingerprint;
+
+}
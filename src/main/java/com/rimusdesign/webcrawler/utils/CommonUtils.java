@@ -6,10 +6,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.DatatypeConverter;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 /**
@@ -22,6 +27,33 @@ public class CommonUtils {
 
     private static final Logger log = LoggerFactory.getLogger(CommonUtils.class);
 
+    // Number of leading bytes to look for charset declaration in
+    private static final int CHARSET_SNIFF_LENGTH = 1024;
+
+    private static final Pattern META_CHARSET = Pattern.compile("(?i)<meta[^>]+charset\\s*=\\s*[\"']?\\s*([\\w\\-:.]+)");
+
+    private static final byte[] UTF_8_BOM = new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    // Characters not safe to be used in URLs, see containsUnsafeChars, looked up by value
+    private static final boolean[] UNSAFE_CHARS = new boolean[128];
+
+    static {
+        for (char c : "\"<>#%{}|\\^~[]`".toCharArray()) UNSAFE_CHARS[c] = true;
+    }
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+
+            // Log error, hashing will return 'null'
+            log.error(e.getMessage());
+            return null;
+        }
+    });
+
 
     /**
      * A simple string hashing util.
@@ -32,30 +64,50 @@ public class CommonUtils {
      */
     public static String getHash (@NonNull String s) {
 
-        MessageDigest messageDigest;
+        // Digest instances are expensive to look up, but not thread safe, keep one per thread
+        MessageDigest messageDigest = SHA_256.get();
+        if (messageDigest == null) return null;
 
-        try {
+        // Ensure that encoding is consistent
+        byte[] digest = messageDigest.digest(s.getBytes(StandardCharsets.UTF_8));
 
-            // Get digest
-            messageDigest = MessageDigest.getInstance("SHA-256");
+        // Compose hash string
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX_CHARS[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_CHARS[digest[i] & 0xF];
+        }
 
-            // Pass data, also ensure that encoding is consistent
-            messageDigest.update(s.getBytes("UTF-8"));
-        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+        return new String(chars);
+    }
 
-            // Log error, and return
-            log.error(e.getMessage());
-            return null;
-        }
 
-        StringBuilder stringBuilder = new StringBuilder();
+    /**
+     * Fast, non-cryptographic 64-bit hash of a string.
+     * FNV-1a over UTF-16 chars, followed by a final avalanche mix, so all bits
+     * are usable for table indexes. Collisions are improbable, not impossible.
+     *
+     * @param s string to be hashed
+     *
+     * @return 64-bit fingerprint of string provided
+     */
+    public static long fingerprint (@NonNull String s) {
 
-        // Compose hash string
-        for (byte b : messageDigest.digest()) {
-            stringBuilder.append(String.format("%02x", b));
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
         }
 
-        return stringBuilder.toString();
+        // Final mix, from MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
     }
 
 
@@ -74,15 +126,46 @@ public class CommonUtils {
 
 
     /**
-     * Strips path, scheme (http, https) and port from URL.
+     * Strips path, query, scheme (http, https), 'www.' prefix and port from URL.
      *
      * @param url a URL
      *
-     * @return domain name of provided URL
+     * @return lower case domain name of provided URL
      */
     public static String stripDomain (@NonNull String url) {
 
-        return url.replace("http://", "").replace("https://", "").replace("www.", "").split("/")[0].split(":")[0];
+        int start = 0;
+
+        if (url.regionMatches(true, 0, "http://", 0, 7)) {
+            start = 7;
+        } else if (url.regionMatches(true, 0, "https://", 0, 8)) {
+            start = 8;
+        }
+
+        if (url.regionMatches(true, start, "www.", 0, 4)) start += 4;
+
+        int end = start;
+        char c;
+        while (end < url.length() && (c = url.charAt(end)) != '/' && c != ':' && c != '?' && c != '#') end++;
+
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * Checks whether a domain is the base domain or one of its subdomains. Matches
+     * whole labels only, so 'data.com' is not within 'a.com', which keeps sites apart.
+     *
+     * @param domain     lower case domain to be checked, as returned by {@link #stripDomain(String)}
+     * @param baseDomain lower case domain to check against, as returned by {@link #stripDomain(String)}
+     *
+     * @return 'true' if 'domain' equals 'baseDomain' or ends with '.' followed by it
+     */
+    public static boolean isWithinDomain (@NonNull String domain, @NonNull String baseDomain) {
+
+        int offset = domain.length() - baseDomain.length();
+
+        return offset == 0 ? domain.equals(baseDomain) : offset > 0 && domain.charAt(offset - 1) == '.' && domain.startsWith(baseDomain, offset);
     }
 
 
@@ -96,7 +179,8 @@ public class CommonUtils {
      */
     public static String stripBookmark (@NonNull String url) {
 
-        return url.split("#")[0];
+        int end = url.indexOf('#');
+        return end < 0 ? url : url.substring(0, end);
     }
 
 
@@ -121,10 +205,84 @@ public class CommonUtils {
      */
     public static boolean containsUnsafeChars (@NonNull String url) {
 
-        // Capture initial URL length
-        int initLen = url.length();
+        for (int i = 0; i < url.length(); i++) {
+            if (isUnsafeChar(url.charAt(i))) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * @return 'true' if provided character is not safe to be used in URLs, '#' included
+     */
+    static boolean isUnsafeChar (char c) {
+
+        return c < 128 && UNSAFE_CHARS[c];
+    }
+
+
+    /**
+     * Decodes HTML data. If charset is not provided, it is detected
+     * from byte order mark, or a 'meta' tag found at the beginning of
+     * the data, otherwise defaults to UTF-8.
+     *
+     * @param data        raw HTML data
+     * @param charsetName declared charset, can be 'null'
+     *
+     * @return decoded HTML
+     */
+    public static String decode (@NonNull byte[] data, String charsetName) {
+
+        int offset = 0;
+        Charset charset = toCharset(charsetName);
+
+        if (charset == null) {
+
+            if (startsWith(data, UTF_8_BOM)) {
+
+                // Skip byte order mark
+                offset = UTF_8_BOM.length;
+                charset = StandardCharsets.UTF_8;
+            } else {
+
+                // ISO-8859-1 maps bytes to chars one to one, good enough to find an ASCII declaration
+                String head = new String(data, 0, Math.min(data.length, CHARSET_SNIFF_LENGTH), StandardCharsets.ISO_8859_1);
+                Matcher matcher = META_CHARSET.matcher(head);
 
-        // Length will changed after stripping unsafe characters
-        return url.replaceAll("[\"<>#%{}|\\\\^~\\[\\]`]+", "").length() != initLen;
+                if (matcher.find()) charset = toCharset(matcher.group(1));
+                if (charset == null) charset = StandardCharsets.UTF_8;
+            }
+        }
+
+        return new String(data, offset, data.length - offset, charset);
+    }
+
+
+    /**
+     * @return charset by name, or 'null' if name is not provided or not supported
+     */
+    private static Charset toCharset (String charsetName) {
+
+        if (charsetName == null || charsetName.isEmpty()) return null;
+
+        try {
+
+            return Charset.isSupported(charsetName) ? Charset.forName(charsetName) : null;
+        } catch (IllegalCharsetNameException e) {
+
+            log.debug("Illegal charset name: " + charsetName);
+            return null;
+        }
+    }
+
+
+    private static boolean startsWith (byte[] data, byte[] prefix) {
+
+        if (data.length < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) return false;
+        }
+        return true;
     }
 }
@@ -0,0 +1,294 @@
+package com.rimusdesign.webcrawler.utils;
+
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+
+/**
+ * Brings absolute URLs to a canonical form, so the same resource found through
+ * differently written links is only crawled once.
+ * <p>
+ * The URL is scanned once, left to right, into a single buffer:
+ * <ul>
+ * <li>scheme and host are lower cased;</li>
+ * <li>default ports, i.e. 80 for 'http', 443 for 'https' and 21 for 'ftp', are removed;</li>
+ * <li>the fragment is removed;</li>
+ * <li>'.' and '..' path segments are resolved;</li>
+ * <li>query parameters are sorted, empty ones dropped;</li>
+ * <li>a trailing slash is removed, same as by {@link CommonUtils#cleanUpURL(String)}.</li>
+ * </ul>
+ * Percent encoding is left as is, as URLs containing unsafe characters, see
+ * {@link CommonUtils#containsUnsafeChars(String)}, are rejected anyway.
+ *
+ * @author Rimas Krivickas.
+ */
+public class UrlCanonicalizer {
+
+
+    /**
+     * @param url absolute URL
+     *
+     * @return host, canonical form and fingerprint of provided URL, or 'null' if it's not
+     * an absolute hierarchical URL, e.g. 'mailto:', or contains unsafe characters outside of its fragment
+     */
+    public static CanonicalUrl canonicalize (@NonNull String url) {
+
+        int length = url.length();
+
+        // Fragment is dropped, so only the part before it has to be safe
+        int end = length;
+        for (int i = 0; i < length; i++) {
+
+            char c = url.charAt(i);
+
+            if (c == '#') {
+                end = i;
+                break;
+            }
+            if (CommonUtils.isUnsafeChar(c)) return null;
+        }
+
+        // Scheme
+        int colon = 0;
+        while (colon < end && url.charAt(colon) != ':') {
+            if (!isSchemeChar(url.charAt(colon), colon)) return null;
+            colon++;
+        }
+        if (colon == 0 || colon == end || !url.startsWith("//", colon + 1)) return null;
+
+        StringBuilder builder = new StringBuilder(end);
+        for (int i = 0; i < colon; i++) builder.append(toLowerCase(url.charAt(i)));
+        builder.append("://");
+
+        // Authority, i.e. user info, host and port
+        int authorityStart = colon + 3;
+        int authorityEnd = authorityStart;
+        char c;
+        while (authorityEnd < end && (c = url.charAt(authorityEnd)) != '/' && c != '?') authorityEnd++;
+
+        int hostStart = authorityStart;
+        for (int i = authorityEnd - 1; i >= authorityStart; i--) {
+            if (url.charAt(i) == '@') {
+                hostStart = i + 1;
+                break;
+            }
+        }
+
+        // Port is all digits after the last ':'
+        int hostEnd = authorityEnd;
+        for (int i = authorityEnd - 1; i >= hostStart; i--) {
+
+            c = url.charAt(i);
+
+            if (c == ':') {
+                hostEnd = i;
+                break;
+            }
+            if (c < '0' || c > '9') break;
+        }
+        if (hostEnd == hostStart) return null;
+
+        builder.append(url, authorityStart, hostStart);
+        int hostOffset = builder.length();
+        for (int i = hostStart; i < hostEnd; i++) builder.append(toLowerCase(url.charAt(i)));
+        String host = builder.substring(hostOffset);
+
+        if (hostEnd + 1 < authorityEnd) {
+
+            int port = parsePort(url, hostEnd + 1, authorityEnd);
+            if (port < 0 || port != defaultPort(builder, colon)) builder.append(':').append(port < 0 ? url.substring(hostEnd + 1, authorityEnd) : Integer.toString(port));
+        }
+
+        // Path
+        int pathEnd = authorityEnd;
+        while (pathEnd < end && url.charAt(pathEnd) != '?') pathEnd++;
+        appendPath(builder, url, authorityEnd, pathEnd);
+
+        // Query
+        if (pathEnd < end) appendQuery(builder, url, pathEnd + 1, end);
+
+        // No trailing slash
+        if (builder.charAt(builder.length() - 1) == '/') builder.setLength(builder.length() - 1);
+
+        String canonical = builder.toString();
+
+        return new CanonicalUrl(host, canonical, CommonUtils.fingerprint(canonical));
+    }
+
+
+    /**
+     * Appends the path with '.' and '..' segments resolved, see RFC 3986, section 5.2.4.
+     * An empty path becomes '/'.
+     */
+    private static void appendPath (StringBuilder builder, String url, int start, int end) {
+
+        int root = builder.length();
+
+        // Each segment starts at a '/', as the path follows the authority
+        int i = start;
+        while (i < end) {
+
+            int next = url.indexOf('/', i + 1);
+            if (next < 0 || next > end) next = end;
+
+            int segmentLength = next - i - 1;
+
+            if (segmentLength == 1 && url.charAt(i + 1) == '.') {
+
+                // Current directory, a trailing one keeps the slash
+                if (next == end) builder.append('/');
+            } else if (segmentLength == 2 && url.charAt(i + 1) == '.' && url.charAt(i + 2) == '.') {
+
+                // Parent directory, can't go above the root
+                int slash = builder.lastIndexOf("/");
+                builder.setLength(slash >= root ? slash : root);
+                if (next == end) builder.append('/');
+            } else {
+
+                builder.append(url, i, next);
+            }
+
+            i = next;
+        }
+
+        if (builder.length() == root) builder.append('/');
+    }
+
+
+    /**
+     * Appends the query with parameters sorted. Parameters only get copied into an array
+     * to be sorted if they are out of order, which is rarely the case.
+     */
+    private static void appendQuery (StringBuilder builder, String url, int start, int end) {
+
+        int count = 0;
+        boolean isSorted = true;
+        int previousStart = -1;
+        int previousEnd = -1;
+
+        for (int i = start; i <= end; ) {
+
+            int next = nextParam(url, i, end);
+
+            if (next > i) {
+
+                if (previousStart >= 0 && compare(url, previousStart, previousEnd, i, next) > 0) isSorted = false;
+                previousStart = i;
+                previousEnd = next;
+                count++;
+            }
+
+            i = next + 1;
+        }
+
+        if (count == 0) return;
+
+        builder.append('?');
+
+        if (isSorted) {
+
+            boolean isFirst = true;
+
+            for (int i = start; i <= end; ) {
+
+                int next = nextParam(url, i, end);
+
+                if (next > i) {
+                    if (!isFirst) builder.append('&');
+                    builder.append(url, i, next);
+                    isFirst = false;
+                }
+
+                i = next + 1;
+            }
+        } else {
+
+            String[] params = new String[count];
+            int index = 0;
+
+            for (int i = start; i <= end; ) {
+
+                int next = nextParam(url, i, end);
+                if (next > i) params[index++] = url.substring(i, next);
+                i = next + 1;
+            }
+
+            Arrays.sort(params);
+
+            for (int i = 0; i < params.length; i++) {
+                if (i > 0) builder.append('&');
+                builder.append(params[i]);
+            }
+        }
+    }
+
+
+    /**
+     * @return position of the '&amp;' ending the parameter starting at provided position, or the end of the query
+     */
+    private static int nextParam (String url, int start, int end) {
+
+        int next = url.indexOf('&', start);
+        return next < 0 || next > end ? end : next;
+    }
+
+
+    /**
+     * Compares two regions of the URL the same way {@link String#compareTo(String)} would.
+     */
+    private static int compare (String url, int start1, int end1, int start2, int end2) {
+
+        int length = Math.min(end1 - start1, end2 - start2);
+
+        for (int i = 0; i < length; i++) {
+            int difference = url.charAt(start1 + i) - url.charAt(start2 + i);
+            if (difference != 0) return difference;
+        }
+
+        return (end1 - start1) - (end2 - start2);
+    }
+
+
+    /**
+     * @return port number, or '-1' if too long to be a port
+     */
+    private static int parsePort (String url, int start, int end) {
+
+        if (end - start > 5) return -1;
+
+        int port = 0;
+        for (int i = start; i < end; i++) port = port * 10 + url.charAt(i) - '0';
+
+        return port;
+    }
+
+
+    /**
+     * @return default port of the scheme at the start of provided buffer, or '-1' if unknown
+     */
+    private static int defaultPort (StringBuilder builder, int schemeLength) {
+
+        if (schemeLength == 4 && builder.indexOf("http") == 0) return 80;
+        if (schemeLength == 5 && builder.indexOf("https") == 0) return 443;
+        if (schemeLength == 3 && builder.indexOf("ftp") == 0) return 21;
+
+        return -1;
+    }
+
+
+    private static boolean isSchemeChar (char c, int index) {
+
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) return true;
+
+        return index > 0 && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.');
+    }
+
+
+    private static char toLowerCase (char c) {
+
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+}
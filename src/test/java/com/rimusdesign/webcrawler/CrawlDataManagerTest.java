@@ -0,0 +1,246 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
+import com.rimusdesign.webcrawler.model.PageState;
+import com.rimusdesign.webcrawler.queue.LinkedStageQueue;
+import com.rimusdesign.webcrawler.queue.PriorityFrontier;
+import com.rimusdesign.webcrawler.queue.UrlScoring;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class CrawlDataManagerTest {
+
+
+    public static final String URL = "http://localhost/";
+    public static final String SEED_1 = "http://www.my-domain.com";
+    public static final String SEED_2 = "http://other.com";
+
+
+    @Test
+    public void testCompletion () throws Exception {
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+        Repository repository = new Repository();
+
+        CrawlDataManager manager = new CrawlDataManager(repository, new SeenUrlSet(), urlQueue, parsedDataQueue);
+        manager.enqueue(URL);
+        manager.enqueue(URL + "other");
+
+        Thread thread = new Thread(manager);
+        thread.start();
+
+        // Only one of two queued pages is ready
+        parsedDataQueue.put(new Page(urlQueue.take()));
+        assertFalse("Crawl should not complete while a URL is in flight", manager.awaitCompletion(50, TimeUnit.MILLISECONDS));
+
+        parsedDataQueue.put(new Page(urlQueue.take()));
+        assertTrue("Crawl should complete once all URLs are handled", manager.awaitCompletion(5, TimeUnit.SECONDS));
+        assertTrue("Manager should be done", manager.isDone());
+
+        thread.join(5000);
+        assertFalse("Manager thread should terminate", thread.isAlive());
+        assertEquals("Both pages should be stored", 2, repository.getItems().size());
+    }
+
+
+    @Test
+    public void testInterrupt () throws Exception {
+
+        CrawlDataManager manager = new CrawlDataManager(new Repository(), new SeenUrlSet(), new LinkedStageQueue<>(), new LinkedStageQueue<>());
+        manager.enqueue(URL);
+
+        Thread thread = new Thread(manager);
+        thread.start();
+        thread.interrupt();
+
+        assertTrue("Waiting threads should be released once the manager stops", manager.awaitCompletion(5, TimeUnit.SECONDS));
+    }
+
+
+    @Test(timeout = 10000)
+    public void testPendingPageOnceTaken () throws Exception {
+
+        int numLinks = 1000;
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+        Repository repository = new Repository();
+
+        CrawlDataManager manager = new CrawlDataManager(repository, new SeenUrlSet(), urlQueue, parsedDataQueue);
+        manager.addSeed(SEED_1);
+        assertTrue("Queued URL should have no page", repository.getItems().isEmpty());
+
+        String url = manager.getFetchQueue().take();
+        assertEquals("URL taken to be fetched should have a pending page", 1, repository.count(PageState.PENDING));
+        assertEquals("Pending page should be attributed to its seed", SEED_1, repository.getItems().iterator().next().getSeed());
+
+        Thread thread = new Thread(manager);
+        thread.start();
+
+        String[] links = new String[numLinks];
+        for (int i = 0; i < numLinks; i++) links[i] = SEED_1 + "/" + i;
+        parsedDataQueue.put(parsed(url, links));
+
+        // However many URLs are waiting, only pages taken to be fetched are held
+        while (urlQueue.size() < numLinks) Thread.sleep(1);
+        assertEquals("URLs waiting to be fetched should have no pages", 1, repository.getItems().size());
+        assertEquals("Found URLs should not be pending until taken", 0, repository.count(PageState.PENDING));
+
+        manager.getFetchQueue().take();
+        assertEquals("URL taken to be fetched should have a pending page", 1, repository.count(PageState.PENDING));
+
+        thread.interrupt();
+        thread.join(5000);
+        assertFalse("Manager thread should terminate", thread.isAlive());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testSeeds () throws Exception {
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+        Repository repository = new Repository();
+        List<Seed> completedSeeds = new CopyOnWriteArrayList<>();
+
+        CrawlDataManager manager = new CrawlDataManager(repository, new SeenUrlSet(), urlQueue, parsedDataQueue,
+                Collections.emptyList(), Collections.singletonList(completedSeeds::add), true, 0, null, null, null, null,
+                PageIdStrategy.SHA_256);
+        Seed first = manager.addSeed(SEED_1);
+        Seed second = manager.addSeed(SEED_2);
+
+        Thread thread = new Thread(manager);
+        thread.start();
+
+        // First site links to another of its pages, on a subdomain, second site has a single page
+        parsedDataQueue.put(parsed(urlQueue.take(), "http://blog.my-domain.com/post"));
+        parsedDataQueue.put(parsed(urlQueue.take()));
+
+        assertTrue("Seed should complete once its own pages are handled", second.awaitCompletion(5, TimeUnit.SECONDS));
+        assertFalse("Seed should not complete while its URL is in flight", first.isDone());
+        assertFalse("Crawl should not complete while a URL is in flight", manager.isDone());
+
+        parsedDataQueue.put(parsed(urlQueue.take()));
+
+        assertTrue("Crawl should complete once all URLs are handled", manager.awaitCompletion(5, TimeUnit.SECONDS));
+        assertTrue("Seed should complete", first.isDone());
+        assertEquals("Seeds should be passed to listeners in order of completion", Arrays.asList(second, first), completedSeeds);
+        assertEquals("Pages found on the site should count towards its seed", 2, first.getPageCount());
+        assertEquals("Seed should only count pages of its site", 1, second.getPageCount());
+
+        for (Page page : repository.getItems()) {
+            assertEquals("Page should be attributed to the seed of its site: " + page.getUrl(),
+                    page.getUrl().contains("my-domain.com") ? SEED_1 : SEED_2, page.getSeed());
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void testListeners () throws Exception {
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+        Repository repository = new Repository();
+        List<Page> delivered = new CopyOnWriteArrayList<>();
+
+        // First listener always fails, which should not keep pages from the second
+        PageListener failing = page -> {
+            throw new IllegalStateException("Listener failed");
+        };
+        PageListener recording = page -> {
+            assertEquals("Page should be ready when delivered", PageState.READY, page.getState());
+            delivered.add(page);
+        };
+
+        CrawlDataManager manager = new CrawlDataManager(repository, new SeenUrlSet(), urlQueue, parsedDataQueue,
+                Arrays.asList(failing, recording), Collections.emptyList(), false, 0, null, null, null, null,
+                PageIdStrategy.SHA_256);
+        manager.addSeed(SEED_1);
+
+        Thread thread = new Thread(manager);
+        thread.start();
+
+        parsedDataQueue.put(parsed(urlQueue.take(), SEED_1 + "/a"));
+        parsedDataQueue.put(parsed(urlQueue.take()));
+
+        assertTrue("Crawl should complete despite a failing listener", manager.awaitCompletion(5, TimeUnit.SECONDS));
+
+        thread.join(5000);
+        assertFalse("Manager thread should terminate", thread.isAlive());
+
+        assertEquals("Every page should be delivered once", 2, delivered.size());
+        assertEquals("Pages should be delivered in order handled", SEED_1, delivered.get(0).getUrl());
+        assertEquals("Pages should be delivered in order handled", SEED_1 + "/a", delivered.get(1).getUrl());
+        assertTrue("Delivered pages should not be retained", repository.getItems().isEmpty());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testPageBudget () throws Exception {
+
+        PriorityFrontier urlQueue = new PriorityFrontier(UrlScoring.INBOUND_LINKS);
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+        Repository repository = new Repository();
+
+        CrawlDataManager manager = new CrawlDataManager(repository, new SeenUrlSet(), urlQueue, parsedDataQueue,
+                Collections.emptyList(), Collections.emptyList(), true, 4, null, null, null, null,
+                PageIdStrategy.SHA_256);
+        manager.addSeed(SEED_1);
+
+        Thread thread = new Thread(manager);
+        thread.start();
+
+        // Three pages found on the seed, two of them are fetched
+        parsedDataQueue.put(parsed(urlQueue.take(), SEED_1 + "/a", SEED_1 + "/b", SEED_1 + "/c"));
+        String first = urlQueue.take();
+        String second = urlQueue.take();
+
+        // Found once on each of them, so the page found twice comes before the one left from the seed, though found later
+        parsedDataQueue.put(parsed(first, SEED_1 + "/twice"));
+        parsedDataQueue.put(parsed(second, SEED_1 + "/twice", SEED_1 + "/once"));
+
+        // All are waiting once both pages have been handled, so only scores decide which comes out first
+        while (urlQueue.size() < 3) Thread.sleep(1);
+        assertEquals("URL found twice should come out first", SEED_1 + "/twice", urlQueue.take());
+        parsedDataQueue.put(parsed(SEED_1 + "/twice"));
+
+        assertTrue("Crawl should stop once the page budget is used up", manager.awaitCompletion(5, TimeUnit.SECONDS));
+
+        thread.join(5000);
+        assertFalse("Manager thread should terminate", thread.isAlive());
+
+        int numReady = 0;
+        for (Page page : repository.getItems()) {
+            if (page.getState() == PageState.READY) numReady++;
+            assertFalse("Pages past the budget should not be ready", page.getUrl().endsWith("/once"));
+        }
+        assertEquals("Only pages within the budget should be ready", 4, numReady);
+    }
+
+
+    private static Page parsed (String url, String... internalUrls) {
+
+        Page page = new Page(url);
+        page.setRawData("<html></html>");
+        page.setInternalUrls(new HashSet<>(Arrays.asList(internalUrls)));
+
+        return page;
+    }
+}
@@ -0,0 +1,179 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.checkpoint.Checkpoint;
+import com.rimusdesign.webcrawler.fetching.FetchMode;
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageIdStrategy;
+import com.rimusdesign.webcrawler.model.PageState;
+import com.rimusdesign.webcrawler.queue.StageQueueType;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Crawls sites served by a local server, which stands in as the HTTP proxy, so
+ * it gets requests for any host. Every page is a leaf, linking nowhere.
+ *
+ * @author Rimas Krivickas.
+ */
+public class CrawlerTest {
+
+
+    public static final String TEST_URL = "http://site.test/p";
+    public static final int QUEUE_CAPACITY = 4;
+
+    // Well over the capacity of the queues
+    public static final int NUM_URLS = QUEUE_CAPACITY * 10;
+
+    private HttpServer server;
+    private String previousProxyHost;
+    private String previousProxyPort;
+    private Path directory;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        server = startServer();
+
+        previousProxyHost = System.getProperty("http.proxyHost");
+        previousProxyPort = System.getProperty("http.proxyPort");
+        System.setProperty("http.proxyHost", "127.0.0.1");
+        System.setProperty("http.proxyPort", Integer.toString(server.getAddress().getPort()));
+
+        directory = Files.createTempDirectory("crawler-test");
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        restoreProperty("http.proxyHost", previousProxyHost);
+        restoreProperty("http.proxyPort", previousProxyPort);
+
+        if (server != null) server.stop(0);
+
+        File[] files = directory.toFile().listFiles();
+        if (files != null) for (File file : files) Files.delete(file.toPath());
+        Files.deleteIfExists(directory);
+    }
+
+
+    @Test(timeout = 30000)
+    public void testResumeMorePendingThanQueueCapacity () throws Exception {
+
+        Checkpoint checkpoint = new Checkpoint(directory);
+        for (int i = 0; i < NUM_URLS; i++) checkpoint.recordPending(TEST_URL + i);
+        checkpoint.close();
+
+        Crawler crawler = new Crawler(2, 1, StageQueueType.RING_BUFFER, QUEUE_CAPACITY);
+        crawler.resume(directory);
+
+        assertEquals("Every pending page should be fetched", NUM_URLS, countReady(crawler));
+    }
+
+
+    @Test(timeout = 30000)
+    public void testCrawlMoreSeedsThanQueueCapacity () throws Exception {
+
+        // With a path, as the server can't handle a request for an empty one through a proxy
+        List<String> seeds = new ArrayList<>();
+        for (int i = 0; i < NUM_URLS; i++) seeds.add("http://site" + i + ".test/index.html");
+
+        Crawler crawler = new Crawler(2, 1, StageQueueType.RING_BUFFER, QUEUE_CAPACITY);
+        crawler.crawl(seeds);
+
+        assertEquals("Every seed should be crawled", NUM_URLS, countReady(crawler));
+        for (Seed seed : crawler.getSeeds().values()) assertTrue("Seed should complete: " + seed, seed.isDone());
+    }
+
+
+    @Test(timeout = 30000)
+    public void testCrawlWithFingerprintIds () throws Exception {
+
+        List<String> seeds = new ArrayList<>();
+        for (int i = 0; i < NUM_URLS; i++) seeds.add("http://site" + i + ".test/index.html");
+
+        Crawler crawler = new Crawler(2, 1, StageQueueType.RING_BUFFER, QUEUE_CAPACITY);
+        crawler.setPageIdStrategy(PageIdStrategy.FINGERPRINT_64);
+        crawler.crawl(seeds);
+
+        // Parsed pages replace pending ones only if both got the same IDs
+        assertEquals("Every seed should be crawled", NUM_URLS, countReady(crawler));
+        assertEquals("Pending pages should be replaced by parsed ones", NUM_URLS, crawler.getPages().size());
+        for (Page page : crawler.getPages()) assertEquals("Page should have a fingerprint ID", 11, page.getId().length());
+    }
+
+
+    @Test(timeout = 30000)
+    public void testCrawlWithVirtualThreads () throws Exception {
+
+        Assume.assumeTrue("Requires Java 21 or newer", FetchMode.VIRTUAL_THREADS.isSupported());
+
+        List<String> seeds = new ArrayList<>();
+        for (int i = 0; i < NUM_URLS; i++) seeds.add("http://site" + i + ".test/index.html");
+
+        Crawler crawler = new Crawler(NUM_URLS);
+        crawler.setFetchMode(FetchMode.VIRTUAL_THREADS);
+        crawler.crawl(seeds);
+
+        assertEquals("Every seed should be crawled", NUM_URLS, countReady(crawler));
+    }
+
+
+    private static long countReady (Crawler crawler) {
+
+        return crawler.getPages().stream().filter(page -> page.getState() == PageState.READY).count();
+    }
+
+
+    /**
+     * Starts a server which serves an empty page for any host and path.
+     */
+    private static HttpServer startServer () throws IOException {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        server.createContext("/", exchange -> {
+
+            byte[] body = "<html><head><title>Page</title></head><body></body></html>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        return server;
+    }
+
+
+    private static void restoreProperty (String name, String value) {
+
+        if (value != null) {
+            System.setProperty(name, value);
+        } else {
+            System.clearProperty(name);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageState;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class RepositoryTest {
+
+
+    public static final String URL = "http://localhost";
+
+
+    @Test
+    public void testSave () throws Exception {
+
+        Repository repository = new Repository();
+
+        assertFalse("Empty repository should have no pending items", repository.hasPendingItems());
+
+        Page page = new Page(URL);
+        repository.save(page);
+
+        assertTrue("Should contain saved page", repository.contains(page.getId()));
+        assertTrue("Saved page is pending", repository.hasPendingItems());
+        assertEquals("Should contain exactly one page", 1, repository.getItems().size());
+    }
+
+
+    @Test
+    public void testStateCounts () throws Exception {
+
+        Repository repository = new Repository();
+
+        repository.save(new Page(URL));
+        repository.save(new Page(URL + "/one"));
+
+        assertEquals("Should count two pending pages", 2, repository.count(PageState.PENDING));
+
+        // Override pending page with parsed one
+        Page parsed = new Page(URL);
+        parsed.setState(PageState.READY);
+        repository.save(parsed);
+
+        assertEquals("Should count one pending page", 1, repository.count(PageState.PENDING));
+        assertEquals("Should count one ready page", 1, repository.count(PageState.READY));
+        assertEquals("Overridden page should not be duplicated", 2, repository.getItems().size());
+
+        // Mutating a stored page should not affect counts until it's saved again
+        parsed = new Page(URL + "/one");
+        repository.save(parsed);
+        parsed.setState(PageState.READY);
+
+        assertTrue("Page is still pending until saved", repository.hasPendingItems());
+
+        repository.save(parsed);
+
+        assertFalse("All pages should be ready", repository.hasPendingItems());
+        assertEquals("Should count two ready pages", 2, repository.count(PageState.READY));
+    }
+
+
+    @Test
+    public void testEvict () throws Exception {
+
+        Repository repository = new Repository();
+
+        Page page = new Page(URL);
+        page.setState(PageState.READY);
+        repository.save(page);
+        repository.evict(page.getId());
+
+        assertTrue("Should still contain evicted page", repository.contains(page.getId()));
+        assertEquals("Should still count evicted page", 1, repository.count(PageState.READY));
+        assertTrue("Evicted page should not be returned", repository.getItems().isEmpty());
+    }
+
+
+    @Test
+    public void testConcurrentSave () throws Exception {
+
+        final Repository repository = new Repository();
+        final int numThreads = 4;
+        final int numPages = 1000;
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < numThreads; t++) {
+
+            final int offset = t * numPages;
+
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < offset + numPages; i++) {
+
+                    Page page = new Page(URL + "/" + i);
+                    repository.save(page);
+
+                    page = new Page(URL + "/" + i);
+                    page.setState(PageState.READY);
+                    repository.save(page);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertFalse("All pages should be ready", repository.hasPendingItems());
+        assertEquals("Should count all pages as ready", numThreads * numPages, repository.count(PageState.READY));
+        assertEquals("Should contain all pages", numThreads * numPages, repository.getItems().size());
+    }
+}
@@ -0,0 +1,71 @@
+package com.rimusdesign.webcrawler;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class SeenUrlSetTest {
+
+
+    public static final String URL = "http://localhost/";
+
+
+    @Test
+    public void testAdd () throws Exception {
+
+        SeenUrlSet seenUrls = new SeenUrlSet();
+
+        assertTrue("New URL should be added", seenUrls.add(URL));
+        assertFalse("Seen URL should not be added again", seenUrls.add(URL));
+        assertTrue("Should contain added URL", seenUrls.contains(URL));
+        assertFalse("Should not contain URL that has not been added", seenUrls.contains(URL + "missing"));
+        assertEquals("Should contain exactly one URL", 1, seenUrls.size());
+    }
+
+
+    @Test
+    public void testAddFingerprint () throws Exception {
+
+        SeenUrlSet seenUrls = new SeenUrlSet();
+
+        assertTrue("New URL should be added", seenUrls.add(CommonUtils.fingerprint(URL)));
+        assertFalse("URL added by fingerprint should be seen", seenUrls.add(URL));
+        assertTrue("Should contain URL added by fingerprint", seenUrls.contains(URL));
+        assertTrue("Empty table slot value should still be added", seenUrls.add(0));
+        assertFalse("Empty table slot value should be seen", seenUrls.add(0));
+    }
+
+
+    @Test
+    public void testGrow () throws Exception {
+
+        testManyUrls(new SeenUrlSet(1, false));
+    }
+
+
+    @Test
+    public void testGrowWithBloomFilter () throws Exception {
+
+        testManyUrls(new SeenUrlSet(1, true));
+    }
+
+
+    private void testManyUrls (SeenUrlSet seenUrls) {
+
+        // Set has to grow many times over
+        for (int i = 0; i < 100000; i++) assertTrue("New URL should be added", seenUrls.add(URL + i));
+
+        for (int i = 0; i < 100000; i++) assertFalse("Seen URL should not be added again", seenUrls.add(URL + i));
+        for (int i = 0; i < 100000; i++) assertTrue("Should contain added URL", seenUrls.contains(URL + i));
+
+        assertEquals("Should contain every URL once", 100000, seenUrls.size());
+    }
+}
@@ -0,0 +1,123 @@
+package com.rimusdesign.webcrawler.checkpoint;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.PageState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class CheckpointTest {
+
+
+    public static final String URL = "http://localhost";
+
+    private Path directory;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        directory = Files.createTempDirectory("checkpoint-test");
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        File[] files = directory.toFile().listFiles();
+        if (files != null) for (File file : files) Files.delete(file.toPath());
+        Files.deleteIfExists(directory);
+    }
+
+
+    @Test
+    public void testRecordAndLoad () throws Exception {
+
+        assertFalse("Empty directory should have no checkpoint", Checkpoint.exists(directory));
+
+        Checkpoint checkpoint = new Checkpoint(directory);
+        checkpoint.recordPending(URL);
+        checkpoint.recordPending(URL + "/one");
+        checkpoint.recordReady(readyPage(URL));
+        checkpoint.close();
+
+        assertTrue("Checkpoint should exist", Checkpoint.exists(directory));
+
+        List<Checkpoint.Entry> entries = new ArrayList<>(Checkpoint.load(directory));
+
+        assertEquals("Should hold one entry per URL", 2, entries.size());
+        assertEquals("Should keep discovery order", URL, entries.get(0).getUrl());
+        assertEquals("Should hold latest state", PageState.READY, entries.get(0).getState());
+        assertEquals("Should hold latest state", PageState.PENDING, entries.get(1).getState());
+
+        Page restored = entries.get(0).toPage();
+        assertEquals("Should restore status code", 200, restored.getStatusCode());
+        assertEquals("Should restore MIME type", "text/html", restored.getMimeType());
+        assertEquals("Should restore title", "Title", restored.getTitle());
+    }
+
+
+    @Test
+    public void testSnapshotAndAppend () throws Exception {
+
+        // Snapshot after every two entries
+        Checkpoint checkpoint = new Checkpoint(directory, 2, 10);
+        for (int i = 0; i < 10; i++) checkpoint.recordPending(URL + "/" + i);
+        for (int i = 0; i < 5; i++) checkpoint.recordReady(readyPage(URL + "/" + i));
+        checkpoint.close();
+
+        // Resumed run appends to the same checkpoint
+        checkpoint = new Checkpoint(directory, 2, 10);
+        for (int i = 5; i < 10; i++) checkpoint.recordReady(readyPage(URL + "/" + i));
+        checkpoint.close();
+
+        List<Checkpoint.Entry> entries = new ArrayList<>(Checkpoint.load(directory));
+
+        assertEquals("Should hold one entry per URL", 10, entries.size());
+        for (Checkpoint.Entry entry : entries) assertEquals("All pages should be ready", PageState.READY, entry.getState());
+    }
+
+
+    @Test
+    public void testIncompleteEntry () throws Exception {
+
+        Checkpoint checkpoint = new Checkpoint(directory, Checkpoint.DEFAULT_SNAPSHOT_INTERVAL, 10);
+        checkpoint.recordPending(URL);
+        checkpoint.close();
+
+        // Cut short entry, as left by a crash while writing
+        try (OutputStream out = Files.newOutputStream(directory.resolve("wal-100"), StandardOpenOption.CREATE_NEW)) {
+            out.write(new byte[]{0, 0, 10, 'h', 't'});
+        }
+
+        assertEquals("Should skip incomplete entry", 1, Checkpoint.load(directory).size());
+    }
+
+
+    private static Page readyPage (String url) {
+
+        Page page = new Page(url);
+        page.setState(PageState.READY);
+        page.setStatusCode(200);
+        page.setMimeType("text/html");
+        page.setTitle("Title");
+        return page;
+    }
+}
@@ -0,0 +1,374 @@
+package com.rimusdesign.webcrawler.cluster;
+
+
+import com.rimusdesign.webcrawler.Crawler;
+import com.rimusdesign.webcrawler.model.Page;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Crawls a site of several subdomains with a cluster of nodes on localhost. A local
+ * server stands in as the HTTP proxy, so it gets requests for all subdomains.
+ *
+ * @author Rimas Krivickas.
+ */
+public class ClusterNodeTest {
+
+
+    // With a path, as the server can't handle a request for an empty one through a proxy
+    public static final String TEST_URL = "http://site.test/index.html";
+    public static final int NUM_HOSTS = 6;
+    public static final int NUM_PAGES_PER_HOST = 5;
+    public static final int NUM_NODES = 3;
+
+    // Marks lines of node JVM output listing crawled URLs, as logs go to the same output
+    public static final String URL_PREFIX = "CRAWLED ";
+
+    private HttpServer server;
+    private String previousProxyHost;
+    private String previousProxyPort;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        server = startServer();
+
+        previousProxyHost = System.getProperty("http.proxyHost");
+        previousProxyPort = System.getProperty("http.proxyPort");
+        useProxy(server.getAddress().getPort());
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        restoreProperty("http.proxyHost", previousProxyHost);
+        restoreProperty("http.proxyPort", previousProxyPort);
+
+        if (server != null) server.stop(0);
+    }
+
+
+    @Test(timeout = 60000)
+    public void testCrawl () throws Exception {
+
+        List<InetSocketAddress> nodes = freeAddresses(NUM_NODES);
+        List<ClusterNode> clusterNodes = new ArrayList<>();
+        List<Crawler> crawlers = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_NODES);
+
+        try {
+
+            // All nodes crawl the same URL at once, each on its own thread
+            List<Future<?>> crawls = new ArrayList<>();
+            for (int i = 0; i < NUM_NODES; i++) {
+
+                ClusterNode clusterNode = new ClusterNode(nodes, i);
+                Crawler crawler = new Crawler(2);
+                crawler.setClusterNode(clusterNode);
+
+                clusterNodes.add(clusterNode);
+                crawlers.add(crawler);
+                crawls.add(executor.submit(() -> {
+                    crawler.crawl(TEST_URL);
+                    return null;
+                }));
+            }
+            for (Future<?> crawl : crawls) crawl.get();
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        Set<String> urlsFound = new HashSet<>();
+        int numPages = 0;
+        long numSent = 0;
+
+        for (int i = 0; i < NUM_NODES; i++) {
+            for (Page page : crawlers.get(i).getPages()) {
+
+                assertTrue("Node should only crawl its own hosts: " + page.getUrl(), clusterNodes.get(i).isLocal(page.getUrl()));
+                urlsFound.add(page.getUrl());
+                numPages++;
+            }
+            numSent += clusterNodes.get(i).getSentCount();
+        }
+
+        assertEquals("Nodes together should crawl the whole site", expectedUrls(), urlsFound);
+        assertEquals("Each page should be crawled by one node only", urlsFound.size(), numPages);
+        assertTrue("URLs of other nodes' hosts should be forwarded", numSent > 0);
+    }
+
+
+    @Test(timeout = 10000)
+    public void testForwardLongUrl () throws Exception {
+
+        List<InetSocketAddress> nodes = freeAddresses(2);
+        ClusterNode sender = new ClusterNode(nodes, 0);
+        ClusterNode owner = new ClusterNode(nodes, 1);
+
+        // Host owned by the other node
+        String host = null;
+        for (int i = 0; host == null; i++) if (!sender.isLocal("http://h" + i + ".test/")) host = "http://h" + i + ".test/";
+
+        // Longer than a string written with 'writeUTF' can be
+        StringBuilder longUrl = new StringBuilder(host);
+        while (longUrl.length() <= 70000) longUrl.append("abcdefghij");
+
+        List<String> offered = new CopyOnWriteArrayList<>();
+
+        try {
+
+            sender.forward(longUrl.toString());
+            sender.forward(host + "short");
+
+            sender.start(new RecordingCrawl(new ArrayList<>()));
+            owner.start(new RecordingCrawl(offered));
+
+            while (offered.size() < 2) Thread.sleep(10);
+        } finally {
+
+            sender.close();
+            owner.close();
+        }
+
+        assertEquals("Long URL should be forwarded intact", longUrl.toString(), offered.get(0));
+        assertEquals("URLs after a long one should still be forwarded", host + "short", offered.get(1));
+    }
+
+
+    @Test(timeout = 60000)
+    public void testCrawlAcrossJvms () throws Exception {
+
+        List<InetSocketAddress> nodes = freeAddresses(NUM_NODES);
+
+        StringBuilder ports = new StringBuilder();
+        for (InetSocketAddress node : nodes) ports.append(ports.length() > 0 ? "," : "").append(node.getPort());
+
+        // First node runs here, the rest in JVMs of their own, which print URLs they crawl
+        List<Process> processes = new ArrayList<>();
+        for (int i = 1; i < NUM_NODES; i++) {
+            processes.add(new ProcessBuilder(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                    "-cp", System.getProperty("java.class.path"),
+                    ClusterNodeTest.class.getName(),
+                    Integer.toString(server.getAddress().getPort()), Integer.toString(i), ports.toString()
+            ).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+        }
+
+        Set<String> urlsFound = new HashSet<>();
+        int numPages = 0;
+
+        try {
+
+            for (String url : crawl(nodes, 0)) {
+                urlsFound.add(url);
+                numPages++;
+            }
+
+            for (Process process : processes) {
+
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.startsWith(URL_PREFIX)) continue;
+                        urlsFound.add(line.substring(URL_PREFIX.length()));
+                        numPages++;
+                    }
+                }
+
+                assertTrue("Node JVM should exit", process.waitFor(30, TimeUnit.SECONDS));
+                assertEquals("Node JVM should crawl successfully", 0, process.exitValue());
+            }
+        } finally {
+
+            for (Process process : processes) process.destroy();
+        }
+
+        assertEquals("Nodes together should crawl the whole site", expectedUrls(), urlsFound);
+        assertEquals("Each page should be crawled by one node only", urlsFound.size(), numPages);
+    }
+
+
+    /**
+     * Runs a single node in a JVM of its own, printing URLs of crawled pages.
+     *
+     * @param args proxy port, node index, and comma separated ports of all nodes
+     */
+    public static void main (String[] args) throws Exception {
+
+        useProxy(Integer.parseInt(args[0]));
+
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        for (String port : args[2].split(",")) nodes.add(new InetSocketAddress("127.0.0.1", Integer.parseInt(port)));
+
+        for (String url : crawl(nodes, Integer.parseInt(args[1]))) System.out.println(URL_PREFIX + url);
+    }
+
+
+    private static List<String> crawl (List<InetSocketAddress> nodes, int localIndex) throws Exception {
+
+        ClusterNode clusterNode = new ClusterNode(nodes, localIndex);
+        Crawler crawler = new Crawler(2);
+        crawler.setClusterNode(clusterNode);
+
+        crawler.crawl(TEST_URL);
+
+        List<String> urls = new ArrayList<>();
+        for (Page page : crawler.getPages()) {
+            assertTrue("Node should only crawl its own hosts: " + page.getUrl(), clusterNode.isLocal(page.getUrl()));
+            urls.add(page.getUrl());
+        }
+
+        return urls;
+    }
+
+
+    /**
+     * Starts a server which serves the site for any host. The index page links to the first page
+     * of every subdomain, and pages of each subdomain link to the next page of the same subdomain.
+     */
+    private static HttpServer startServer () throws IOException {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        server.createContext("/", exchange -> {
+
+            String host = exchange.getRequestHeaders().getFirst("Host");
+            String path = exchange.getRequestURI().getPath();
+
+            StringBuilder html = new StringBuilder("<html><head><title>").append(host).append(path).append("</title></head><body>");
+
+            if (host.equals("site.test")) {
+
+                for (int i = 0; i < NUM_HOSTS; i++) html.append("<a href=\"http://h").append(i).append(".site.test/p0\">Host</a>");
+            } else {
+
+                int page = Integer.parseInt(path.substring(2));
+                if (page + 1 < NUM_PAGES_PER_HOST) html.append("<a href=\"/p").append(page + 1).append("\">Next</a>");
+            }
+
+            byte[] body = html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        return server;
+    }
+
+
+    private static Set<String> expectedUrls () {
+
+        Set<String> urls = new HashSet<>();
+        urls.add(TEST_URL);
+        for (int host = 0; host < NUM_HOSTS; host++) {
+            for (int page = 0; page < NUM_PAGES_PER_HOST; page++) urls.add("http://h" + host + ".site.test/p" + page);
+        }
+
+        return urls;
+    }
+
+
+    private static List<InetSocketAddress> freeAddresses (int count) throws IOException {
+
+        // Sockets are kept open until all ports are picked, so no port is picked twice
+        List<ServerSocket> sockets = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocket socket = new ServerSocket(0);
+                sockets.add(socket);
+                addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+            }
+        } finally {
+            for (ServerSocket socket : sockets) socket.close();
+        }
+
+        return addresses;
+    }
+
+
+    private static void useProxy (int port) {
+
+        System.setProperty("http.proxyHost", "127.0.0.1");
+        System.setProperty("http.proxyPort", Integer.toString(port));
+    }
+
+
+    private static void restoreProperty (String key, String value) {
+
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+
+
+    /**
+     * Local crawl which only records URLs offered to it, and is always idle.
+     */
+    private static final class RecordingCrawl implements LocalCrawl {
+
+
+        private final List<String> offered;
+
+
+        private RecordingCrawl (List<String> offered) {
+
+            this.offered = offered;
+        }
+
+
+        @Override
+        public void offer (String url) {
+
+            offered.add(url);
+        }
+
+
+        @Override
+        public boolean isIdle () {
+
+            return true;
+        }
+
+
+        @Override
+        public void complete () {
+
+        }
+    }
+}
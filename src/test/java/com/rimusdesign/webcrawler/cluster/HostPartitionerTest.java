@@ -0,0 +1,92 @@
+package com.rimusdesign.webcrawler.cluster;
+
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class HostPartitionerTest {
+
+
+    public static final List<String> NODES = Arrays.asList("10.0.0.1:7000", "10.0.0.2:7000", "10.0.0.3:7000");
+    public static final int NUM_HOSTS = 30000;
+
+
+    @Test
+    public void testOwnerOf () throws Exception {
+
+        HostPartitioner partitioner = new HostPartitioner(NODES);
+        HostPartitioner samePartitioner = new HostPartitioner(NODES);
+
+        for (int i = 0; i < 100; i++) {
+            String url = "http://host" + i + ".com/page";
+            assertEquals("Every node should compute the same owner", partitioner.ownerOf(url), samePartitioner.ownerOf(url));
+        }
+
+        int owner = partitioner.ownerOf("http://www.my-domain.com/items");
+        assertEquals("Pages of the same host should have the same owner", owner, partitioner.ownerOf("http://www.my-domain.com/other?a=1"));
+        assertEquals("Host with and without 'www.' should have the same owner", owner, partitioner.ownerOf("https://my-domain.com"));
+        assertEquals("Host on any port should have the same owner", owner, partitioner.ownerOf("http://my-domain.com:8080/items"));
+    }
+
+
+    @Test
+    public void testBalance () throws Exception {
+
+        HostPartitioner partitioner = new HostPartitioner(NODES);
+
+        int[] counts = new int[NODES.size()];
+        for (int i = 0; i < NUM_HOSTS; i++) counts[partitioner.ownerOf("http://host" + i + ".com")]++;
+
+        for (int count : counts) {
+            assertTrue("Hosts should be spread evenly, got: " + Arrays.toString(counts), Math.abs(count - NUM_HOSTS / NODES.size()) < NUM_HOSTS / 10);
+        }
+    }
+
+
+    @Test
+    public void testAddNode () throws Exception {
+
+        HostPartitioner partitioner = new HostPartitioner(NODES);
+        HostPartitioner grownPartitioner = new HostPartitioner(Arrays.asList("10.0.0.1:7000", "10.0.0.2:7000", "10.0.0.3:7000", "10.0.0.4:7000"));
+
+        int moved = 0;
+        for (int i = 0; i < NUM_HOSTS; i++) {
+
+            String url = "http://host" + i + ".com";
+            int owner = grownPartitioner.ownerOf(url);
+
+            if (owner != partitioner.ownerOf(url)) {
+                assertEquals("Hosts should only move to the new node", 3, owner);
+                moved++;
+            }
+        }
+
+        assertTrue("About a quarter of hosts should move, moved: " + moved, Math.abs(moved - NUM_HOSTS / 4) < NUM_HOSTS / 10);
+    }
+
+
+    @Test
+    public void testSingleNode () throws Exception {
+
+        HostPartitioner partitioner = new HostPartitioner(Arrays.asList("localhost:7000"));
+
+        for (int i = 0; i < 100; i++) assertEquals("Single node should own all hosts", 0, partitioner.ownerOf("http://host" + i + ".com"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoNodes () throws Exception {
+
+        new HostPartitioner(Collections.emptyList());
+    }
+}
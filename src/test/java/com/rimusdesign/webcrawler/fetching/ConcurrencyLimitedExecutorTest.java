@@ -0,0 +1,58 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class ConcurrencyLimitedExecutorTest {
+
+
+    @Test(timeout = 10000)
+    public void testLimit () throws Exception {
+
+        // Thread per task, like a virtual thread executor
+        ExecutorService executor = new ConcurrencyLimitedExecutor(Executors.newCachedThreadPool(), 3);
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            executor.execute(() -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        executor.shutdown();
+
+        assertEquals("At most three tasks should run at the same time", 3, maxActive.get());
+        assertTrue("Executor should terminate after shut down", executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void testPlatformThreadsSupported () throws Exception {
+
+        assertTrue("Thread pool mode should be supported on any JVM", FetchMode.PLATFORM_THREADS.isSupported());
+    }
+}
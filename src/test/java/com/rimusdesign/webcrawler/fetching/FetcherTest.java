@@ -0,0 +1,284 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.DiskBackedStageQueue;
+import com.rimusdesign.webcrawler.queue.LinkedStageQueue;
+import com.rimusdesign.webcrawler.queue.RingBufferStageQueue;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class FetcherTest {
+
+
+    public static final String HTML = "<html><head><title>Test</title></head></html>";
+    public static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private AtomicInteger numRequests;
+    private AtomicInteger numNotModified;
+    private String baseUrl;
+    private Path directory;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        numRequests = new AtomicInteger();
+        numNotModified = new AtomicInteger();
+
+        server.createContext("/", exchange -> {
+            numRequests.incrementAndGet();
+            byte[] body = HTML.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/cached.html", exchange -> {
+
+            // Body is only sent to clients which don't have the current version
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                numNotModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = HTML.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        directory = Files.createTempDirectory("fetcher-test");
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        if (server != null) server.stop(0);
+        delete(directory.toFile());
+    }
+
+
+    @Test(timeout = 30000)
+    public void testFrontierStaysOnDisk () throws Exception {
+
+        int numUrls = 2000;
+        int numFetched = 100;
+        int maxPendingUrls = 2;
+
+        DiskBackedStageQueue urlQueue = new DiskBackedStageQueue(directory, 16);
+        LinkedStageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+        for (int i = 0; i < numUrls; i++) urlQueue.put(baseUrl + "/p" + i);
+
+        // A single connection to the only host, so every URL taken has to wait for it
+        Fetcher fetcher = new Fetcher(2, FetchMode.PLATFORM_THREADS, FetchEngine.BLOCKING, HttpVersion.HTTP_2, 0, 1, null, null,
+                maxPendingUrls, urlQueue, fetchedDataQueue);
+        Thread thread = new Thread(fetcher);
+        thread.start();
+
+        int maxPendingCount = 0;
+        int numLeft;
+
+        try {
+
+            for (int i = 0; i < numFetched; i++) {
+                assertEquals("Page should be fetched", 200, fetchedDataQueue.take().getStatusCode());
+                maxPendingCount = Math.max(maxPendingCount, fetcher.getPendingCount());
+            }
+
+            numLeft = urlQueue.size();
+        } finally {
+
+            thread.interrupt();
+            thread.join();
+            urlQueue.close();
+        }
+
+        assertTrue("URLs waiting for their host should be bounded, was: " + maxPendingCount,
+                maxPendingCount <= maxPendingUrls * (1 + Fetcher.PARKED_URLS_PER_PENDING_URL));
+        assertTrue("URLs not yet fetched should be left in the frontier, left: " + numLeft, numLeft > numUrls - numFetched * 2);
+    }
+
+
+    @Test(timeout = 30000)
+    public void testBusyHostDoesNotHoldUpOthers () throws Exception {
+
+        long delayMillis = 500;
+        int numUrlsPerHost = 5;
+
+        // Two names of the same server are two hosts, the first one's URLs come first
+        String otherUrl = "http://localhost:" + server.getAddress().getPort();
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+        for (int i = 0; i < numUrlsPerHost; i++) urlQueue.put(baseUrl + "/p" + i);
+        for (int i = 0; i < numUrlsPerHost; i++) urlQueue.put(otherUrl + "/p" + i);
+
+        Fetcher fetcher = new Fetcher(2, FetchMode.PLATFORM_THREADS, FetchEngine.BLOCKING, HttpVersion.HTTP_2, delayMillis, 1, null, null,
+                2, urlQueue, fetchedDataQueue);
+        Thread thread = new Thread(fetcher);
+
+        long startedAt = System.nanoTime();
+        thread.start();
+
+        long elapsedMillis;
+
+        try {
+
+            // First host's URLs wait out the delay one by one, while the other host is free
+            while (!fetchedDataQueue.take().getUrl().startsWith(otherUrl)) {}
+            elapsedMillis = (System.nanoTime() - startedAt) / 1000000;
+        } finally {
+
+            thread.interrupt();
+            thread.join();
+        }
+
+        assertTrue("Other host should not wait for the busy one, took: " + elapsedMillis + "ms", elapsedMillis < delayMillis * 4 / 5);
+    }
+
+
+    @Test(timeout = 30000)
+    public void testStopWithOutputQueueFull () throws Exception {
+
+        int numUrls = 50;
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        RingBufferStageQueue<TransientPage> fetchedDataQueue = new RingBufferStageQueue<>(1);
+        for (int i = 0; i < numUrls; i++) urlQueue.put(baseUrl + "/p" + i);
+
+        // Takes every URL at once, as it would from an unbounded frontier in memory
+        Fetcher fetcher = new Fetcher(4, urlQueue, fetchedDataQueue);
+        Thread thread = new Thread(fetcher);
+        thread.start();
+
+        // Nothing takes fetched pages, as if parsers have stopped
+        while (fetchedDataQueue.size() == 0) Thread.sleep(10);
+
+        thread.interrupt();
+        thread.join(10000);
+        assertFalse("Fetcher should stop, even with fetchers waiting for space in the output queue", thread.isAlive());
+
+        int numMade = numRequests.get();
+        Thread.sleep(500);
+
+        assertEquals("No requests should be made once the fetcher has stopped", numMade, numRequests.get());
+        assertTrue("Requests not yet started should be dropped, made: " + numMade, numMade < numUrls);
+        assertEquals("No fetcher threads should be left running", 0, countThreadsRunning(FetcherRunnable.class));
+    }
+
+
+    @Test(timeout = 30000)
+    public void testFailureForwarded () throws Exception {
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+
+        // Scheme a request can't even be made for
+        urlQueue.put("unknown://host/page");
+        urlQueue.put(baseUrl + "/page");
+
+        Thread thread = new Thread(new Fetcher(2, urlQueue, fetchedDataQueue));
+        thread.start();
+
+        try {
+
+            Map<String, TransientPage> pages = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                TransientPage page = fetchedDataQueue.take();
+                pages.put(page.getUrl(), page);
+            }
+
+            TransientPage failed = pages.get("unknown://host/page");
+            assertEquals("URL which failed to be fetched should be forwarded with no status code", 0, failed.getStatusCode());
+            assertNull("URL which failed to be fetched should have no body", failed.getBody());
+            assertEquals("Other URLs should still be fetched", 200, pages.get(baseUrl + "/page").getStatusCode());
+        } finally {
+
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void testNotModified () throws Exception {
+
+        ResponseCache responseCache = new ResponseCache(directory.resolve("cache"));
+        LinkedStageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+
+        new FetcherRunnable(baseUrl + "/cached.html", responseCache, null, fetchedDataQueue).run();
+        assertEquals("Page should be fetched", 200, fetchedDataQueue.take().getStatusCode());
+        assertEquals("First request should not be conditional", 0, numNotModified.get());
+
+        // Same page again, which hasn't changed since
+        new FetcherRunnable(baseUrl + "/cached.html", responseCache, null, fetchedDataQueue).run();
+        TransientPage page = fetchedDataQueue.take();
+
+        assertEquals("Second request should be answered with '304 Not Modified'", 1, numNotModified.get());
+        assertEquals("Unchanged page should be reported as fetched", 200, page.getStatusCode());
+        assertEquals("MIME type should be reused", "text/html; charset=UTF-8", page.getMimeType());
+        assertEquals("Charset should be reused", "UTF-8", page.getCharset());
+        assertArrayEquals("Cached body should be reused", HTML.getBytes(StandardCharsets.UTF_8), page.getBody());
+    }
+
+
+    private static int countThreadsRunning (Class<?> type) {
+
+        int count = 0;
+
+        for (StackTraceElement[] stackTrace : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement element : stackTrace) {
+                if (element.getClassName().equals(type.getName())) {
+                    count++;
+                    break;
+                }
+            }
+        }
+
+        return count;
+    }
+
+
+    private static void delete (File file) {
+
+        File[] files = file.listFiles();
+        if (files != null) for (File child : files) delete(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,146 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class HostSchedulerTest {
+
+
+    public static final String HOST_A = "http://a.localhost";
+    public static final String HOST_B = "http://b.localhost";
+
+
+    @Test(timeout = 10000)
+    public void testMinDelay () throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HostScheduler scheduler = new HostScheduler(executor, 100, 4);
+
+        final List<Long> startTimes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch latch = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(HOST_A + "/" + i, () -> {
+                startTimes.add(System.nanoTime());
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        scheduler.shutdown();
+        executor.shutdown();
+
+        Collections.sort(startTimes);
+        for (int i = 1; i < startTimes.size(); i++) {
+            assertTrue("Requests to the same host should be started at least the delay apart",
+                    startTimes.get(i) - startTimes.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void testMinDelayWithPoolSaturated () throws Exception {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HostScheduler scheduler = new HostScheduler(executor, 200, 2);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<Long> startTimes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        // Host B takes the only thread, so requests to host A are passed on, but don't start
+        scheduler.submit(HOST_B + "/one", () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(HOST_A + "/" + i, () -> {
+                startTimes.add(System.nanoTime());
+                latch.countDown();
+            });
+        }
+
+        // Longer than the delay, which must not pass while requests are waiting for a thread
+        Thread.sleep(500);
+        blocker.countDown();
+
+        latch.await();
+        scheduler.shutdown();
+        executor.shutdown();
+
+        assertTrue("Requests to the same host should be started at least the delay apart, even after waiting for a thread",
+                startTimes.get(1) - startTimes.get(0) >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+
+    @Test(timeout = 10000)
+    public void testMaxConnections () throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        HostScheduler scheduler = new HostScheduler(executor, 0, 2);
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(HOST_A + "/" + i, () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        scheduler.shutdown();
+        executor.shutdown();
+
+        assertEquals("At most two requests should run against the host at the same time", 2, maxActive.get());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testOtherHostsNotDelayed () throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HostScheduler scheduler = new HostScheduler(executor, 5000, 1);
+
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        // Second request to host A has to wait, host B should not
+        scheduler.submit(HOST_A + "/one", latch::countDown);
+        scheduler.submit(HOST_A + "/two", latch::countDown);
+        scheduler.submit(HOST_B + "/one", latch::countDown);
+
+        assertTrue("Waiting host should not hold up other hosts", latch.await(1, TimeUnit.SECONDS));
+        assertEquals("One request should still be waiting", 1, scheduler.getPendingCount());
+
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+}
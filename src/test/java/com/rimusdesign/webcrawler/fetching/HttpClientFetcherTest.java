@@ -0,0 +1,236 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.LinkedStageQueue;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class HttpClientFetcherTest {
+
+
+    public static final String HTML = "<html><head><title>Test</title></head></html>";
+    public static final String ETAG = "\"v1\"";
+    public static final long LATENCY_MILLIS = 200;
+
+    private HttpServer server;
+    private Set<Integer> clientPorts;
+    private AtomicInteger numNotModified;
+    private String baseUrl;
+    private LinkedStageQueue<TransientPage> fetchedDataQueue;
+    private HttpClientFetcher fetcher;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        Assume.assumeTrue("Requires Java 11 or newer", HttpClientFetcher.isSupported());
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        clientPorts = Collections.synchronizedSet(new HashSet<>());
+        numNotModified = new AtomicInteger();
+
+        server.createContext("/page.html", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = HTML.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/cached.html", exchange -> {
+
+            // Body is only sent to clients which don't have the current version
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                numNotModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = HTML.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/image.png", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, 4);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(new byte[4]);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        fetchedDataQueue = new LinkedStageQueue<>();
+        fetcher = new HttpClientFetcher(100, HttpVersion.HTTP_2, null, null, fetchedDataQueue);
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        if (fetcher != null) fetcher.close();
+        if (server != null) server.stop(0);
+    }
+
+
+    @Test(timeout = 10000)
+    public void testFetch () throws Exception {
+
+        Map<String, TransientPage> pages = fetchAll("/page.html", "/missing", "/image.png");
+
+        TransientPage page = pages.get(baseUrl + "/page.html");
+        assertEquals("HTML page should be fetched", 200, page.getStatusCode());
+        assertEquals("MIME type should be set", "text/html; charset=UTF-8", page.getMimeType());
+        assertEquals("Charset should be set", "UTF-8", page.getCharset());
+        assertArrayEquals("Body should be fetched", HTML.getBytes(StandardCharsets.UTF_8), page.getBody());
+
+        TransientPage missing = pages.get(baseUrl + "/missing");
+        assertEquals("Missing page should keep its status code", 404, missing.getStatusCode());
+        assertNull("Missing page should have no body", missing.getBody());
+
+        TransientPage image = pages.get(baseUrl + "/image.png");
+        assertEquals("Non HTML resource should have no status code", 0, image.getStatusCode());
+        assertNull("Non HTML resource should have no MIME type", image.getMimeType());
+        assertNull("Non HTML resource should have no body", image.getBody());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testConnectionReuse () throws Exception {
+
+        fetcher.close();
+        fetcher = new HttpClientFetcher(100, HttpVersion.HTTP_1_1, null, null, fetchedDataQueue);
+
+        for (int i = 0; i < 10; i++) {
+            fetcher.fetchAndWait(baseUrl + "/page.html");
+            assertEquals("Page should be fetched", 200, fetchedDataQueue.take().getStatusCode());
+        }
+
+        assertEquals("Consecutive requests should reuse the same connection", 1, clientPorts.size());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testNotModified () throws Exception {
+
+        Path directory = Files.createTempDirectory("http-client-fetcher-test");
+
+        try {
+
+            fetcher.close();
+            fetcher = new HttpClientFetcher(100, HttpVersion.HTTP_2, new ResponseCache(directory), null, fetchedDataQueue);
+
+            fetcher.fetchAndWait(baseUrl + "/cached.html");
+            assertEquals("Page should be fetched", 200, fetchedDataQueue.take().getStatusCode());
+            assertEquals("First request should not be conditional", 0, numNotModified.get());
+
+            // Same page again, which hasn't changed since
+            fetcher.fetchAndWait(baseUrl + "/cached.html");
+            TransientPage page = fetchedDataQueue.take();
+
+            assertEquals("Second request should be answered with '304 Not Modified'", 1, numNotModified.get());
+            assertEquals("Unchanged page should be reported as fetched", 200, page.getStatusCode());
+            assertEquals("MIME type should be reused", "text/html; charset=UTF-8", page.getMimeType());
+            assertEquals("Charset should be reused", "UTF-8", page.getCharset());
+            assertArrayEquals("Cached body should be reused", HTML.getBytes(StandardCharsets.UTF_8), page.getBody());
+        } finally {
+
+            delete(directory.toFile());
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void testMalformedUrl () throws Exception {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        fetcher.fetch("http://bad host/", done::countDown);
+
+        assertTrue("Callback should run even if request can't be started", done.await(5, TimeUnit.SECONDS));
+        assertEquals("Failed fetch should still be forwarded", 0, fetchedDataQueue.take().getStatusCode());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testRequestsInFlight () throws Exception {
+
+        int numRequests = 50;
+        String[] paths = new String[numRequests];
+        for (int i = 0; i < numRequests; i++) paths[i] = "/slow?" + i;
+
+        long startedAt = System.nanoTime();
+        fetchAll(paths);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertTrue("Slow requests should overlap, took: " + elapsedMillis + "ms", elapsedMillis < LATENCY_MILLIS * numRequests / 5);
+    }
+
+
+    private Map<String, TransientPage> fetchAll (String... paths) throws InterruptedException {
+
+        for (String path : paths) fetcher.fetch(baseUrl + path, () -> {});
+
+        Map<String, TransientPage> pages = new HashMap<>();
+        for (int i = 0; i < paths.length; i++) {
+            TransientPage page = fetchedDataQueue.take();
+            pages.put(page.getUrl(), page);
+        }
+
+        assertEquals("Every fetch should be forwarded once", paths.length, pages.size());
+        return pages;
+    }
+
+
+    private static void delete (File file) {
+
+        File[] files = file.listFiles();
+        if (files != null) for (File child : files) delete(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,95 @@
+package com.rimusdesign.webcrawler.fetching;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class ResponseCacheTest {
+
+
+    public static final String URL = "http://localhost/index.html";
+    public static final byte[] BODY = "<html><body>Hello</body></html>".getBytes(StandardCharsets.UTF_8);
+
+    private Path directory;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        directory = Files.createTempDirectory("response-cache-test");
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        delete(directory.toFile());
+    }
+
+
+    @Test
+    public void testPutAndGet () throws Exception {
+
+        ResponseCache cache = new ResponseCache(directory);
+
+        assertNull("Should return 'null' for uncached URL", cache.get(URL));
+
+        cache.put(URL, new CachedResponse("text/html", "UTF-8", "\"abc\"", null, BODY));
+
+        CachedResponse cached = cache.get(URL);
+        assertEquals("Should return cached MIME type", "text/html", cached.getMimeType());
+        assertEquals("Should return cached charset", "UTF-8", cached.getCharset());
+        assertEquals("Should return cached ETag", "\"abc\"", cached.getEtag());
+        assertNull("Should return missing header as 'null'", cached.getLastModified());
+        assertArrayEquals("Should return cached body", BODY, cached.getBody());
+
+        // Persists between instances
+        assertEquals("Should return response cached by another instance", "\"abc\"", new ResponseCache(directory).get(URL).getEtag());
+    }
+
+
+    @Test
+    public void testReplace () throws Exception {
+
+        ResponseCache cache = new ResponseCache(directory);
+
+        cache.put(URL, new CachedResponse("text/html", null, "\"abc\"", null, BODY));
+        cache.put(URL, new CachedResponse("text/html", null, null, "Wed, 21 Oct 2015 07:28:00 GMT", BODY));
+
+        assertNull("Should replace cached response", cache.get(URL).getEtag());
+        assertEquals("Should replace cached response", "Wed, 21 Oct 2015 07:28:00 GMT", cache.get(URL).getLastModified());
+    }
+
+
+    @Test
+    public void testNotRevalidatable () throws Exception {
+
+        ResponseCache cache = new ResponseCache(directory);
+
+        cache.put(URL, new CachedResponse("text/html", null, null, null, BODY));
+
+        assertNull("Should not cache response without validators", cache.get(URL));
+    }
+
+
+    private static void delete (File file) {
+
+        File[] files = file.listFiles();
+        if (files != null) for (File child : files) delete(child);
+        file.delete();
+    }
+}
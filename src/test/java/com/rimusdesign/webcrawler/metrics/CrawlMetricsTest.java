@@ -0,0 +1,74 @@
+package com.rimusdesign.webcrawler.metrics;
+
+
+import com.rimusdesign.webcrawler.queue.LinkedStageQueue;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class CrawlMetricsTest {
+
+
+    @Test
+    public void testRecording () throws Exception {
+
+        LinkedStageQueue<String> urlQueue = new LinkedStageQueue<>();
+        urlQueue.put("http://localhost/");
+
+        CrawlMetrics metrics = new CrawlMetrics(urlQueue, new LinkedStageQueue<>(), new LinkedStageQueue<>());
+
+        metrics.recordFetch(2000000, 100);
+        metrics.recordFetch(4000000, 300);
+        metrics.recordError(404);
+        metrics.recordError(404);
+        metrics.recordError(CrawlMetrics.NO_RESPONSE);
+        metrics.recordParse(1000000);
+        metrics.recordManage(1000);
+
+        assertEquals("URL queue depth should match", 1, metrics.getUrlQueueDepth());
+        assertEquals("Fetched data queue should be empty", 0, metrics.getFetchedDataQueueDepth());
+        assertEquals("Pages fetched should match", 2, metrics.getPagesFetched());
+        assertEquals("Bytes fetched should match", 400, metrics.getBytesFetched());
+        assertEquals("Pages parsed should match", 1, metrics.getPagesParsed());
+        assertEquals("Pages completed should match", 1, metrics.getPagesCompleted());
+        assertEquals("Mean fetch latency should match", 3, metrics.getFetchLatencyMeanMillis(), 0.0001);
+        assertTrue("Throughput should be positive", metrics.getBytesPerSecond() > 0);
+
+        Map<Integer, Long> errors = metrics.getErrorCounts();
+        assertEquals("Errors should be counted by status", 2L, (long) errors.get(404));
+        assertEquals("Errors without response should be counted", 1L, (long) errors.get(CrawlMetrics.NO_RESPONSE));
+    }
+
+
+    @Test
+    public void testJmx () throws Exception {
+
+        CrawlMetrics metrics = new CrawlMetrics(new LinkedStageQueue<>(), new LinkedStageQueue<>(), new LinkedStageQueue<>());
+        metrics.recordFetch(1000, 42);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CrawlMetrics.JMX_DOMAIN + ":type=CrawlMetrics,name=" + ObjectName.quote("test"));
+
+        metrics.register("test");
+
+        try {
+            assertTrue("Metrics should be registered", server.isRegistered(name));
+            assertEquals("Attribute should be readable", 42L, server.getAttribute(name, "BytesFetched"));
+        } finally {
+            metrics.unregister();
+        }
+
+        assertFalse("Metrics should be unregistered", server.isRegistered(name));
+    }
+}
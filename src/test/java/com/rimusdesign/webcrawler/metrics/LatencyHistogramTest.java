@@ -0,0 +1,85 @@
+package com.rimusdesign.webcrawler.metrics;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class LatencyHistogramTest {
+
+
+    @Test
+    public void testEmpty () throws Exception {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals("Count should be zero", 0, histogram.getCount());
+        assertEquals("Mean should be zero", 0, histogram.getMean(), 0);
+        assertEquals("Percentile should be zero", 0, histogram.getPercentile(99));
+    }
+
+
+    @Test
+    public void testBuckets () throws Exception {
+
+        // Every value has to fall within the bounds of its bucket, and buckets must not overlap
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket <= LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+
+            long upperBound = LatencyHistogram.upperBoundOf(bucket);
+
+            assertTrue("Bucket bounds should grow", upperBound > previousUpperBound);
+            assertEquals("Lowest value should fall into the bucket", bucket, LatencyHistogram.bucketOf(previousUpperBound + 1));
+            assertEquals("Highest value should fall into the bucket", bucket, LatencyHistogram.bucketOf(upperBound));
+
+            previousUpperBound = upperBound;
+        }
+
+        assertEquals("Last bucket should end at the largest value", Long.MAX_VALUE, previousUpperBound);
+    }
+
+
+    @Test
+    public void testPercentiles () throws Exception {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) histogram.record(value);
+
+        assertEquals("Count should match", 1000, histogram.getCount());
+        assertEquals("Mean should be exact", 500.5, histogram.getMean(), 0.0001);
+        assertEquals("Max should be exact", 1000, histogram.getMax());
+
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(990, histogram.getPercentile(99));
+        assertEquals("Top percentile should not exceed max", 1000, histogram.getPercentile(100));
+    }
+
+
+    @Test
+    public void testConcurrentRecording () throws Exception {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) histogram.record(j);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals("No values should be lost", 400000, histogram.getCount());
+    }
+
+
+    private static void assertWithin (long expected, long actual) {
+
+        assertTrue("Expected about " + expected + ", got " + actual, actual >= expected && actual <= expected * 1.25);
+    }
+}
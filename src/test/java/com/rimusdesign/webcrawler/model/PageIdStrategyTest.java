@@ -0,0 +1,48 @@
+package com.rimusdesign.webcrawler.model;
+
+
+import com.rimusdesign.webcrawler.utils.CommonUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class PageIdStrategyTest {
+
+
+    public static final String URL = "http://localhost";
+
+
+    @Test
+    public void testDefaultStrategy () throws Exception {
+
+        assertEquals("Should use SHA-256 by default", CommonUtils.getHash(URL), new Page(URL).getId());
+        assertEquals("Should match the generated ID", Page.generateId(URL), new Page(URL).getId());
+    }
+
+
+    @Test
+    public void testFingerprint () throws Exception {
+
+        String id = new Page(URL, PageIdStrategy.FINGERPRINT_64).getId();
+
+        assertEquals("ID should be 11 characters long", 11, id.length());
+        assertTrue("ID should be URL safe", id.matches("[A-Za-z0-9_\\-]+"));
+        assertEquals("Should return identical IDs", id, new Page(URL, PageIdStrategy.FINGERPRINT_64).getId());
+        assertNotEquals("Should return different IDs", id, new Page(URL + "/other", PageIdStrategy.FINGERPRINT_64).getId());
+    }
+
+
+    @Test
+    public void testFingerprintEncoding () throws Exception {
+
+        // Encoding must be lossless, so distinct fingerprints always give distinct IDs
+        assertEquals("Zero should encode to all zero digits", "AAAAAAAAAAA", PageIdStrategy.encode(0));
+        assertEquals("All bits set should encode to top digit of four bits", "P__________", PageIdStrategy.encode(-1));
+    }
+}
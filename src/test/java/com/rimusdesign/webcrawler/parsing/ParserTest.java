@@ -0,0 +1,123 @@
+package com.rimusdesign.webcrawler.parsing;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.TransientPage;
+import com.rimusdesign.webcrawler.queue.LinkedStageQueue;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class ParserTest {
+
+
+    public static final String URL = "http://www.my-domain.com/";
+    public static final String HTML = "<html><head><title>Test</title></head><body></body></html>";
+
+
+    @Test(timeout = 10000)
+    public void testSharedContext () throws Exception {
+
+        int numParsers = 4;
+        int numPages = 200;
+
+        LinkedStageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+
+        // Counts how many times each page is parsed
+        Map<String, AtomicInteger> numParsed = new ConcurrentHashMap<>();
+        ParsingContextGeneric generic = new ParsingContextGeneric();
+        ParsingContext context = (url, html) -> {
+            numParsed.computeIfAbsent(url, key -> new AtomicInteger()).incrementAndGet();
+            return generic.parse(url, html);
+        };
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numParsers; i++) threads.add(new Thread(new Parser(context, fetchedDataQueue, parsedDataQueue)));
+        for (Thread thread : threads) thread.start();
+
+        Map<String, Page> pages = new HashMap<>();
+
+        try {
+
+            for (int i = 0; i < numPages; i++) fetchedDataQueue.put(fetched(URL + i));
+
+            for (int i = 0; i < numPages; i++) {
+                Page page = parsedDataQueue.take();
+                assertNull("Page should be forwarded once: " + page.getUrl(), pages.put(page.getUrl(), page));
+            }
+        } finally {
+
+            for (Thread thread : threads) thread.interrupt();
+            for (Thread thread : threads) thread.join(5000);
+        }
+
+        for (int i = 0; i < numPages; i++) {
+            assertEquals("Page should be parsed once: " + URL + i, 1, numParsed.get(URL + i).get());
+            assertEquals("Page should be parsed in full: " + URL + i, "Test", pages.get(URL + i).getTitle());
+        }
+        assertEquals("Nothing should be left to parse", 0, fetchedDataQueue.size());
+        for (Thread thread : threads) assertFalse("Parser thread should terminate", thread.isAlive());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testFailureForwarded () throws Exception {
+
+        LinkedStageQueue<TransientPage> fetchedDataQueue = new LinkedStageQueue<>();
+        LinkedStageQueue<Page> parsedDataQueue = new LinkedStageQueue<>();
+
+        // Fails on one page only, as a full disk would while storing its content
+        ParsingContextGeneric generic = new ParsingContextGeneric();
+        ParsingContext context = (url, html) -> {
+            if (url.endsWith("broken")) throw new IllegalStateException("Can't parse");
+            return generic.parse(url, html);
+        };
+
+        Thread thread = new Thread(new Parser(context, fetchedDataQueue, parsedDataQueue));
+        thread.start();
+
+        try {
+
+            fetchedDataQueue.put(fetched(URL + "broken"));
+            fetchedDataQueue.put(fetched(URL + "fine"));
+
+            Map<String, Page> pages = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                Page page = parsedDataQueue.take();
+                pages.put(page.getUrl(), page);
+            }
+
+            Page broken = pages.get(URL + "broken");
+            assertEquals("Page which failed to parse should be forwarded with no status code", 0, broken.getStatusCode());
+            assertNull("Page which failed to parse should have no title", broken.getTitle());
+            assertEquals("Parser should keep parsing after a failure", "Test", pages.get(URL + "fine").getTitle());
+        } finally {
+
+            thread.interrupt();
+            thread.join(5000);
+        }
+
+        assertFalse("Parser thread should terminate", thread.isAlive());
+    }
+
+
+    private static TransientPage fetched (String url) {
+
+        return new TransientPage(url, "text/html; charset=UTF-8", 200, HTML.getBytes(StandardCharsets.UTF_8), "UTF-8");
+    }
+}
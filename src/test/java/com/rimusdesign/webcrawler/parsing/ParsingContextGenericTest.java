@@ -3,11 +3,15 @@ package com.rimusdesign.webcrawler.parsing;
 
 import com.rimusdesign.webcrawler.model.Page;
 import com.rimusdesign.webcrawler.model.StaticContentType;
+import com.rimusdesign.webcrawler.utils.CanonicalUrl;
 import com.rimusdesign.webcrawler.utils.CommonUtils;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -113,6 +117,15 @@ public class ParsingContextGenericTest {
         assertTrue(page.getInternalUrls().contains(URL + HTML_INT_URL_2));
         assertEquals("Should contain only two internal URLs", 2, page.getInternalUrls().size());
 
+        // Canonical forms are kept for following the links
+        Set<String> linkUrls = new HashSet<>();
+        for (CanonicalUrl link : page.getInternalLinks()) {
+            assertEquals("Fingerprint should be of the canonical form", CommonUtils.fingerprint(link.getUrl()), link.getFingerprint());
+            linkUrls.add(link.getUrl());
+        }
+        assertEquals("Canonical form should be kept for every internal URL once", page.getInternalUrls().size(), page.getInternalLinks().size());
+        assertEquals("Canonical forms should be of internal URLs", page.getInternalUrls(), linkUrls);
+
         // Test static content
         assertEquals("Should contain eight static content items",
                 8, (long) page.getStaticContentUrls().values().stream().map(HashSet::size).reduce(0, (prev, next) -> prev + next));
@@ -148,4 +161,52 @@ public class ParsingContextGenericTest {
         assertEquals("Should only contain one iframe source", 1, list.size());
 
     }
-}
\ No newline at end of file
+
+
+    @Test
+    public void testAddHandler () throws Exception {
+
+        List<String> headings = new ArrayList<>();
+
+        Page customPage = new ParsingContextGeneric() {
+            {
+                addHandler("H2", (element, page) -> headings.add(element.text()));
+            }
+        }.parse(URL, HTML);
+
+        assertEquals("Handler should be called for every element of its tag, in document order", 8, headings.size());
+        assertEquals("Video", headings.get(0));
+        assertEquals("Object", headings.get(7));
+
+        // Default handlers should still apply
+        assertEquals(page.getInternalUrls(), customPage.getInternalUrls());
+        assertEquals(page.getExternalUrls(), customPage.getExternalUrls());
+        assertEquals(page.getStaticContentUrls(), customPage.getStaticContentUrls());
+    }
+
+
+    @Test
+    public void testAddHandlerInTurkishLocale () throws Exception {
+
+        List<String> sources = new ArrayList<>();
+        Locale previous = Locale.getDefault();
+
+        // Default lower casing would turn the 'I' into a dotless 'i'
+        Locale.setDefault(new Locale("tr", "TR"));
+
+        try {
+
+            new ParsingContextGeneric() {
+                {
+                    addHandler("IFRAME", (element, page) -> sources.add(element.attr("src")));
+                }
+            }.parse(URL, HTML);
+        } finally {
+
+            Locale.setDefault(previous);
+        }
+
+        assertEquals("Handler should match its tag regardless of locale", 1, sources.size());
+        assertEquals(HTML_IFRAME_SRC, sources.get(0));
+    }
+}
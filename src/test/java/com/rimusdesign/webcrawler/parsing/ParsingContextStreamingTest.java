@@ -0,0 +1,103 @@
+package com.rimusdesign.webcrawler.parsing;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.StaticContentType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class ParsingContextStreamingTest {
+
+
+    public static final String URL = ParsingContextGenericTest.URL;
+
+    private final ParsingContext streaming = new ParsingContextStreaming();
+    private final ParsingContext generic = new ParsingContextGeneric();
+
+
+    @Test
+    public void testSameAsGeneric () throws Exception {
+
+        assertSameAsGeneric(URL, ParsingContextGenericTest.HTML);
+    }
+
+
+    @Test
+    public void testSameAsGenericOnTestPages () throws Exception {
+
+        try (Stream<Path> paths = Files.list(Paths.get("test-www"))) {
+            paths.filter(path -> path.toString().endsWith(".html")).forEach(path -> {
+                try {
+                    assertSameAsGeneric(URL + "/" + path.getFileName(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+
+    @Test
+    public void testTricky () throws Exception {
+
+        String html = "<html><head><base href=\"/base/\"><TITLE>  A &amp;\n B </TITLE><title>Second</title>\n" +
+                "<script>var a = '<a href=\"/in_script\">';</script>\n" +
+                "<style>a > b { }</style></head><body>\n" +
+                "<!-- <a href=\"/in_comment\"> -->\n" +
+                "<A HREF=relative?x=1&amp;y=2>Unquoted</A>\n" +
+                "<a title='>' href='/quoted'>Quoted</a>\n" +
+                "<a href=\"?query\">Query</a>\n" +
+                "<a name=\"anchor\">No link</a>\n" +
+                "<audio><video><source src=\"both.ogg\"></video></audio><source src=\"neither.ogg\">\n" +
+                "</body></html>";
+
+        assertSameAsGeneric(URL, html);
+
+        Page page = streaming.parse(URL, html);
+
+        assertEquals("First title should be used, with whitespace normalised", "A & B", page.getTitle());
+        assertTrue("Links should resolve against base", page.getInternalUrls().contains(URL + "/base/relative?x=1&y=2"));
+        assertTrue("Quoted '>' should not end the tag", page.getInternalUrls().contains(URL + "/quoted"));
+        assertTrue("Query should replace query of base", page.getInternalUrls().contains(URL + "/base/?query"));
+        assertEquals("Links in scripts and comments should be skipped", 3, page.getInternalUrls().size());
+        assertEquals("Canonical form should be kept for every internal URL", 3, page.getInternalLinks().size());
+        assertTrue("Source should count for both parents", page.getStaticItemsOfType(StaticContentType.AUDIO).contains("both.ogg"));
+        assertEquals("Source outside of media should be skipped", 1, page.getStaticItemsOfType(StaticContentType.VIDEO).size());
+    }
+
+
+    @Test
+    public void testNoHtml () throws Exception {
+
+        Page page = streaming.parse(URL, null);
+
+        assertNull("Page should have no content", page.getRawData());
+        assertNull("Page should have no links", page.getInternalUrls());
+    }
+
+
+    private void assertSameAsGeneric (String url, String html) {
+
+        Page expected = generic.parse(url, html);
+        Page actual = streaming.parse(url, html);
+
+        assertEquals("Title should match, URL: " + url, expected.getTitle(), actual.getTitle());
+        assertEquals("Internal URLs should match, URL: " + url, expected.getInternalUrls(), actual.getInternalUrls());
+        assertEquals("External URLs should match, URL: " + url, expected.getExternalUrls(), actual.getExternalUrls());
+        assertEquals("Static content should match, URL: " + url, expected.getStaticContentUrls(), actual.getStaticContentUrls());
+        assertEquals("Raw data should match, URL: " + url, expected.getRawData(), actual.getRawData());
+    }
+}
@@ -0,0 +1,107 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class DiskBackedStageQueueTest {
+
+
+    public static final String URL = "http://localhost/";
+
+    private Path directory;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        directory = Files.createTempDirectory("frontier-test");
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        Files.deleteIfExists(directory);
+    }
+
+
+    @Test
+    public void testOrderAcrossSegments () throws Exception {
+
+        DiskBackedStageQueue queue = new DiskBackedStageQueue(directory, 4);
+
+        for (int i = 0; i < 50; i++) queue.put(URL + i);
+
+        assertEquals("Should hold all items", 50, queue.size());
+        assertTrue("Items should have been spilled to disk", countSegmentFiles() > 0);
+
+        // Interleave adding and taking, order should be kept
+        for (int i = 0; i < 25; i++) assertEquals("Items should come out in order", URL + i, queue.take());
+        for (int i = 50; i < 60; i++) queue.put(URL + i);
+        for (int i = 25; i < 60; i++) assertEquals("Items should come out in order", URL + i, queue.take());
+
+        assertNull("Drained queue should return 'null'", queue.poll());
+        assertEquals("Drained queue should have no segment files left", 0, countSegmentFiles());
+
+        queue.close();
+    }
+
+
+    @Test
+    public void testNonAsciiItems () throws Exception {
+
+        DiskBackedStageQueue queue = new DiskBackedStageQueue(directory, 1);
+
+        queue.put(URL + "\u0105\u010d\u0119");
+        queue.put(URL + "\u65e5\u672c");
+        queue.put(URL + "\u00fcmlaut");
+
+        assertEquals("Should decode spilled item", URL + "\u0105\u010d\u0119", queue.poll());
+        assertEquals("Should decode spilled item", URL + "\u65e5\u672c", queue.poll());
+        assertEquals("Should decode spilled item", URL + "\u00fcmlaut", queue.poll());
+
+        queue.close();
+    }
+
+
+    @Test
+    public void testClose () throws Exception {
+
+        DiskBackedStageQueue queue = new DiskBackedStageQueue(directory, 2);
+
+        for (int i = 0; i < 20; i++) queue.put(URL + i);
+
+        queue.close();
+
+        File[] files = directory.toFile().listFiles();
+        assertEquals("Closing should delete all frontier files", 0, files != null ? files.length : 0);
+    }
+
+
+    private int countSegmentFiles () {
+
+        int count = 0;
+        File[] subdirectories = directory.toFile().listFiles();
+        if (subdirectories != null) {
+            for (File subdirectory : subdirectories) {
+                File[] files = subdirectory.listFiles();
+                count += files != null ? files.length : 0;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,196 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class PriorityFrontierTest {
+
+
+    public static final String URL = "http://www.my-domain.com/";
+
+
+    @Test
+    public void testOrderWithinLevel () throws Exception {
+
+        PriorityFrontier frontier = new PriorityFrontier(UrlScoring.DEPTH);
+
+        frontier.put(URL + "a");
+        frontier.put(URL + "b");
+        assertTrue("Frontier should never reject URLs", frontier.offer(URL + "c"));
+        frontier.put(URL + "a");
+
+        assertEquals("URL already waiting should only be held once", 3, frontier.size());
+        assertEquals("URLs of the same score should come out in order queued", URL + "a", frontier.take());
+        assertEquals("URLs of the same score should come out in order queued", URL + "b", frontier.take());
+        assertEquals("URLs of the same score should come out in order queued", URL + "c", frontier.poll());
+        assertNull("Empty frontier should return 'null'", frontier.poll());
+    }
+
+
+    @Test
+    public void testDepth () throws Exception {
+
+        PriorityFrontier frontier = new PriorityFrontier(UrlScoring.DEPTH);
+
+        frontier.put(URL);
+        Page root = page(frontier.take(), URL + "a");
+        frontier.put(URL + "a", root);
+
+        Page a = page(frontier.take(), URL + "a/b");
+        frontier.put(URL + "a/b", a);
+
+        // Found later, but closer to the root
+        frontier.put(URL + "c", root);
+        frontier.done(root.getUrl());
+        frontier.done(a.getUrl());
+
+        assertEquals("Shallower URL should come out first", URL + "c", frontier.take());
+        assertEquals("Deeper URL should come out last", URL + "a/b", frontier.take());
+    }
+
+
+    @Test
+    public void testInboundLinks () throws Exception {
+
+        PriorityFrontier frontier = new PriorityFrontier(UrlScoring.INBOUND_LINKS);
+
+        frontier.put(URL);
+        Page root = page(frontier.take(), URL + "a", URL + "b");
+        frontier.put(URL + "a", root);
+        frontier.put(URL + "b", root);
+
+        // Another link to a URL waiting moves it up, leaving a stale entry behind
+        Page other = page(URL + "other", URL + "b");
+        frontier.link(URL + "b", other);
+
+        assertEquals("Update should not add a URL", 2, frontier.size());
+        assertEquals("URL linked more should come out first", URL + "b", frontier.take());
+        assertEquals("Stale entry should be skipped", URL + "a", frontier.take());
+        assertNull("Frontier should be empty", frontier.poll());
+
+        // URLs no longer waiting are left alone
+        frontier.link(URL + "b", other);
+        assertEquals("Update should not requeue a URL taken", 0, frontier.size());
+    }
+
+
+    @Test
+    public void testOpic () throws Exception {
+
+        PriorityFrontier frontier = new PriorityFrontier(UrlScoring.OPIC);
+
+        frontier.put(URL);
+        Page root = page(frontier.take(), URL + "a", URL + "b", URL + "c", URL + "d");
+        for (String url : root.getInternalUrls()) frontier.put(url, root);
+
+        // Page holding a quarter of the score splits it over a single link, which adds up with another quarter
+        String taken = frontier.take();
+        String linked = taken.equals(URL + "b") ? URL + "c" : URL + "b";
+        frontier.link(linked, page(taken, linked));
+
+        assertEquals("URL with the largest share should come out first", linked, frontier.take());
+        assertEquals("Scores within a factor of two should share a level", UrlScoring.OPIC.level(1), UrlScoring.OPIC.level(1.9));
+        assertTrue("Smaller shares should be of lower levels", UrlScoring.OPIC.level(0.1) < UrlScoring.OPIC.level(0.25));
+    }
+
+
+    @Test(timeout = 10000)
+    public void testTakeBlocks () throws Exception {
+
+        PriorityFrontier frontier = new PriorityFrontier(UrlScoring.INBOUND_LINKS);
+        final String[] received = new String[1];
+
+        Thread consumer = new Thread(() -> {
+            try {
+                received[0] = frontier.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+
+        // Waits for a URL without using any CPU
+        while (consumer.getState() != Thread.State.WAITING) Thread.sleep(1);
+        Thread.sleep(50);
+        assertEquals("Consumer should keep waiting while the frontier is empty", Thread.State.WAITING, consumer.getState());
+
+        frontier.put(URL);
+        consumer.join();
+
+        assertEquals("Consumer should take the URL once queued", URL, received[0]);
+    }
+
+
+    @Test(timeout = 10000)
+    public void testConcurrentHandoff () throws Exception {
+
+        final int numProducers = 4;
+        final int numConsumers = 4;
+        final int urlsPerProducer = 20000;
+
+        final PriorityFrontier frontier = new PriorityFrontier(UrlScoring.INBOUND_LINKS);
+        final Set<String> received = new HashSet<>();
+
+        frontier.put(URL);
+        final Page root = page(frontier.take());
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < numProducers; p++) {
+            final int offset = p * urlsPerProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < urlsPerProducer; i++) {
+
+                    // Keep moving earlier URLs between levels while they are being taken
+                    frontier.put(URL + (offset + i), root);
+                    frontier.link(URL + (offset + i / 2), root);
+                }
+            }));
+        }
+
+        for (int c = 0; c < numConsumers; c++) {
+            threads.add(new Thread(() -> {
+                List<String> urls = new ArrayList<>();
+                try {
+                    for (int i = 0; i < urlsPerProducer; i++) urls.add(frontier.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (received) {
+                    received.addAll(urls);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals("Every URL should be received exactly once", numProducers * urlsPerProducer, received.size());
+        assertEquals("Frontier should be drained", 0, frontier.size());
+        assertNull("Stale entries should not come out", frontier.poll());
+    }
+
+
+    private static Page page (String url, String... internalUrls) {
+
+        Page page = new Page(url);
+        page.setInternalUrls(new HashSet<>(Arrays.asList(internalUrls)));
+
+        return page;
+    }
+}
@@ -0,0 +1,167 @@
+package com.rimusdesign.webcrawler.queue;
+
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class RingBufferStageQueueTest {
+
+
+    @Test
+    public void testCapacity () throws Exception {
+
+        assertEquals("Capacity should be rounded up to a power of two", 8, new RingBufferStageQueue<String>(5).capacity());
+        assertEquals("Power of two capacity should be kept", 4, new RingBufferStageQueue<String>(4).capacity());
+        assertEquals("Capacity should be at least two", 2, new RingBufferStageQueue<String>(1).capacity());
+    }
+
+
+    @Test
+    public void testOfferAndPoll () throws Exception {
+
+        RingBufferStageQueue<Integer> queue = new RingBufferStageQueue<>(4);
+
+        assertNull("Empty queue should return 'null'", queue.poll());
+
+        for (int i = 0; i < 4; i++) assertTrue("Should accept items up to capacity", queue.offer(i));
+
+        assertFalse("Full queue should reject items", queue.offer(4));
+        assertEquals("Should hold four items", 4, queue.size());
+
+        // Wrap around the buffer a few times, order should be kept
+        for (int i = 4; i < 20; i++) {
+            assertEquals("Items should come out in order", Integer.valueOf(i - 4), queue.poll());
+            assertTrue("Freed slot should accept an item", queue.offer(i));
+        }
+
+        assertEquals("Should still hold four items", 4, queue.size());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testConcurrentHandoff () throws Exception {
+
+        final int numProducers = 4;
+        final int numConsumers = 4;
+        final int itemsPerProducer = 50000;
+
+        final RingBufferStageQueue<Integer> queue = new RingBufferStageQueue<>(64);
+        final Set<Integer> received = new HashSet<>();
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < numProducers; p++) {
+            final int offset = p * itemsPerProducer;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < itemsPerProducer; i++) queue.put(offset + i);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        for (int c = 0; c < numConsumers; c++) {
+            threads.add(new Thread(() -> {
+                List<Integer> items = new ArrayList<>();
+                try {
+                    for (int i = 0; i < itemsPerProducer; i++) items.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (received) {
+                    received.addAll(items);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals("Every item should be received exactly once", numProducers * itemsPerProducer, received.size());
+        assertEquals("Queue should be drained", 0, queue.size());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testBlockedProducer () throws Exception {
+
+        final RingBufferStageQueue<Integer> queue = new RingBufferStageQueue<>(2);
+        queue.put(0);
+        queue.put(1);
+
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        // Producer blocks on the full queue, until a consumer frees a slot
+        while (producer.getState() != Thread.State.WAITING) Thread.sleep(1);
+        assertEquals("Blocked producer should not add to the full queue", 2, queue.size());
+
+        for (int i = 0; i < 3; i++) assertEquals("Items should come out in order", Integer.valueOf(i), queue.take());
+        producer.join();
+    }
+
+
+    @Test(timeout = 10000)
+    public void testBlockedConsumerIdle () throws Exception {
+
+        final RingBufferStageQueue<Integer> queue = new RingBufferStageQueue<>(4);
+
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+
+        while (consumer.getState() != Thread.State.WAITING) Thread.sleep(1);
+        Thread.sleep(50);
+        assertEquals("Consumer should stay blocked while the queue is empty", Thread.State.WAITING, consumer.getState());
+
+        queue.put(1);
+        consumer.join();
+    }
+
+
+    @Test(timeout = 10000)
+    public void testTakeInterrupted () throws Exception {
+
+        final RingBufferStageQueue<Integer> queue = new RingBufferStageQueue<>(4);
+        final boolean[] interrupted = new boolean[1];
+
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+
+        consumer.start();
+        consumer.interrupt();
+        consumer.join();
+
+        assertTrue("Waiting consumer should be interrupted", interrupted[0]);
+    }
+}
@@ -0,0 +1,161 @@
+package com.rimusdesign.webcrawler.storage;
+
+
+import com.rimusdesign.webcrawler.model.Content;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class ContentStoreTest {
+
+
+    public static final String HTML = "<html><head><title>Test \u0105\u010d\u0119</title></head><body><p>Hello</p></body></html>";
+
+    private Path directory;
+
+
+    @Before
+    public void setUp () throws Exception {
+
+        directory = Files.createTempDirectory("content-test");
+    }
+
+
+    @After
+    public void tearDown () throws Exception {
+
+        Files.deleteIfExists(directory);
+    }
+
+
+    @Test
+    public void testStoreAndLoad () throws Exception {
+
+        try (ContentStore store = new ContentStore(directory)) {
+
+            Content content = store.store(HTML);
+
+            assertEquals("Should load stored content", HTML, content.get());
+            assertEquals("Should load stored content more than once", HTML, content.get());
+        }
+    }
+
+
+    @Test
+    public void testCompression () throws Exception {
+
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 1000; i++) html.append(HTML);
+
+        try (ContentStore store = new ContentStore(directory)) {
+
+            Content content = store.store(html.toString());
+
+            assertEquals("Should load stored content", html.toString(), content.get());
+            assertTrue("Repetitive content should be compressed", store.getStoredBytes() < html.length() / 10);
+        }
+    }
+
+
+    @Test
+    public void testSegments () throws Exception {
+
+        List<Content> contents = new ArrayList<>();
+
+        // Tiny segments, so each content ends up in its own
+        try (ContentStore store = new ContentStore(directory, 16)) {
+
+            for (int i = 0; i < 10; i++) contents.add(store.store(HTML + i));
+
+            assertEquals("Should start a new segment for each content", 10, countSegmentFiles());
+
+            for (int i = 0; i < 10; i++) assertEquals("Should load content from its own segment", HTML + i, contents.get(i).get());
+        }
+
+        assertEquals("Closing should delete all segment files", 0, countSegmentFiles());
+    }
+
+
+    @Test(expected = UncheckedIOException.class)
+    public void testLoadAfterClose () throws Exception {
+
+        ContentStore store = new ContentStore(directory);
+        Content content = store.store(HTML);
+        store.close();
+
+        content.get();
+    }
+
+
+    @Test(timeout = 10000, expected = IllegalStateException.class)
+    public void testLoadTruncated () throws Exception {
+
+        try (ContentStore store = new ContentStore(directory)) {
+
+            Content content = store.store(HTML);
+
+            // Overwrite stored data with the start of an uncompressed stream, which ends before its data does
+            byte[] input = (HTML + HTML).getBytes(StandardCharsets.UTF_8);
+            Deflater deflater = new Deflater(Deflater.NO_COMPRESSION);
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] output = new byte[input.length * 2];
+            int length = deflater.deflate(output);
+            deflater.end();
+
+            try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(Arrays.copyOf(output, Math.min(length, (int) store.getStoredBytes()))), 0);
+            }
+
+            content.get();
+        }
+    }
+
+
+    private List<Path> segmentFiles () {
+
+        List<Path> paths = new ArrayList<>();
+        File[] subdirectories = directory.toFile().listFiles();
+        if (subdirectories != null) {
+            for (File subdirectory : subdirectories) {
+                File[] files = subdirectory.listFiles();
+                if (files != null) for (File file : files) paths.add(file.toPath());
+            }
+        }
+        return paths;
+    }
+
+
+    private int countSegmentFiles () {
+
+        int count = 0;
+        File[] subdirectories = directory.toFile().listFiles();
+        if (subdirectories != null) {
+            for (File subdirectory : subdirectories) {
+                File[] files = subdirectory.listFiles();
+                count += files != null ? files.length : 0;
+            }
+        }
+        return count;
+    }
+}
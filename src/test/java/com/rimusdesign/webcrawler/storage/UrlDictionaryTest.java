@@ -0,0 +1,123 @@
+package com.rimusdesign.webcrawler.storage;
+
+
+import com.rimusdesign.webcrawler.model.Page;
+import com.rimusdesign.webcrawler.model.StaticContentType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class UrlDictionaryTest {
+
+
+    public static final String[] URLS = new String[]{
+            "http://www.my-domain.com",
+            "http://www.my-domain.com/",
+            "http://www.my-domain.com/items",
+            "http://www.my-domain.com/items/123?a=1&b=2",
+            "http://www.my-domain.com/items/124",
+            "https://www.my-domain.com:8443/items//125",
+            "http://other.com/\u0105\u010d\u0119",
+            "/relative/path",
+            "relative.png",
+            "../up.png",
+            "mailto:me@my-domain.com",
+            "/",
+            ""
+    };
+
+
+    @Test
+    public void testAddAndGet () throws Exception {
+
+        UrlDictionary dictionary = new UrlDictionary();
+
+        int[] ids = new int[URLS.length];
+        for (int i = 0; i < URLS.length; i++) ids[i] = dictionary.add(URLS[i]);
+
+        for (int i = 0; i < URLS.length; i++) {
+            assertEquals("Should get stored URL back", URLS[i], dictionary.get(ids[i]));
+            assertEquals("Should return the same ID for the same URL", ids[i], dictionary.add(URLS[i]));
+        }
+
+        assertEquals("Should return different IDs for different URLs", URLS.length, Arrays.stream(ids).distinct().count());
+    }
+
+
+    @Test
+    public void testSharedPrefixes () throws Exception {
+
+        UrlDictionary dictionary = new UrlDictionary();
+
+        dictionary.add("http://www.my-domain.com/items/123");
+        int segments = dictionary.getSegmentCount();
+
+        dictionary.add("http://www.my-domain.com/items/124");
+        assertEquals("Host and path prefix should be shared", segments + 1, dictionary.getSegmentCount());
+
+        dictionary.add("http://www.my-domain.com/other");
+        assertEquals("Host should be shared", segments + 2, dictionary.getSegmentCount());
+
+        // Enough URLs to grow all arrays
+        for (int i = 0; i < 100000; i++) dictionary.add("http://www.my-domain.com/items/" + i);
+        for (int i = 0; i < 100000; i += 999) assertEquals("http://www.my-domain.com/items/" + i, dictionary.get(dictionary.add("http://www.my-domain.com/items/" + i)));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownId () throws Exception {
+
+        new UrlDictionary().get(0);
+    }
+
+
+    @Test
+    public void testCompact () throws Exception {
+
+        UrlDictionary dictionary = new UrlDictionary();
+
+        Page page = new Page("http://www.my-domain.com");
+        page.setRawData("<html></html>");
+        page.setInternalUrls(new HashSet<>(Arrays.asList(URLS[2], URLS[3], URLS[4])));
+        page.setExternalUrls(new HashSet<>(Arrays.asList(URLS[6])));
+        page.setStaticContentUrls(new HashMap<>());
+        page.getStaticContentUrls().put(StaticContentType.IMAGE, new HashSet<>(Arrays.asList(URLS[8], URLS[9])));
+
+        HashSet<String> internalUrls = new HashSet<>(page.getInternalUrls());
+        HashSet<String> externalUrls = new HashSet<>(page.getExternalUrls());
+        HashMap<StaticContentType, HashSet<String>> staticContentUrls = new HashMap<>(page.getStaticContentUrls());
+
+        page.setLinks(dictionary.compact(page));
+
+        assertEquals("Internal URLs should be decoded", internalUrls, page.getInternalUrls());
+        assertEquals("External URLs should be decoded", externalUrls, page.getExternalUrls());
+        assertEquals("Static content should be decoded", staticContentUrls, page.getStaticContentUrls());
+        assertEquals("Static content should be decoded by type", staticContentUrls.get(StaticContentType.IMAGE), page.getStaticItemsOfType(StaticContentType.IMAGE));
+        assertNull("Missing static content type should stay missing", page.getStaticItemsOfType(StaticContentType.VIDEO));
+
+        // Decoded sets are copies
+        page.getInternalUrls().clear();
+        assertNotEquals("Decoded URLs should not be changed", 0, page.getInternalUrls().size());
+    }
+
+
+    @Test
+    public void testCompactNoLinks () throws Exception {
+
+        Page page = new Page("http://www.my-domain.com");
+        page.setLinks(new UrlDictionary().compact(page));
+
+        assertNull("Missing URLs should stay missing", page.getInternalUrls());
+        assertNull("Missing static content should stay missing", page.getStaticContentUrls());
+    }
+}
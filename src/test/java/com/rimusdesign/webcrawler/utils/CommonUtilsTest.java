@@ -3,7 +3,10 @@ package com.rimusdesign.webcrawler.utils;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -28,6 +31,17 @@ public class CommonUtilsTest {
         assertNotEquals("Must return different hashes", CommonUtils.getHash(""), CommonUtils.getHash(" "));
         assertNotEquals("Must return different hashes", CommonUtils.getHash("abc"), CommonUtils.getHash("Abc"));
         assertEquals("Must return identical hashes", CommonUtils.getHash("abc"), CommonUtils.getHash("abc"));
+        assertEquals("Must return SHA-256 hex string",
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", CommonUtils.getHash("abc"));
+    }
+
+
+    @Test
+    public void testFingerprint () throws Exception {
+
+        assertNotEquals("Must return different fingerprints", CommonUtils.fingerprint(""), CommonUtils.fingerprint(" "));
+        assertNotEquals("Must return different fingerprints", CommonUtils.fingerprint("http://a.com/1"), CommonUtils.fingerprint("http://a.com/2"));
+        assertEquals("Must return identical fingerprints", CommonUtils.fingerprint("abc"), CommonUtils.fingerprint("abc"));
     }
 
 
@@ -39,6 +53,17 @@ public class CommonUtilsTest {
     }
 
 
+    @Test
+    public void testIsWithinDomain () throws Exception {
+
+        assertTrue("Domain should be within itself", CommonUtils.isWithinDomain("my-domain.com", "my-domain.com"));
+        assertTrue("Subdomain should be within its parent domain", CommonUtils.isWithinDomain("blog.my-domain.com", "my-domain.com"));
+        assertFalse("Domain ending with the same characters should not be within it", CommonUtils.isWithinDomain("other-my-domain.com", "my-domain.com"));
+        assertFalse("Domain containing it should not be within it", CommonUtils.isWithinDomain("my-domain.com.other.com", "my-domain.com"));
+        assertFalse("Parent domain should not be within its subdomain", CommonUtils.isWithinDomain("my-domain.com", "blog.my-domain.com"));
+    }
+
+
     @Test(expected = NullPointerException.class)
     public void testStripDomainNull () throws Exception {
 
@@ -162,4 +187,24 @@ public class CommonUtilsTest {
         assertEquals("Bookmark anchor, and trailing slash should be stripped",
                 "http://www.my-domain.com", CommonUtils.cleanUpURL("http://www.my-domain.com/#anchor"));
     }
-}
\ No newline at end of file
+
+
+    @Test
+    public void testDecode () throws Exception {
+
+        String html = "<html><head><meta charset=\"windows-1257\"></head><body>\u0104\u017Euolas</body></html>";
+
+        assertEquals("Should decode using declared charset",
+                "\u0104\u017Euolas", CommonUtils.decode("\u0104\u017Euolas".getBytes(StandardCharsets.UTF_16), "UTF-16"));
+
+        assertEquals("Should detect charset from 'meta' tag",
+                html, CommonUtils.decode(html.getBytes("windows-1257"), null));
+
+        assertEquals("Should default to UTF-8 and skip byte order mark",
+                "<p>\u0104\u017Euolas</p>", CommonUtils.decode(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '<', 'p', '>',
+                        (byte) 0xC4, (byte) 0x84, (byte) 0xC5, (byte) 0xBE, 'u', 'o', 'l', 'a', 's', '<', '/', 'p', '>'}, null));
+
+        assertEquals("Should fall back to UTF-8 if declared charset is not supported",
+                "\u0104\u017Euolas", CommonUtils.decode("\u0104\u017Euolas".getBytes(StandardCharsets.UTF_8), "no-such-charset"));
+    }
+}
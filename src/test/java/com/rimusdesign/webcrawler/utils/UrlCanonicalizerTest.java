@@ -0,0 +1,92 @@
+package com.rimusdesign.webcrawler.utils;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * @author Rimas Krivickas.
+ */
+public class UrlCanonicalizerTest {
+
+
+    @Test(expected = NullPointerException.class)
+    public void testCanonicalizeNull () throws Exception {
+
+        UrlCanonicalizer.canonicalize(null);
+    }
+
+
+    @Test
+    public void testCanonicalize () throws Exception {
+
+        assertCanonical("Scheme and host should be lower cased, path left as is",
+                "http://www.my-domain.com/Items", "HTTP://WWW.My-Domain.com/Items");
+        assertCanonical("Default ports should be removed",
+                "http://my-domain.com/a", "http://my-domain.com:80/a");
+        assertCanonical("Default ports should be removed",
+                "https://my-domain.com/a", "https://my-domain.com:443/a");
+        assertCanonical("Other ports should be kept",
+                "https://my-domain.com:8443/a", "https://my-domain.com:8443/a");
+        assertCanonical("Port of other scheme should be kept",
+                "https://my-domain.com:80/a", "https://my-domain.com:80/a");
+        assertCanonical("Fragment should be removed",
+                "http://my-domain.com/a?b=1", "http://my-domain.com/a?b=1#anchor");
+        assertCanonical("Dot segments should be removed",
+                "http://my-domain.com/a/c/d", "http://my-domain.com/a/./b/../c/d");
+        assertCanonical("Parent segments should not go above root",
+                "http://my-domain.com/a", "http://my-domain.com/../../a");
+        assertCanonical("Trailing dot segment should leave a directory",
+                "http://my-domain.com/a/b/?x=1", "http://my-domain.com/a/b/c/..?x=1");
+        assertCanonical("Query parameters should be sorted, empty ones removed",
+                "http://my-domain.com/a?a=2&b=1&c", "http://my-domain.com/a?c&&b=1&a=2&");
+        assertCanonical("Parameter values should be kept as is",
+                "http://my-domain.com/a?a=?&b=1", "http://my-domain.com/a?a=?&b=1");
+        assertCanonical("Empty query should be removed",
+                "http://my-domain.com/a", "http://my-domain.com/a?");
+        assertCanonical("Trailing slash should be removed",
+                "http://my-domain.com/a", "http://my-domain.com/a/");
+        assertCanonical("Empty path should be removed",
+                "http://my-domain.com", "http://my-domain.com");
+        assertCanonical("Root path should be kept before query",
+                "http://my-domain.com/?a=1", "http://my-domain.com?a=1");
+        assertCanonical("User info should be kept",
+                "ftp://User@my-domain.com/a", "FTP://User@My-Domain.com:21/a");
+    }
+
+
+    @Test
+    public void testHostAndFingerprint () throws Exception {
+
+        CanonicalUrl url = UrlCanonicalizer.canonicalize("HTTP://user@WWW.My-Domain.com:8080/a#b");
+
+        assertEquals("Host should be lower case, without user info and port", "www.my-domain.com", url.getHost());
+        assertEquals("Fingerprint should be one of canonical form", CommonUtils.fingerprint(url.getUrl()), url.getFingerprint());
+        assertEquals("Equivalent URLs should share a fingerprint",
+                url.getFingerprint(), UrlCanonicalizer.canonicalize("http://user@www.my-domain.com:8080/./a/").getFingerprint());
+        assertEquals("Host should be found without path",
+                "my-domain.com", UrlCanonicalizer.canonicalize("http://my-domain.com?a=1").getHost());
+    }
+
+
+    @Test
+    public void testUnusable () throws Exception {
+
+        assertNull("Relative URL should be rejected", UrlCanonicalizer.canonicalize("/a/b"));
+        assertNull("Non hierarchical URL should be rejected", UrlCanonicalizer.canonicalize("mailto:me@my-domain.com"));
+        assertNull("Non hierarchical URL should be rejected", UrlCanonicalizer.canonicalize("javascript:void(0)"));
+        assertNull("URL without host should be rejected", UrlCanonicalizer.canonicalize("http:///a"));
+        assertNull("URL with unsafe characters should be rejected", UrlCanonicalizer.canonicalize("http://my-domain.com/a?q=<b"));
+        assertEquals("Unsafe characters in fragment should be ignored",
+                "http://my-domain.com/a", UrlCanonicalizer.canonicalize("http://my-domain.com/a#{b}").getUrl());
+    }
+
+
+    private void assertCanonical (String message, String expected, String url) {
+
+        assertEquals(message, expected, UrlCanonicalizer.canonicalize(url).getUrl());
+    }
+}